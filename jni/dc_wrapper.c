@@ -546,6 +546,53 @@ JNIEXPORT jlong Java_com_b44t_messenger_DcContext_getMsgCPtr(JNIEnv *env, jobjec
 }
 
 
+JNIEXPORT jlongArray Java_com_b44t_messenger_DcContext_getMsgCPtrs(JNIEnv *env, jobject obj, jintArray msg_ids)
+{
+	/* loads several messages with a single JNI call;
+	the returned pointers are owned by the DcMsg objects created by the caller. */
+	int i, icnt = 0;
+	uint32_t* msg_ids_ptr = jintArray2uint32Pointer(env, msg_ids, &icnt);
+	jlongArray ret = (*env)->NewLongArray(env, icnt);
+	if (ret && icnt) {
+		dc_context_t* context = get_dc_context(env, obj);
+		jlong* temp = calloc(icnt, sizeof(jlong));
+		if (temp) {
+			for (i = 0; i < icnt; i++) {
+				temp[i] = (jlong)dc_get_msg(context, msg_ids_ptr[i]);
+			}
+			(*env)->SetLongArrayRegion(env, ret, 0, icnt, temp);
+			free(temp);
+		}
+	}
+	free(msg_ids_ptr);
+	return ret;
+}
+
+
+JNIEXPORT jlongArray Java_com_b44t_messenger_DcContext_getMsgTimestamps(JNIEnv *env, jobject obj, jintArray msg_ids)
+{
+	/* gets the timestamps of several messages with a single JNI call and without creating DcMsg objects */
+	int i, icnt = 0;
+	uint32_t* msg_ids_ptr = jintArray2uint32Pointer(env, msg_ids, &icnt);
+	jlongArray ret = (*env)->NewLongArray(env, icnt);
+	if (ret && icnt) {
+		dc_context_t* context = get_dc_context(env, obj);
+		jlong* temp = calloc(icnt, sizeof(jlong));
+		if (temp) {
+			for (i = 0; i < icnt; i++) {
+				dc_msg_t* msg = dc_get_msg(context, msg_ids_ptr[i]);
+				temp[i] = JTIMESTAMP(dc_msg_get_timestamp(msg));
+				dc_msg_unref(msg);
+			}
+			(*env)->SetLongArrayRegion(env, ret, 0, icnt, temp);
+			free(temp);
+		}
+	}
+	free(msg_ids_ptr);
+	return ret;
+}
+
+
 JNIEXPORT jlong Java_com_b44t_messenger_DcContext_createMsgCPtr(JNIEnv *env, jobject obj, jint viewtype)
 {
 	return (jlong)dc_msg_new(get_dc_context(env, obj), viewtype);
@@ -838,6 +885,50 @@ JNIEXPORT jint Java_com_b44t_messenger_DcArray_getLocationId(JNIEnv *env, jobjec
 }
 
 
+JNIEXPORT void Java_com_b44t_messenger_DcArray_getLocations(JNIEnv *env, jobject obj, jfloatArray latitudes, jfloatArray longitudes, jfloatArray accuracies, jlongArray timestamps, jintArray msg_ids, jintArray location_ids)
+{
+	/* copies all locations to the given arrays with a single JNI call;
+	the arrays are expected to have at least dc_array_get_cnt() elements. */
+	dc_array_t* ca = get_dc_array(env, obj);
+	int i, icnt = ca? dc_array_get_cnt(ca) : 0;
+	if (icnt <= 0
+	 || (*env)->GetArrayLength(env, latitudes) < icnt || (*env)->GetArrayLength(env, longitudes) < icnt
+	 || (*env)->GetArrayLength(env, accuracies) < icnt || (*env)->GetArrayLength(env, timestamps) < icnt
+	 || (*env)->GetArrayLength(env, msg_ids) < icnt || (*env)->GetArrayLength(env, location_ids) < icnt) {
+		return;
+	}
+
+	jfloat* lat = calloc(icnt, sizeof(jfloat));
+	jfloat* lng = calloc(icnt, sizeof(jfloat));
+	jfloat* acc = calloc(icnt, sizeof(jfloat));
+	jlong*  ts  = calloc(icnt, sizeof(jlong));
+	jint*   mid = calloc(icnt, sizeof(jint));
+	jint*   lid = calloc(icnt, sizeof(jint));
+	if (lat && lng && acc && ts && mid && lid) {
+		for (i = 0; i < icnt; i++) {
+			lat[i] = (jfloat)dc_array_get_latitude(ca, i);
+			lng[i] = (jfloat)dc_array_get_longitude(ca, i);
+			acc[i] = (jfloat)dc_array_get_accuracy(ca, i);
+			ts[i]  = JTIMESTAMP(dc_array_get_timestamp(ca, i));
+			mid[i] = (jint)dc_array_get_msg_id(ca, i);
+			lid[i] = (jint)dc_array_get_id(ca, i);
+		}
+		(*env)->SetFloatArrayRegion(env, latitudes,    0, icnt, lat);
+		(*env)->SetFloatArrayRegion(env, longitudes,   0, icnt, lng);
+		(*env)->SetFloatArrayRegion(env, accuracies,   0, icnt, acc);
+		(*env)->SetLongArrayRegion (env, timestamps,   0, icnt, ts);
+		(*env)->SetIntArrayRegion  (env, msg_ids,      0, icnt, mid);
+		(*env)->SetIntArrayRegion  (env, location_ids, 0, icnt, lid);
+	}
+	free(lat);
+	free(lng);
+	free(acc);
+	free(ts);
+	free(mid);
+	free(lid);
+}
+
+
 /*******************************************************************************
  * DcChatlist
  ******************************************************************************/
@@ -901,6 +992,87 @@ JNIEXPORT jlong Java_com_b44t_messenger_DcChatlist_getSummaryCPtr(JNIEnv *env, j
 }
 
 
+JNIEXPORT void Java_com_b44t_messenger_DcChatlist_getRows(JNIEnv *env, jobject obj, jintArray chat_ids, jintArray msg_ids, jlongArray timestamps, jintArray fresh_msg_cnts, jintArray flags, jintArray states, jintArray text1_meanings, jobjectArray text1s, jobjectArray text2s, jintArray from_ids)
+{
+	/* copies everything needed to render the rows of the chatlist to the given arrays with a single JNI call;
+	the arrays are expected to have at least dc_chatlist_get_cnt() elements.
+	from_ids is only set for the deaddrop, for all other rows it is 0. */
+	dc_chatlist_t* chatlist = get_dc_chatlist(env, obj);
+	dc_context_t*  context  = chatlist? dc_chatlist_get_context(chatlist) : NULL;
+	int i, icnt = chatlist? dc_chatlist_get_cnt(chatlist) : 0;
+	if (icnt <= 0 || context == NULL
+	 || (*env)->GetArrayLength(env, chat_ids) < icnt || (*env)->GetArrayLength(env, msg_ids) < icnt
+	 || (*env)->GetArrayLength(env, timestamps) < icnt || (*env)->GetArrayLength(env, fresh_msg_cnts) < icnt
+	 || (*env)->GetArrayLength(env, flags) < icnt || (*env)->GetArrayLength(env, states) < icnt
+	 || (*env)->GetArrayLength(env, text1_meanings) < icnt || (*env)->GetArrayLength(env, text1s) < icnt
+	 || (*env)->GetArrayLength(env, text2s) < icnt || (*env)->GetArrayLength(env, from_ids) < icnt) {
+		return;
+	}
+
+	jint*  cid = calloc(icnt, sizeof(jint));
+	jint*  mid = calloc(icnt, sizeof(jint));
+	jlong* ts  = calloc(icnt, sizeof(jlong));
+	jint*  cnt = calloc(icnt, sizeof(jint));
+	jint*  flg = calloc(icnt, sizeof(jint));
+	jint*  st  = calloc(icnt, sizeof(jint));
+	jint*  t1m = calloc(icnt, sizeof(jint));
+	jint*  fid = calloc(icnt, sizeof(jint));
+	if (cid && mid && ts && cnt && flg && st && t1m && fid) {
+		for (i = 0; i < icnt; i++) {
+			cid[i] = (jint)dc_chatlist_get_chat_id(chatlist, i);
+			mid[i] = (jint)dc_chatlist_get_msg_id(chatlist, i);
+			cnt[i] = (jint)dc_get_fresh_msg_cnt(context, cid[i]);
+
+			dc_chat_t* chat = dc_get_chat(context, cid[i]);
+			flg[i] = (dc_chat_get_archived(chat)!=0? 0x01 /*ROW_FLAG_ARCHIVED*/ : 0)
+			       | (dc_chat_is_verified(chat)? 0x02 /*ROW_FLAG_VERIFIED*/ : 0);
+
+			dc_lot_t* summary = dc_chatlist_get_summary(chatlist, i, chat);
+			ts[i]  = JTIMESTAMP(dc_lot_get_timestamp(summary));
+			st[i]  = (jint)dc_lot_get_state(summary);
+			t1m[i] = (jint)dc_lot_get_text1_meaning(summary);
+
+			char* temp = dc_lot_get_text1(summary);
+				jstring text1 = JSTRING_NEW(temp);
+			free(temp);
+			(*env)->SetObjectArrayElement(env, text1s, i, text1);
+			(*env)->DeleteLocalRef(env, text1);
+
+			temp = dc_lot_get_text2(summary);
+				jstring text2 = JSTRING_NEW(temp);
+			free(temp);
+			(*env)->SetObjectArrayElement(env, text2s, i, text2);
+			(*env)->DeleteLocalRef(env, text2);
+
+			dc_lot_unref(summary);
+			dc_chat_unref(chat);
+
+			if (cid[i] == DC_CHAT_ID_DEADDROP) {
+				dc_msg_t* msg = dc_get_msg(context, mid[i]);
+				fid[i] = (jint)dc_msg_get_from_id(msg);
+				dc_msg_unref(msg);
+			}
+		}
+		(*env)->SetIntArrayRegion (env, chat_ids,       0, icnt, cid);
+		(*env)->SetIntArrayRegion (env, msg_ids,        0, icnt, mid);
+		(*env)->SetLongArrayRegion(env, timestamps,     0, icnt, ts);
+		(*env)->SetIntArrayRegion (env, fresh_msg_cnts, 0, icnt, cnt);
+		(*env)->SetIntArrayRegion (env, flags,          0, icnt, flg);
+		(*env)->SetIntArrayRegion (env, states,         0, icnt, st);
+		(*env)->SetIntArrayRegion (env, text1_meanings, 0, icnt, t1m);
+		(*env)->SetIntArrayRegion (env, from_ids,       0, icnt, fid);
+	}
+	free(cid);
+	free(mid);
+	free(ts);
+	free(cnt);
+	free(flg);
+	free(st);
+	free(t1m);
+	free(fid);
+}
+
+
 /*******************************************************************************
  * DcChat
  ******************************************************************************/
@@ -1476,4 +1648,20 @@ JNIEXPORT jlong Java_com_b44t_messenger_DcContext_stringToData(JNIEnv *env, jcla
 }
 
 
+JNIEXPORT jlong Java_com_b44t_messenger_DcContext_bytesToData(JNIEnv *env, jclass cls, jbyteArray bytes)
+{
+	/* unlike stringToData(), the bytes are passed unchanged, eg. a http response body; a null-byte is added at the end. */
+	char* cstring = NULL;
+	if (bytes) {
+		jsize len = (*env)->GetArrayLength(env, bytes);
+		cstring = malloc(len + 1);
+		if (cstring) {
+			(*env)->GetByteArrayRegion(env, bytes, 0, len, (jbyte*)cstring);
+			cstring[len] = 0;
+		}
+	}
+	return (jlong)cstring; // the return value of bytesToData() will be passed to c-land and free()'d there
+}
+
+
 
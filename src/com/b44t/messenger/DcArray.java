@@ -20,6 +20,12 @@ public class DcArray {
     public native int       getMsgId     (int index);
     public native int       getLocationId(int index);
 
+    /**
+     * Copies all locations with a single call, each array must have at least getCnt() elements.
+     */
+    public native void      getLocations (float[] latitudes, float[] longitudes, float[] accuracies,
+                                          long[] timestamps, int[] msgIds, int[] locationIds);
+
     // working with raw c-data
     private long        arrayCPtr;    // CAVE: the name is referenced in the JNI
     private native void unrefArrayCPtr();
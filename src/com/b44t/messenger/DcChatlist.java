@@ -5,6 +5,9 @@ import android.support.annotation.Nullable;
 
 public class DcChatlist {
 
+    public final static int ROW_FLAG_ARCHIVED = 0x01;
+    public final static int ROW_FLAG_VERIFIED = 0x02;
+
     public DcChatlist(long chatlistCPtr) {
         this.chatlistCPtr = chatlistCPtr;
     }
@@ -22,6 +25,11 @@ public class DcChatlist {
     public @NonNull DcMsg   getMsg    (int index) { return new DcMsg(getMsgCPtr(index)); }
     public @NonNull DcLot   getSummary(int index, @Nullable DcChat chat) { return new DcLot(getSummaryCPtr(index, chat==null? 0 : chat.getChatCPtr())); }
 
+    // copies all rows to the given arrays with a single JNI call, the arrays must have at least getCnt() elements.
+    // flags are a combination of ROW_FLAG_*, fromIds is set for DC_CHAT_ID_DEADDROP only.
+    public native void      getRows   (int[] chatIds, int[] msgIds, long[] timestamps, int[] freshMsgCounts, int[] flags,
+                                       int[] summaryStates, int[] text1Meanings, String[] text1s, String[] text2s, int[] fromIds);
+
     public class Item {
         public DcLot summary;
         public int   msgId;
@@ -143,6 +143,7 @@ public class DcContext {
     public native int[]        getChatContacts      (int chat_id);
     public native void         deleteChat           (int chat_id);
     public @NonNull DcMsg      getMsg               (int msg_id) { return new DcMsg(getMsgCPtr(msg_id)); }
+    public native long[]       getMsgTimestamps     (int msg_ids[]);
     public native String       getMsgInfo           (int id);
     public native int          getFreshMsgCount     (int chat_id);
     public native void         deleteMsgs           (int msg_ids[]);
@@ -163,6 +164,18 @@ public class DcContext {
      */
     public native boolean      setLocation          (float latitude, float longitude, float accuracy);
 
+    /**
+     * Loads several messages with a single JNI call.
+     */
+    public @NonNull DcMsg[] getMsgs(int msg_ids[]) {
+        long[] cptrs = getMsgCPtrs(msg_ids);
+        DcMsg[] ret = new DcMsg[cptrs.length];
+        for (int i = 0; i < cptrs.length; i++) {
+            ret[i] = new DcMsg(cptrs[i]);
+        }
+        return ret;
+    }
+
     // event handling - you should @Override this function in derived classes
     public long handleEvent(int event, long data1, long data2) {
         return 0;
@@ -173,6 +186,7 @@ public class DcContext {
     public native static boolean data2IsString(int event);
     public native static String  dataToString (long data);
     public native static long    stringToData (String str);
+    public native static long    bytesToData  (byte[] bytes);
 
     // working with raw c-data
     private long        contextCPtr;     // CAVE: the name is referenced in the JNI
@@ -181,6 +195,7 @@ public class DcContext {
     private native long getChatlistCPtr  (int listflags, String query, int queryId);
     private native long getChatCPtr      (int chat_id);
     private native long getMsgCPtr       (int id);
+    private native long[] getMsgCPtrs    (int ids[]);
     private native long getDraftCPtr    (int id);
     private native long getContactCPtr   (int id);
     private native long getLocationsCPtr (int chat_id, int contact_id, long timestamp_start, long timestamp_end);
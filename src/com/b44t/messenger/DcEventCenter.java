@@ -1,22 +1,40 @@
 package com.b44t.messenger;
 
-import android.os.AsyncTask;
-
 import org.thoughtcrime.securesms.util.Util;
 
-import java.lang.ref.WeakReference;
-import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DcEventCenter {
-    private Hashtable<Integer, ArrayList<DcEventDelegate>> allObservers = new Hashtable<>();
-    private final Object LOCK = new Object();
+    // delay used to collapse bursts of the same event for observers that want coalescing;
+    // roughly one frame, so the ui is updated at most once per frame.
+    private static final long COALESCE_WINDOW_MS = 16;
+
+    // the observer lists are copy-on-write, so sendToObservers() never takes a lock;
+    // adding and removing observers is rare compared to dispatching events.
+    private final ConcurrentHashMap<Integer, CopyOnWriteArrayList<DcEventDelegate>> allObservers = new ConcurrentHashMap<>();
+
+    // events waiting for delivery to coalescing observers, at most one per observer and event id
+    private final ConcurrentHashMap<PendingKey, PendingEvent> pendingEvents = new ConcurrentHashMap<>();
+
+    private final AtomicLong dispatchedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
 
     public interface DcEventDelegate {
         void handleEvent(int eventId, Object data1, Object data2);
         default boolean runOnMain() {
             return true;
         }
+
+        /**
+         * If true, bursts of the same event id are delivered as a single handleEvent() call
+         * about once per frame. Data that differs between the collapsed events is reset to 0
+         * for numeric data (meaning "unspecific", eg. "any chat") or set to the latest value otherwise.
+         */
+        default boolean coalesceEvents() {
+            return false;
+        }
     }
 
     /**
@@ -28,64 +46,154 @@ public class DcEventCenter {
     }
 
     public void addObserver(int eventId, DcEventDelegate observer) {
-        synchronized (LOCK) {
-            ArrayList<DcEventDelegate> idObservers = allObservers.get(eventId);
+        CopyOnWriteArrayList<DcEventDelegate> idObservers = allObservers.get(eventId);
+        if (idObservers == null) {
+            CopyOnWriteArrayList<DcEventDelegate> newObservers = new CopyOnWriteArrayList<>();
+            idObservers = allObservers.putIfAbsent(eventId, newObservers);
             if (idObservers == null) {
-                allObservers.put(eventId, (idObservers = new ArrayList<>()));
+                idObservers = newObservers;
             }
-            idObservers.add(observer);
         }
+        idObservers.add(observer);
     }
 
     public void removeObserver(int eventId, DcEventDelegate observer) {
-        synchronized (LOCK) {
-            ArrayList<DcEventDelegate> idObservers = allObservers.get(eventId);
-            if (idObservers != null) {
-                idObservers.remove(observer);
-            }
+        CopyOnWriteArrayList<DcEventDelegate> idObservers = allObservers.get(eventId);
+        if (idObservers != null) {
+            idObservers.remove(observer);
         }
+        pendingEvents.remove(new PendingKey(observer, eventId));
     }
 
     public void removeObservers(DcEventDelegate observer) {
-        synchronized (LOCK) {
-            for(Integer eventId : allObservers.keySet()) {
-                ArrayList<DcEventDelegate> idObservers = allObservers.get(eventId);
-                if (idObservers != null) {
-                    idObservers.remove(observer);
-                }
-            }
+        for (Integer eventId : allObservers.keySet()) {
+            removeObserver(eventId, observer);
         }
     }
 
     public void sendToObservers(int eventId, Object data1, Object data2) {
-        synchronized (LOCK) {
-            ArrayList<DcEventDelegate> idObservers = allObservers.get(eventId);
-            if (idObservers != null) {
-                for (DcEventDelegate observer : idObservers) {
-                    // using try/catch blocks as under some circumstances eg. getContext() may return NULL -
-                    // and as this function is used virtually everywhere, also in libs,
-                    // it's not feasible to check all single occurrences.
-                    if(observer.runOnMain()) {
-                        Util.runOnMain(() -> {
-                            try {
-                                observer.handleEvent(eventId, data1, data2);
-                            }
-                            catch(Exception e) {
-                                e.printStackTrace();
-                            }
-                        });
-                    } else {
-                        Util.runOnBackground(() -> {
-                            try {
-                                observer.handleEvent(eventId, data1, data2);
-                            }
-                            catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        });
+        CopyOnWriteArrayList<DcEventDelegate> idObservers = allObservers.get(eventId);
+        if (idObservers == null) {
+            return;
+        }
+
+        for (DcEventDelegate observer : idObservers) {
+            if (observer.coalesceEvents()) {
+                sendCoalesced(observer, eventId, data1, data2);
+            } else {
+                dispatch(observer, eventId, data1, data2);
+            }
+        }
+    }
+
+    private void sendCoalesced(DcEventDelegate observer, int eventId, Object data1, Object data2) {
+        PendingKey key = new PendingKey(observer, eventId);
+        PendingEvent fresh = new PendingEvent(data1, data2);
+        while (true) {
+            PendingEvent pending = pendingEvents.putIfAbsent(key, fresh);
+            if (pending == null) {
+                // first event of a burst, deliver whatever is collected when the window ends
+                Runnable deliver = () -> {
+                    PendingEvent event = pendingEvents.remove(key);
+                    if (event != null) {
+                        invoke(observer, eventId, event.data1, event.data2);
                     }
+                };
+                dispatchedCount.incrementAndGet();
+                if (observer.runOnMain()) {
+                    Util.runOnMainDelayed(deliver, COALESCE_WINDOW_MS);
+                } else {
+                    Util.runOnBackgroundDelayed(deliver, COALESCE_WINDOW_MS);
                 }
+                return;
+            }
+            PendingEvent merged = pending.merge(data1, data2);
+            if (pendingEvents.replace(key, pending, merged)) {
+                coalescedCount.incrementAndGet();
+                return;
+            }
+            // the pending event was delivered or replaced concurrently, try again
+        }
+    }
+
+    private void dispatch(DcEventDelegate observer, int eventId, Object data1, Object data2) {
+        dispatchedCount.incrementAndGet();
+        if(observer.runOnMain()) {
+            Util.runOnMain(() -> invoke(observer, eventId, data1, data2));
+        } else {
+            Util.runOnBackground(() -> invoke(observer, eventId, data1, data2));
+        }
+    }
+
+    private static void invoke(DcEventDelegate observer, int eventId, Object data1, Object data2) {
+        // using try/catch blocks as under some circumstances eg. getContext() may return NULL -
+        // and as this function is used virtually everywhere, also in libs,
+        // it's not feasible to check all single occurrences.
+        try {
+            observer.handleEvent(eventId, data1, data2);
+        }
+        catch(Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return number of handleEvent() calls scheduled so far.
+     */
+    public long getDispatchedCount() {
+        return dispatchedCount.get();
+    }
+
+    /**
+     * @return number of events that were merged into an already scheduled handleEvent() call.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    private static final class PendingKey {
+        private final DcEventDelegate observer;
+        private final int eventId;
+
+        PendingKey(DcEventDelegate observer, int eventId) {
+            this.observer = observer;
+            this.eventId = eventId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof PendingKey)) return false;
+            PendingKey other = (PendingKey) o;
+            return observer == other.observer && eventId == other.eventId;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(observer) * 31 + eventId;
+        }
+    }
+
+    private static final class PendingEvent {
+        private final Object data1;
+        private final Object data2;
+
+        PendingEvent(Object data1, Object data2) {
+            this.data1 = data1;
+            this.data2 = data2;
+        }
+
+        PendingEvent merge(Object newData1, Object newData2) {
+            return new PendingEvent(mergeData(data1, newData1), mergeData(data2, newData2));
+        }
+
+        private static Object mergeData(Object oldData, Object newData) {
+            if (Util.equals(oldData, newData)) {
+                return oldData;
+            }
+            if (oldData instanceof Long && newData instanceof Long) {
+                return 0L;
             }
+            return newData;
         }
     }
 }
@@ -46,6 +46,7 @@ public class ApplicationContext extends Application implements DefaultLifecycleO
     initializeLogging();
     initializeJobManager();
     initializeIncomingMessageNotifier();
+    initializeBlobDeduplication();
     ProcessLifecycleOwner.get().getLifecycle().addObserver(this);
     Mapbox.getInstance(getApplicationContext(), BuildConfig.MAP_ACCESS_TOKEN);
     dcLocationManager = new DcLocationManager(this);
@@ -107,6 +108,11 @@ public class ApplicationContext extends Application implements DefaultLifecycleO
       }, 5000);
   }
 
+  private void initializeBlobDeduplication() {
+    // not while starting up, all new files in the blobdir are read
+    Util.runOnBackgroundDelayed(dcContext::deduplicateBlobsIfNeeded, 60 * 1000);
+  }
+
   private void initializeJobManager() {
     this.jobManager = JobManager.newBuilder(this)
                                 .withName("TextSecureJobs")
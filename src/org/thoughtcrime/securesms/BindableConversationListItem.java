@@ -2,8 +2,6 @@ package org.thoughtcrime.securesms;
 
 import android.support.annotation.NonNull;
 
-import com.b44t.messenger.DcLot;
-
 import org.thoughtcrime.securesms.database.model.ThreadRecord;
 import org.thoughtcrime.securesms.mms.GlideRequests;
 
@@ -14,7 +12,6 @@ public interface BindableConversationListItem extends Unbindable {
 
   public void bind(@NonNull ThreadRecord thread,
                    int msgId,
-                   @NonNull DcLot dcSummary,
                    @NonNull GlideRequests glideRequests, @NonNull Locale locale,
                    @NonNull Set<Long> selectedThreads, boolean batchMode);
 }
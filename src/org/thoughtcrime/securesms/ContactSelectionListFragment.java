@@ -335,6 +335,8 @@ public class ContactSelectionListFragment extends    Fragment
         if (!allSystemContacts.isEmpty()) {
           dcContext.addAddressBook(allSystemContacts);
         }
+        // the system contact photos may have changed
+        dcContext.invalidateRecipients();
       }
     };
     thread.start();
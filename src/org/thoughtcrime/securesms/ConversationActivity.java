@@ -81,6 +81,7 @@ import org.thoughtcrime.securesms.components.camera.QuickAttachmentDrawer.Drawer
 import org.thoughtcrime.securesms.components.emoji.EmojiDrawer;
 import org.thoughtcrime.securesms.components.reminder.ReminderView;
 import org.thoughtcrime.securesms.connect.ApplicationDcContext;
+import org.thoughtcrime.securesms.connect.BlobIndex;
 import org.thoughtcrime.securesms.connect.DcHelper;
 import org.thoughtcrime.securesms.map.MapActivity;
 import org.thoughtcrime.securesms.mms.AttachmentManager;
@@ -113,6 +114,8 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
@@ -864,6 +867,7 @@ public class ConversationActivity extends PassphraseRequiredActionBarActivity
   }
 
   private String getRealPathFromAttachment(Attachment attachment) {
+    String path = null;
     try {
       // get file in the blobdir as `<blobdir>/<name>[-<uniqueNumber>].<ext>`
       String filename = attachment.getFileName();
@@ -879,19 +883,27 @@ public class ConversationActivity extends PassphraseRequiredActionBarActivity
           filename = filename.substring(0, i);
         }
       }
-      String path = dcContext.getBlobdirFile(filename, ext);
+      path = dcContext.getBlobdirFile(filename, ext);
 
-      // copy content to this file
+      // copy content to this file, hashing it for the blob index on the way
       if(path!=null) {
+        BlobIndex blobIndex = dcContext.getBlobIndex();
+        MessageDigest digest = blobIndex!=null? BlobIndex.newDigest() : null;
         InputStream inputStream = PartAuthority.getAttachmentStream(this, attachment.getDataUri());
         OutputStream outputStream = new FileOutputStream(path);
-        Util.copy(inputStream, outputStream);
+        Util.copy(inputStream, digest!=null? new DigestOutputStream(outputStream, digest) : outputStream);
+        if(digest!=null) {
+          blobIndex.add(new File(path), digest);
+        }
       }
 
       return path;
     }
     catch(Exception e) {
       e.printStackTrace();
+      if(path!=null) {
+        new File(path).delete(); // getBlobdirFile() has created the file
+      }
       return null;
     }
   }
@@ -20,6 +20,7 @@ import android.content.Context;
 import android.support.annotation.LayoutRes;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.v7.util.ListUpdateCallback;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -32,21 +33,20 @@ import com.b44t.messenger.DcMsg;
 import org.thoughtcrime.securesms.ConversationAdapter.HeaderViewHolder;
 import org.thoughtcrime.securesms.connect.ApplicationDcContext;
 import org.thoughtcrime.securesms.connect.DcHelper;
+import org.thoughtcrime.securesms.connect.DcMsgPager;
 import org.thoughtcrime.securesms.mms.GlideRequests;
 import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.util.DateUtils;
-import org.thoughtcrime.securesms.util.LRUCache;
+import org.thoughtcrime.securesms.util.IdListDiff;
 import org.thoughtcrime.securesms.util.StickyHeaderDecoration;
 import org.thoughtcrime.securesms.util.Util;
 import org.thoughtcrime.securesms.util.ViewUtil;
 
-import java.lang.ref.SoftReference;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Set;
 
 /**
@@ -59,13 +59,10 @@ import java.util.Set;
  */
 public class ConversationAdapter <V extends View & BindableConversationItem>
     extends RecyclerView.Adapter
-  implements StickyHeaderDecoration.StickyHeaderAdapter<HeaderViewHolder>
+  implements StickyHeaderDecoration.StickyHeaderAdapter<HeaderViewHolder>, ListUpdateCallback
 {
 
-  private static final int MAX_CACHE_SIZE = 40;
   private static final String TAG = ConversationAdapter.class.getSimpleName();
-  private final Map<Integer,SoftReference<DcMsg>> recordCache =
-      Collections.synchronizedMap(new LRUCache<Integer,SoftReference<DcMsg>>(MAX_CACHE_SIZE));
 
   private static final int MESSAGE_TYPE_OUTGOING           = 0;
   private static final int MESSAGE_TYPE_INCOMING           = 1;
@@ -88,9 +85,12 @@ public class ConversationAdapter <V extends View & BindableConversationItem>
   private final @NonNull  Calendar          calendar;
 
   private ApplicationDcContext dcContext;
+  private DcMsgPager           dcMsgPager;
   private @NonNull DcChat      dcChat;
   private @NonNull int[]       dcMsgList = new int[0];
   private int                  positionToPulseHighlight = -1;
+  private int                  changeDataGeneration = 0;
+  private final Set<Integer>   changedMsgIds = new HashSet<>();
 
   protected static class ViewHolder extends RecyclerView.ViewHolder {
     public <V extends View & BindableConversationItem> ViewHolder(final @NonNull V itemView) {
@@ -138,17 +138,7 @@ public class ConversationAdapter <V extends View & BindableConversationItem>
       return new DcMsg(0);
     }
 
-    final SoftReference<DcMsg> reference = recordCache.get(position);
-    if (reference != null) {
-      final DcMsg fromCache = reference.get();
-      if (fromCache != null) {
-        return fromCache;
-      }
-    }
-
-    final DcMsg fromDb = dcContext.getMsg((int)getItemId(position));
-    recordCache.put(position, new SoftReference<>(fromDb));
-    return fromDb;
+    return dcMsgPager.get(dcMsgList.length-1-position);
   }
 
 
@@ -191,6 +181,7 @@ public class ConversationAdapter <V extends View & BindableConversationItem>
     this.inflater = LayoutInflater.from(context);
     this.calendar = Calendar.getInstance();
     this.dcContext     = DcHelper.getContext(context);
+    this.dcMsgPager    = new DcMsgPager(dcContext);
 
     setHasStableIds(true);
   }
@@ -397,15 +388,91 @@ public class ConversationAdapter <V extends View & BindableConversationItem>
 
 
   public void changeData(@Nullable int[] dcMsgList) {
-    // should be called when there are new messages
-    this.dcMsgList = dcMsgList==null? new int[0] : dcMsgList;
-    reloadData();
+    changeData(dcMsgList, null);
+  }
+
+  /**
+   * Should be called when there are new messages;
+   * loaded messages are kept, changed messages have to be invalidated before.
+   *
+   * @param onApplied called on the main thread once the positions refer to the new list,
+   *                  not called if the list is replaced by a newer call meanwhile
+   */
+  public void changeData(@Nullable int[] dcMsgList, @Nullable Runnable onApplied) {
+    final int[] oldMsgList = this.dcMsgList;
+    final int[] newMsgList = dcMsgList==null? new int[0] : dcMsgList;
+    final int   generation = ++changeDataGeneration;
+
+    if (oldMsgList.length == 0 || newMsgList.length == 0) {
+      // nothing to animate
+      applyData(newMsgList);
+      notifyDataSetChanged();
+      if (onApplied != null) onApplied.run();
+      return;
+    }
+
+    // the diff is calculated in the background and applied only if there was no newer call to changeData() meanwhile;
+    // changed messages are kept in changedMsgIds until they are applied.
+    final Set<Integer> changed = new HashSet<>(changedMsgIds);
+    Util.runOnBackground(() -> {
+      IdListDiff diff = IdListDiff.calculate(toPositions(oldMsgList), toPositions(newMsgList),
+          (id, oldIndex, newIndex) -> changed.contains(id));
+      Util.runOnMain(() -> {
+        if (generation == changeDataGeneration) {
+          applyData(newMsgList);
+          changedMsgIds.removeAll(changed);
+          diff.dispatchUpdatesTo(this);
+          if (onApplied != null) onApplied.run();
+        }
+      });
+    });
+  }
+
+  private void applyData(@NonNull int[] dcMsgList) {
+    this.dcMsgList = dcMsgList;
+    dcMsgPager.setMsgIds(dcMsgList);
+  }
+
+  private static int[] toPositions(int[] dcMsgList) {
+    // the newest message is shown at position 0
+    int[] ret = new int[dcMsgList.length];
+    for (int i = 0; i < dcMsgList.length; i++) {
+      ret[i] = dcMsgList[dcMsgList.length-1-i];
+    }
+    return ret;
+  }
+
+  public void invalidateMsg(int msgId) {
+    // should be called when a single message is changed, eg. seen-state;
+    // the item is rebound on the next call to changeData()
+    dcMsgPager.invalidate(msgId);
+    changedMsgIds.add(msgId);
   }
 
   public void reloadData() {
-    // should be called when some items in a message are changed, eg. seen-state
-    recordCache.clear();
+    // should be called when some unknown items are changed
+    changedMsgIds.clear();
+    dcMsgPager.invalidateAll();
     notifyDataSetChanged();
   }
-}
 
+  @Override
+  public void onInserted(int position, int count) {
+    notifyItemRangeInserted(position, count);
+  }
+
+  @Override
+  public void onRemoved(int position, int count) {
+    notifyItemRangeRemoved(position, count);
+  }
+
+  @Override
+  public void onMoved(int fromPosition, int toPosition) {
+    notifyItemMoved(fromPosition, toPosition);
+  }
+
+  @Override
+  public void onChanged(int position, int count, Object payload) {
+    notifyItemRangeChanged(position, count, payload);
+  }
+}
@@ -488,7 +488,14 @@ public class ConversationFragment extends Fragment
       //setLastSeen(loader.getLastSeen()); -- TODO
     }
 
-    adapter.changeData(dcMsgList);
+    // the list may be applied asynchronously, positions are valid only afterwards
+    adapter.changeData(dcMsgList, () -> onMsgListApplied(adapter, count));
+  }
+
+  private void onMsgListApplied(ConversationAdapter adapter, int count) {
+    if (!isAdded()) {
+      return;
+    }
 
     int lastSeenPosition = adapter.findLastSeenPosition(lastSeen);
 
@@ -895,6 +902,17 @@ public class ConversationFragment extends Fragment
     if(eventId== DcContext.DC_EVENT_MSG_DELIVERED) {
       Log.w(TAG, "DC_EVENT_MSG_DELIVERED reveived for msg#"+(Long)data1);
     }
+
+    // for all observed events, data2 is the id of the affected message or 0 if unspecific
+    ConversationAdapter adapter = getListAdapter();
+    if (adapter != null) {
+      int msgId = data2 instanceof Long ? (int) (long) (Long) data2 : 0;
+      if (msgId != 0) {
+        adapter.invalidateMsg(msgId);
+      } else if (eventId != DcContext.DC_EVENT_INCOMING_MSG) {
+        adapter.reloadData();
+      }
+    }
     reloadList();
   }
 }
@@ -41,7 +41,7 @@ import com.b44t.messenger.DcChat;
 import com.b44t.messenger.DcContact;
 import com.b44t.messenger.DcMsg;
 
-import org.thoughtcrime.securesms.audio.AudioSlidePlayer;
+import org.thoughtcrime.securesms.audio.AudioDurationLoader;
 import org.thoughtcrime.securesms.components.AudioView;
 import org.thoughtcrime.securesms.components.AvatarImageView;
 import org.thoughtcrime.securesms.components.ConversationItemFooter;
@@ -361,22 +361,6 @@ public class ConversationItem extends LinearLayout
   {
     boolean showControls = !messageRecord.isFailed();
 
-    class SetDurationListener implements AudioSlidePlayer.Listener {
-      @Override
-      public void onStart() {}
-
-      @Override
-      public void onStop() {}
-
-      @Override
-      public void onProgress(double progress, int millis) {}
-
-      @Override
-      public void onReceivedDuration(int millis) {
-        messageRecord.lateFilingMediaSize(0,0, millis);
-        audioViewStub.get().setDuration(millis);
-      }
-    }
     if (hasAudio(messageRecord)) {
       audioViewStub.get().setVisibility(View.VISIBLE);
       if (mediaThumbnailStub.resolved()) mediaThumbnailStub.get().setVisibility(View.GONE);
@@ -392,9 +376,11 @@ public class ConversationItem extends LinearLayout
       } else {
         int duration = messageRecord.getDuration();
         if (duration == 0) {
-          AudioSlide audio = new AudioSlide(context, messageRecord);
-          AudioSlidePlayer audioSlidePlayer = AudioSlidePlayer.createFor(getContext(), audio, new SetDurationListener());
-          audioSlidePlayer.requestDuration();
+          AudioDurationLoader.requestDuration(messageRecord, millis -> {
+            if (this.messageRecord == messageRecord) {
+              audioViewStub.get().setDuration(millis);
+            }
+          });
         }
 
         audioViewStub.get().setAudio(new AudioSlide(context, messageRecord), showControls, duration);
@@ -20,6 +20,7 @@ import android.content.Context;
 import android.database.Cursor;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.v7.util.ListUpdateCallback;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -27,11 +28,11 @@ import android.view.ViewGroup;
 
 import com.b44t.messenger.DcChat;
 import com.b44t.messenger.DcChatlist;
-import com.b44t.messenger.DcLot;
 
-import org.thoughtcrime.securesms.connect.ApplicationDcContext;
-import org.thoughtcrime.securesms.connect.DcHelper;
+import org.thoughtcrime.securesms.connect.DcChatlistSnapshot;
 import org.thoughtcrime.securesms.mms.GlideRequests;
+import org.thoughtcrime.securesms.util.IdListDiff;
+import org.thoughtcrime.securesms.util.Util;
 
 import java.util.Collections;
 import java.util.HashSet;
@@ -43,15 +44,15 @@ import java.util.Set;
  *
  * @author Moxie Marlinspike
  */
-class ConversationListAdapter extends RecyclerView.Adapter {
+class ConversationListAdapter extends RecyclerView.Adapter implements ListUpdateCallback {
 
   private static final int MESSAGE_TYPE_SWITCH_ARCHIVE = 1;
   private static final int MESSAGE_TYPE_THREAD         = 2;
   private static final int MESSAGE_TYPE_INBOX_ZERO     = 3;
   private static final int MESSAGE_TYPE_DEADDROP       = 4; // DEADDROP and THREAD share the same class, however, for DEADDROP it is modified on construction so it cannot be reused
 
-  private final @NonNull  ApplicationDcContext dcContext;
-  private @NonNull        DcChatlist           dcChatlist;
+  private final @NonNull  Context              context;
+  private @NonNull        DcChatlistSnapshot   chatlist;
   private final @NonNull  GlideRequests        glideRequests;
   private final @NonNull  Locale               locale;
   private final @NonNull  LayoutInflater       inflater;
@@ -60,6 +61,13 @@ class ConversationListAdapter extends RecyclerView.Adapter {
   private final Set<Long> batchSet  = Collections.synchronizedSet(new HashSet<Long>());
   private       boolean   batchMode = false;
 
+  // chat ids and content keys of the shown chatlist, used to calculate the updates for the next chatlist
+  private @NonNull int[]      chatIds  = new int[0];
+  private @NonNull long[]     chatKeys = new long[0];
+  private int                 changeDataGeneration = 0;
+  private final Set<Integer>  changedChatIds = new HashSet<>();
+  private boolean             allChatsChanged = false;
+
   protected static class ViewHolder extends RecyclerView.ViewHolder {
     public <V extends View & BindableConversationListItem> ViewHolder(final @NonNull V itemView)
     {
@@ -73,12 +81,12 @@ class ConversationListAdapter extends RecyclerView.Adapter {
 
   @Override
   public int getItemCount() {
-    return dcChatlist.getCnt();
+    return chatlist.getCnt();
   }
 
   @Override
   public long getItemId(int i) {
-    return dcChatlist.getChatId(i);
+    return chatlist.getChatId(i);
   }
 
   ConversationListAdapter(@NonNull Context context,
@@ -89,8 +97,8 @@ class ConversationListAdapter extends RecyclerView.Adapter {
   {
     super();
     this.glideRequests  = glideRequests;
-    this.dcContext      = DcHelper.getContext(context);
-    this.dcChatlist     = new DcChatlist(0);
+    this.context        = context;
+    this.chatlist       = new DcChatlistSnapshot(context, new DcChatlist(0));
     this.locale         = locale;
     this.inflater       = LayoutInflater.from(context);
     this.clickListener  = clickListener;
@@ -130,14 +138,12 @@ class ConversationListAdapter extends RecyclerView.Adapter {
   @Override
   public void onBindViewHolder(RecyclerView.ViewHolder viewHolder, int i) {
     ViewHolder holder = (ViewHolder)viewHolder;
-    DcChat chat = dcContext.getChat(dcChatlist.getChatId(i));
-    DcLot summary = dcChatlist.getSummary(i, chat);
-    holder.getItem().bind(dcContext.getThreadRecord(summary, chat), dcChatlist.getMsgId(i), summary, glideRequests, locale, batchSet, batchMode);
+    holder.getItem().bind(chatlist.getThreadRecord(context, i), chatlist.getMsgId(i), glideRequests, locale, batchSet, batchMode);
   }
 
   @Override
   public int getItemViewType(int i) {
-    int chatId = dcChatlist.getChatId(i);
+    int chatId = chatlist.getChatId(i);
 
     if (chatId==DcChat.DC_CHAT_ID_DEADDROP) {
       return MESSAGE_TYPE_DEADDROP;
@@ -174,8 +180,8 @@ class ConversationListAdapter extends RecyclerView.Adapter {
   }
 
   void selectAllThreads() {
-    for (int i = 0; i < dcChatlist.getCnt(); i++) {
-      long threadId = dcChatlist.getChatId(i);
+    for (int i = 0; i < chatlist.getCnt(); i++) {
+      long threadId = chatlist.getChatId(i);
       if (threadId > DcChat.DC_CHAT_ID_LAST_SPECIAL) {
         batchSet.add(threadId);
       }
@@ -185,12 +191,7 @@ class ConversationListAdapter extends RecyclerView.Adapter {
 
   int getDeaddropContactId()
   {
-    for (int i = 0; i < dcChatlist.getCnt(); i++) {
-      if (dcChatlist.getChatId(i) == DcChat.DC_CHAT_ID_DEADDROP) {
-       return dcContext.getMsg(dcChatlist.getMsgId(i)).getFromId();
-      }
-    }
-    return 0;
+    return chatlist.getDeaddropContactId();
   }
 
   interface ItemClickListener {
@@ -199,8 +200,86 @@ class ConversationListAdapter extends RecyclerView.Adapter {
     void onSwitchToArchive();
   }
 
-  void changeData(@Nullable DcChatlist chatlist) {
-    dcChatlist = chatlist==null? new DcChatlist(0) : chatlist;
-    notifyDataSetChanged();
+  void changeData(@Nullable DcChatlistSnapshot chatlist) {
+    final DcChatlistSnapshot newChatlist = chatlist==null? new DcChatlistSnapshot(context, new DcChatlist(0)) : chatlist;
+    final int        generation  = ++changeDataGeneration;
+
+    if (newChatlist.getCnt() == 0) {
+      applyData(newChatlist, new int[0], new long[0]);
+      notifyDataSetChanged();
+      return;
+    }
+
+    // calculating the diff is done in the background;
+    // the result is applied only if there was no newer call to changeData() meanwhile.
+    final int[]        oldChatIds  = chatIds;
+    final long[]       oldChatKeys = chatKeys;
+    final Set<Integer> changed     = new HashSet<>(changedChatIds);
+    final boolean      allChanged  = allChatsChanged;
+    Util.runOnBackground(() -> {
+      int    cnt         = newChatlist.getCnt();
+      int[]  newChatIds  = new int[cnt];
+      long[] newChatKeys = new long[cnt];
+      for (int i = 0; i < cnt; i++) {
+        newChatIds[i]  = newChatlist.getChatId(i);
+        newChatKeys[i] = getChatKey(newChatIds[i], newChatlist.getMsgId(i), newChatlist.getFreshMsgCount(i));
+      }
+
+      IdListDiff diff = IdListDiff.calculate(oldChatIds, newChatIds,
+          (id, oldIndex, newIndex) -> allChanged || changed.contains(id) || oldChatKeys[oldIndex] != newChatKeys[newIndex]);
+
+      Util.runOnMain(() -> {
+        if (generation == changeDataGeneration) {
+          applyData(newChatlist, newChatIds, newChatKeys);
+          changedChatIds.removeAll(changed);
+          if (allChanged) allChatsChanged = false;
+          diff.dispatchUpdatesTo(this);
+        }
+      });
+    });
+  }
+
+  private void applyData(@NonNull DcChatlistSnapshot chatlist, @NonNull int[] chatIds, @NonNull long[] chatKeys) {
+    this.chatlist   = chatlist;
+    this.chatIds    = chatIds;
+    this.chatKeys   = chatKeys;
+  }
+
+  private static long getChatKey(int chatId, int msgId, int freshMsgCount) {
+    // if the last message or the number of unread messages differ, the item needs to be redrawn
+    if (chatId <= DcChat.DC_CHAT_ID_LAST_SPECIAL) freshMsgCount = 0;
+    return ((long)msgId << 32) | (freshMsgCount & 0xffffffffL);
+  }
+
+  /**
+   * Mark a chat as changed, eg. after a name change or a changed message state;
+   * the item is redrawn on the next call to changeData().
+   */
+  void invalidateChat(int chatId) {
+    changedChatIds.add(chatId);
+  }
+
+  void invalidateAllChats() {
+    allChatsChanged = true;
+  }
+
+  @Override
+  public void onInserted(int position, int count) {
+    notifyItemRangeInserted(position, count);
+  }
+
+  @Override
+  public void onRemoved(int position, int count) {
+    notifyItemRangeRemoved(position, count);
+  }
+
+  @Override
+  public void onMoved(int fromPosition, int toPosition) {
+    notifyItemMoved(fromPosition, toPosition);
+  }
+
+  @Override
+  public void onChanged(int position, int count, Object payload) {
+    notifyItemRangeChanged(position, count, payload);
   }
-}
\ No newline at end of file
+}
@@ -50,7 +50,6 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import com.b44t.messenger.DcChat;
-import com.b44t.messenger.DcChatlist;
 import com.b44t.messenger.DcContact;
 import com.b44t.messenger.DcContext;
 import com.b44t.messenger.DcEventCenter;
@@ -63,6 +62,7 @@ import org.thoughtcrime.securesms.components.reminder.Reminder;
 import org.thoughtcrime.securesms.components.reminder.ReminderView;
 import org.thoughtcrime.securesms.connect.ApplicationDcContext;
 import org.thoughtcrime.securesms.connect.DcChatlistLoader;
+import org.thoughtcrime.securesms.connect.DcChatlistSnapshot;
 import org.thoughtcrime.securesms.connect.DcHelper;
 import org.thoughtcrime.securesms.mms.GlideApp;
 import org.thoughtcrime.securesms.util.DynamicTheme;
@@ -77,7 +77,7 @@ import java.util.Set;
 
 
 public class ConversationListFragment extends Fragment
-  implements LoaderManager.LoaderCallbacks<DcChatlist>, ActionMode.Callback, ItemClickListener, DcEventCenter.DcEventDelegate
+  implements LoaderManager.LoaderCallbacks<DcChatlistSnapshot>, ActionMode.Callback, ItemClickListener, DcEventCenter.DcEventDelegate
 {
   public static final String ARCHIVE = "archive";
 
@@ -327,7 +327,7 @@ public class ConversationListFragment extends Fragment
   }
 
   @Override
-  public Loader<DcChatlist> onCreateLoader(int arg0, Bundle arg1) {
+  public Loader<DcChatlistSnapshot> onCreateLoader(int arg0, Bundle arg1) {
     int listflags = 0;
     if(archive) {
       listflags |= DcContext.DC_GCL_ARCHIVED_ONLY;
@@ -341,7 +341,7 @@ public class ConversationListFragment extends Fragment
 
   boolean forceListRedraw;
   @Override
-  public void onLoadFinished(Loader<DcChatlist> arg0, DcChatlist chatlist) {
+  public void onLoadFinished(Loader<DcChatlistSnapshot> arg0, DcChatlistSnapshot chatlist) {
     if (chatlist.getCnt() <= 0 && TextUtils.isEmpty(queryFilter) && !archive) {
       list.setVisibility(View.INVISIBLE);
       emptyState.setVisibility(View.VISIBLE);
@@ -374,7 +374,7 @@ public class ConversationListFragment extends Fragment
   }
 
   @Override
-  public void onLoaderReset(Loader<DcChatlist> arg0) {
+  public void onLoaderReset(Loader<DcChatlistSnapshot> arg0) {
     getListAdapter().changeData(null);
   }
 
@@ -601,8 +601,21 @@ public class ConversationListFragment extends Fragment
 
   @Override
   public void handleEvent(int eventId, Object data1, Object data2) {
+    // for all observed events, data1 is the id of the affected chat or 0 if unspecific
+    int chatId = data1 instanceof Long ? (int) (long) (Long) data1 : 0;
+    if (chatId != 0) {
+      getListAdapter().invalidateChat(chatId);
+    } else {
+      getListAdapter().invalidateAllChats();
+    }
     getLoaderManager().restartLoader(0,null,this);
   }
+
+  @Override
+  public boolean coalesceEvents() {
+    // the whole list is reloaded anyway, so there is no need to do this for every single event
+    return true;
+  }
 }
 
 
@@ -38,7 +38,6 @@ import com.annimon.stream.Stream;
 import com.b44t.messenger.DcChat;
 import com.b44t.messenger.DcContact;
 import com.b44t.messenger.DcContext;
-import com.b44t.messenger.DcLot;
 import com.b44t.messenger.DcMsg;
 
 import org.thoughtcrime.securesms.components.AvatarImageView;
@@ -51,7 +50,6 @@ import org.thoughtcrime.securesms.mms.GlideRequests;
 import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.util.DateUtils;
 import org.thoughtcrime.securesms.util.ResUtil;
-import org.thoughtcrime.securesms.util.Prefs;
 import org.thoughtcrime.securesms.util.ThemeUtil;
 import org.thoughtcrime.securesms.util.ViewUtil;
 
@@ -69,7 +67,6 @@ public class ConversationListItem extends RelativeLayout
   private final static Typeface  BOLD_TYPEFACE  = Typeface.create("sans-serif-medium", Typeface.NORMAL);
   private final static Typeface  LIGHT_TYPEFACE = Typeface.create("sans-serif", Typeface.NORMAL);
 
-  private DcLot              dcSummary;
   private Set<Long>          selectedThreads;
   private long               threadId;
   private int                msgId;
@@ -112,25 +109,22 @@ public class ConversationListItem extends RelativeLayout
   @Override
   public void bind(@NonNull ThreadRecord thread,
                    int msgId,
-                   @NonNull DcLot dcSummary,
                    @NonNull GlideRequests glideRequests,
                    @NonNull Locale locale,
                    @NonNull Set<Long> selectedThreads,
                    boolean batchMode)
   {
-    bind(thread, msgId, dcSummary, glideRequests, locale, selectedThreads, batchMode, null);
+    bind(thread, msgId, glideRequests, locale, selectedThreads, batchMode, null);
   }
 
   public void bind(@NonNull ThreadRecord thread,
                    int msgId,
-                   @NonNull DcLot dcSummary,
                    @NonNull GlideRequests glideRequests,
                    @NonNull Locale locale,
                    @NonNull Set<Long> selectedThreads,
                    boolean batchMode,
                    @Nullable String highlightSubstring)
   {
-    this.dcSummary        = dcSummary;
     this.selectedThreads  = selectedThreads;
     Recipient recipient   = thread.getRecipient();
     this.threadId         = thread.getThreadId();
@@ -162,17 +156,17 @@ public class ConversationListItem extends RelativeLayout
     setBatchState(batchMode);
     setBgColor();
 
-    ApplicationDcContext dcContext = DcHelper.getContext(getContext());
-    if(threadId==DcChat.DC_CHAT_ID_DEADDROP) {
+    if(threadId==DcChat.DC_CHAT_ID_DEADDROP && !thread.hasAvatarRecipient()) {
+      ApplicationDcContext dcContext = DcHelper.getContext(getContext());
       DcContact dcContact = dcContext.getContact(dcContext.getMsg(msgId).getFromId());
       this.contactPhotoImage.setAvatar(glideRequests, dcContext.getRecipient(dcContact), false);
     }
     else {
-      this.contactPhotoImage.setAvatar(glideRequests, recipient, false);
+      this.contactPhotoImage.setAvatar(glideRequests, thread.getAvatarRecipient(), false);
     }
 
     fromView.setCompoundDrawablesWithIntrinsicBounds(
-        Prefs.isChatMuted(getContext(), (int)threadId)? R.drawable.ic_volume_off_grey600_18dp : 0,
+        thread.isMuted()? R.drawable.ic_volume_off_grey600_18dp : 0,
         0,
         thread.isVerified()? R.drawable.ic_verified : 0,
         0);
@@ -268,7 +262,7 @@ public class ConversationListItem extends RelativeLayout
     else
     {
       this.archivedView.setVisibility(View.GONE);
-      int state = dcSummary.getState();
+      int state = thread.getSummaryState();
       if (state==DcMsg.DC_STATE_IN_FRESH || state==DcMsg.DC_STATE_IN_NOTICED)
       {
         // incoming
@@ -39,6 +39,7 @@ import com.b44t.messenger.DcContext;
 
 import org.thoughtcrime.securesms.connect.DcHelper;
 import org.thoughtcrime.securesms.util.Scrubber;
+import org.thoughtcrime.securesms.util.WakeLockRegistry;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -200,6 +201,9 @@ public class LogViewFragment extends Fragment {
     DcContext dcContext = DcHelper.getContext(context);
     builder.append(dcContext.getInfo());
 
+    builder.append("\n");
+    builder.append(WakeLockRegistry.dump());
+
     return builder.toString();
   }
 }
@@ -44,16 +44,18 @@ import android.view.LayoutInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.webkit.MimeTypeMap;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import com.b44t.messenger.DcChatlist;
 import com.b44t.messenger.DcContext;
 import com.b44t.messenger.DcEventCenter;
 import com.b44t.messenger.DcMsg;
 
 import org.thoughtcrime.securesms.connect.ApplicationDcContext;
+import org.thoughtcrime.securesms.connect.BlobImporter;
 import org.thoughtcrime.securesms.connect.DcChatlistLoader;
+import org.thoughtcrime.securesms.connect.DcChatlistSnapshot;
 import org.thoughtcrime.securesms.connect.DcHelper;
 import org.thoughtcrime.securesms.database.Address;
 import org.thoughtcrime.securesms.mms.GlideApp;
@@ -67,16 +69,18 @@ import org.thoughtcrime.securesms.util.FileUtils;
 import org.thoughtcrime.securesms.util.MediaUtil;
 import org.thoughtcrime.securesms.util.Util;
 import org.thoughtcrime.securesms.util.ViewUtil;
+import org.thoughtcrime.securesms.util.views.ProgressDialog;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * An activity to quickly share content with chats
@@ -106,6 +110,7 @@ public class ShareActivity extends PassphraseRequiredActionBarActivity
   private ShareFragment shareFragment;
   private View                         progressWheel;
   private List<Uri>                    resolvedExtras;
+  private List<Uri>                    sharedUris;
   private boolean                      isPassingAlongMedia;
   private ApplicationDcContext         dcContext;
   private boolean                      isForward;
@@ -210,6 +215,7 @@ public class ShareActivity extends PassphraseRequiredActionBarActivity
   private void initializeMedia() {
     isPassingAlongMedia = false;
     resolvedExtras = new ArrayList<>();
+    sharedUris = new ArrayList<>();
 
     List<Uri> streamExtras = new ArrayList<>();
     if (Intent.ACTION_SEND.equals(getIntent().getAction())) {
@@ -264,6 +270,17 @@ public class ShareActivity extends PassphraseRequiredActionBarActivity
   }
 
   private void resolveUris(List<Uri> streamExtras) {
+    if (streamExtras.size() > 1) {
+      // several files are sent directly, they are copied to the blobdir only when sending
+      for (Uri streamExtra : streamExtras) {
+        if (streamExtra != null) {
+          sharedUris.add(streamExtra);
+        }
+      }
+      handleResolvedMedia(getIntent(), false);
+      return;
+    }
+
     for (Uri streamExtra : streamExtras) {
       if (streamExtra != null && PartAuthority.isLocalUri(streamExtra)) {
         isPassingAlongMedia = true;
@@ -314,8 +331,8 @@ public class ShareActivity extends PassphraseRequiredActionBarActivity
   }
 
   private void createConversation(int threadId) {
-    if (resolvedExtras.size() > 1) {
-      String message = String.format(getString(R.string.share_multiple_attachments), resolvedExtras.size());
+    if (sharedUris.size() > 1) {
+      String message = String.format(getString(R.string.share_multiple_attachments), sharedUris.size());
       new AlertDialog.Builder(this)
               .setMessage(message)
               .setCancelable(true)
@@ -327,11 +344,43 @@ public class ShareActivity extends PassphraseRequiredActionBarActivity
   }
 
   private void sendMultipleAttachmentsAndCreateConversation(int threadId) {
-    for(Uri uri : resolvedExtras) {
-      DcMsg message = createMessage(uri);
-      dcContext.sendMsg(threadId, message);
+    final List<SharedUriSource> sources = new ArrayList<>();
+    for (Uri uri : sharedUris) {
+      sources.add(new SharedUriSource(uri));
     }
-    openConversation(threadId);
+
+    final ProgressDialog progressDialog = ProgressDialog.show(this, "", getString(R.string.one_moment), true, false);
+    final BlobImporter   importer       = new BlobImporter(new File(dcContext.getBlobdir()), dcContext.getBlobIndex());
+    final AtomicInteger  shownPercent   = new AtomicInteger(-1);
+
+    Util.runOnBackground(() -> {
+      File[] files;
+      try {
+        files = importer.importAll(sources, (filesDone, filesTotal, bytesDone, bytesTotal) -> {
+          int percent = bytesTotal > 0 ? (int) Math.min(100, bytesDone * 100 / bytesTotal) : filesDone * 100 / filesTotal;
+          if (shownPercent.getAndSet(percent) != percent) {
+            Util.runOnMain(() -> progressDialog.setMessage(String.format(Locale.ROOT, "%s %d%%", getString(R.string.one_moment), percent)));
+          }
+        });
+      } catch (InterruptedException e) {
+        files = new File[0];
+      }
+
+      for (int i = 0; i < files.length; i++) {
+        if (files[i] != null) {
+          dcContext.sendMsg(threadId, createMessage(files[i].getPath(), sources.get(i).getMimeType()));
+        } else {
+          Log.w(TAG, "cannot import " + sources.get(i).uri);
+        }
+      }
+
+      Util.runOnMain(() -> {
+        if (!isFinishing()) {
+          progressDialog.dismiss();
+          openConversation(threadId);
+        }
+      });
+    });
   }
 
   private void openConversation(int threadId) {
@@ -341,9 +390,8 @@ public class ShareActivity extends PassphraseRequiredActionBarActivity
       startActivity(intent);
   }
 
-  private DcMsg createMessage(Uri uri) {
+  private DcMsg createMessage(String path, String mimeType) {
     DcMsg message;
-    String mimeType = MediaUtil.getMimeType(this, uri);
     if (MediaUtil.isImageType(mimeType)) {
       message = new DcMsg(dcContext, DcMsg.DC_MSG_IMAGE);
     }
@@ -356,36 +404,10 @@ public class ShareActivity extends PassphraseRequiredActionBarActivity
     else {
       message = new DcMsg(dcContext, DcMsg.DC_MSG_FILE);
     }
-    message.setFile(getRealPathFromUri(uri), mimeType);
+    message.setFile(path, mimeType);
     return message;
   }
 
-  private String getRealPathFromUri(Uri uri) {
-    try {
-      String filename = uri.getPathSegments().get(2); // Get real file name from Uri
-      String ext = "";
-      int i = filename.lastIndexOf(".");
-      if(i>=0) {
-        ext = filename.substring(i);
-        filename = filename.substring(0, i);
-      }
-      String path = dcContext.getBlobdirFile(filename, ext);
-
-      // copy content to this file
-      if(path!=null) {
-        InputStream inputStream = PartAuthority.getAttachmentStream(this, uri);
-        OutputStream outputStream = new FileOutputStream(path);
-        Util.copy(inputStream, outputStream);
-      }
-
-      return path;
-    }
-    catch(Exception e) {
-      e.printStackTrace();
-      return null;
-    }
-  }
-
   private Intent getBaseShareIntent(final @NonNull Class<?> target) {
     if (resolvedExtras.size() == 1) {
       final Intent intent = new Intent(this, target);
@@ -471,20 +493,100 @@ public class ShareActivity extends PassphraseRequiredActionBarActivity
       resolvedExtras.add(uri);
       handleResolvedMedia(getIntent(), true);
     }
+  }
+
+  /**
+   * A shared file that is read only once, when it is copied to the blobdir.
+   */
+  private class SharedUriSource implements BlobImporter.Source {
+    private final Uri uri;
+
+    private String name;
+    private long   size = -1;
+    private String mimeType;
+
+    SharedUriSource(Uri uri) {
+      this.uri = uri;
+    }
 
-    private InputStream openFileUri(Uri uri) throws IOException {
-      FileInputStream fin   = new FileInputStream(uri.getPath());
-      int             owner = FileUtils.getFileDescriptorOwner(fin.getFD());
+    private synchronized void resolve() {
+      if (mimeType != null) {
+        return;
+      }
+      mimeType = getMimeType(uri);
+
+      if (hasFileScheme(uri)) {
+        if (uri.getPath() != null) {
+          File file = new File(uri.getPath());
+          name = file.getName();
+          size = file.length();
+        }
+      } else if (PartAuthority.isLocalUri(uri)) {
+        name = PartAuthority.getAttachmentFileName(ShareActivity.this, uri);
+        Long attachmentSize = PartAuthority.getAttachmentSize(ShareActivity.this, uri);
+        if (attachmentSize != null) size = attachmentSize;
+      } else {
+        Cursor cursor = null;
+        try {
+          cursor = getContentResolver().query(uri, new String[] {OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE}, null, null, null);
+          if (cursor != null && cursor.moveToFirst()) {
+            name = cursor.getString(cursor.getColumnIndexOrThrow(OpenableColumns.DISPLAY_NAME));
+            size = cursor.getLong(cursor.getColumnIndexOrThrow(OpenableColumns.SIZE));
+          }
+        } catch (IllegalArgumentException | SecurityException e) {
+          Log.w(TAG, e);
+        } finally {
+          if (cursor != null) cursor.close();
+        }
+      }
+
+      if (name == null) {
+        String ext = MimeTypeMap.getSingleton().getExtensionFromMimeType(mimeType);
+        name = new SimpleDateFormat("yyyy-MM-dd-HH-mm", Locale.ROOT).format(new Date()) + (ext != null ? "." + ext : "");
+      }
+    }
+
+    String getMimeType() {
+      resolve();
+      return mimeType;
+    }
+
+    @Override
+    public String getName() {
+      resolve();
+      return name;
+    }
+
+    @Override
+    public long getSize() {
+      resolve();
+      return size;
+    }
 
+    @Override
+    public InputStream open() throws IOException {
+      if (hasFileScheme(uri))            return openFileUri(uri);
+      if (PartAuthority.isLocalUri(uri)) return PartAuthority.getAttachmentStream(ShareActivity.this, uri);
 
-      if (owner == -1 || owner == Process.myUid()) {
-        fin.close();
-        throw new IOException("File owned by application");
+      InputStream inputStream = getContentResolver().openInputStream(uri);
+      if (inputStream == null) {
+        throw new IOException("Cannot open " + uri);
       }
+      return inputStream;
+    }
+  }
+
+  private InputStream openFileUri(Uri uri) throws IOException {
+    FileInputStream fin   = new FileInputStream(uri.getPath());
+    int             owner = FileUtils.getFileDescriptorOwner(fin.getFD());
+
 
-      return fin;
+    if (owner == -1 || owner == Process.myUid()) {
+      fin.close();
+      throw new IOException("File owned by application");
     }
 
+    return fin;
   }
 
   private boolean hasFileScheme(Uri uri) {
@@ -496,7 +598,7 @@ public class ShareActivity extends PassphraseRequiredActionBarActivity
 
   public static class ShareFragment
           extends Fragment
-          implements LoaderManager.LoaderCallbacks<DcChatlist>, ConversationListAdapter.ItemClickListener, DcEventCenter.DcEventDelegate {
+          implements LoaderManager.LoaderCallbacks<DcChatlistSnapshot>, ConversationListAdapter.ItemClickListener, DcEventCenter.DcEventDelegate {
 
 
     private RecyclerView recyclerView;
@@ -534,15 +636,14 @@ public class ShareActivity extends PassphraseRequiredActionBarActivity
     }
 
     @Override
-    public Loader<DcChatlist> onCreateLoader(int arg0, Bundle arg1) {
+    public Loader<DcChatlistSnapshot> onCreateLoader(int arg0, Bundle arg1) {
       return new DcChatlistLoader(getActivity(), 0, null , 0);
     }
 
     @Override
-    public void onLoadFinished(Loader<DcChatlist> arg0, DcChatlist chatlist) {
-      ConversationListAdapter adapter = getConversationListAdapter();
-      adapter.changeData(chatlist);
-      adapter.notifyDataSetChanged();
+    public void onLoadFinished(Loader<DcChatlistSnapshot> arg0, DcChatlistSnapshot chatlist) {
+      // changeData() notifies the adapter itself once the list is applied
+      getConversationListAdapter().changeData(chatlist);
     }
 
     private ConversationListAdapter getConversationListAdapter() {
@@ -550,10 +651,8 @@ public class ShareActivity extends PassphraseRequiredActionBarActivity
     }
 
     @Override
-    public void onLoaderReset(Loader<DcChatlist> loader) {
-      ConversationListAdapter adapter = getConversationListAdapter();
-      adapter.changeData(null);
-      adapter.notifyDataSetChanged();
+    public void onLoaderReset(Loader<DcChatlistSnapshot> loader) {
+      getConversationListAdapter().changeData(null);
     }
 
     @Override
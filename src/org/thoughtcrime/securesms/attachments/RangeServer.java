@@ -0,0 +1,486 @@
+package org.thoughtcrime.securesms.attachments;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A small HTTP server on localhost that serves one source with range support, for the media players.
+ *
+ * Connections are accepted and their request headers are read by a single selector thread;
+ * the responses are written by a bounded pool of workers, so several connections can stream at once.
+ * After a response, kept alive connections are handed back to the selector.
+ */
+public class RangeServer {
+
+  private static final Charset ASCII = Charset.forName("US-ASCII");
+
+  private static final int    MAX_HEADER_SIZE = 8 * 1024;
+  private static final int    MAX_WORKERS     = 8;
+  private static final int    COPY_BUFFER     = 64 * 1024;
+  private static final String BOUNDARY        = "3d6b6a416f9b5f2e";
+
+  public interface Source {
+    long getSize();
+
+    String getContentType();
+
+    /**
+     * Writes count bytes, starting at offset, to the target.
+     */
+    void transferTo(long offset, long count, WritableByteChannel target) throws IOException;
+  }
+
+  /**
+   * Serves a plain file; the bytes are transferred from the file to the socket by the kernel.
+   */
+  public static class FileSource implements Source {
+    private final File   file;
+    private final String contentType;
+
+    public FileSource(File file, String contentType) {
+      this.file        = file;
+      this.contentType = contentType;
+    }
+
+    @Override
+    public long getSize() {
+      return file.length();
+    }
+
+    @Override
+    public String getContentType() {
+      return contentType;
+    }
+
+    @Override
+    public void transferTo(long offset, long count, WritableByteChannel target) throws IOException {
+      try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+        FileChannel channel = raf.getChannel();
+        while (count > 0) {
+          long transferred = channel.transferTo(offset, count, target);
+          if (transferred <= 0) {
+            throw new IOException("File ended before " + (offset + count));
+          }
+          offset += transferred;
+          count  -= transferred;
+        }
+      }
+    }
+  }
+
+  /**
+   * Serves a stream that can be opened at any offset, eg. a decrypting one.
+   */
+  public static abstract class StreamSource implements Source {
+    protected abstract InputStream openStream(long offset) throws IOException;
+
+    @Override
+    public void transferTo(long offset, long count, WritableByteChannel target) throws IOException {
+      try (InputStream in = openStream(offset)) {
+        byte[]     buffer = new byte[(int) Math.min(COPY_BUFFER, Math.max(count, 1))];
+        ByteBuffer wrap   = ByteBuffer.wrap(buffer);
+        while (count > 0) {
+          int read = in.read(buffer, 0, (int) Math.min(buffer.length, count));
+          if (read == -1) {
+            throw new IOException("Stream ended before " + (offset + count));
+          }
+          wrap.clear().limit(read);
+          while (wrap.hasRemaining()) {
+            target.write(wrap);
+          }
+          count -= read;
+        }
+      }
+    }
+  }
+
+  private static class Connection {
+    final SocketChannel channel;
+    final ByteBuffer    buffer = ByteBuffer.allocate(MAX_HEADER_SIZE);
+
+    Connection(SocketChannel channel) {
+      this.channel = channel;
+    }
+  }
+
+  private static class Request {
+    String              method;
+    String              path;
+    boolean             keepAlive;
+    Map<String, String> headers = new HashMap<>();
+  }
+
+  private final Source              source;
+  private final byte[]              path;
+  private final ServerSocketChannel serverChannel;
+  private final Selector            selector;
+  private final ThreadPoolExecutor  workers;
+  private final Queue<Connection>   returned = new ConcurrentLinkedQueue<>();
+
+  private volatile boolean running;
+
+  /**
+   * @param auth the secret path the source is served under
+   */
+  public RangeServer(Source source, String auth) throws IOException {
+    this.source        = source;
+    this.path          = ("/" + auth).getBytes(ASCII);
+    this.selector      = Selector.open();
+    this.serverChannel = ServerSocketChannel.open();
+    this.workers       = new ThreadPoolExecutor(0, MAX_WORKERS, 30, TimeUnit.SECONDS, new SynchronousQueue<>());
+
+    serverChannel.socket().bind(new InetSocketAddress(InetAddress.getByAddress(new byte[]{127, 0, 0, 1}), 0));
+    serverChannel.configureBlocking(false);
+    serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+  }
+
+  public int getPort() {
+    return serverChannel.socket().getLocalPort();
+  }
+
+  public void start() {
+    running = true;
+    Thread thread = new Thread(this::runSelector, "RangeServer");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public void stop() {
+    running = false;
+    selector.wakeup();
+  }
+
+  private void runSelector() {
+    try {
+      while (running) {
+        selector.select();
+
+        Connection connection;
+        while ((connection = returned.poll()) != null) {
+          register(connection);
+        }
+
+        List<Connection> dispatch = new ArrayList<>();
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            accept();
+          } else if (key.isReadable()) {
+            connection = (Connection) key.attachment();
+            if (readHeaders(connection)) {
+              key.cancel();
+              dispatch.add(connection);
+            }
+          }
+        }
+
+        if (!dispatch.isEmpty()) {
+          // deregisters the cancelled keys, the channels can be blocking then
+          selector.selectNow();
+          for (Connection c : dispatch) {
+            dispatch(c);
+          }
+        }
+      }
+    } catch (IOException e) {
+      // fall through, the server is closed
+    } finally {
+      shutdown();
+    }
+  }
+
+  private void shutdown() {
+    workers.shutdownNow();
+    for (SelectionKey key : selector.keys()) {
+      closeQuietly(key.channel());
+    }
+    Connection connection;
+    while ((connection = returned.poll()) != null) {
+      closeQuietly(connection.channel);
+    }
+    closeQuietly(serverChannel);
+    closeQuietly(selector);
+  }
+
+  private void accept() throws IOException {
+    SocketChannel channel = serverChannel.accept();
+    if (channel != null) {
+      channel.configureBlocking(false);
+      channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+    }
+  }
+
+  private void register(Connection connection) {
+    try {
+      if (findHeaderEnd(connection.buffer) > 0) {
+        // the next request was read along with the last one
+        dispatch(connection);
+      } else {
+        connection.channel.configureBlocking(false);
+        connection.channel.register(selector, SelectionKey.OP_READ, connection);
+      }
+    } catch (IOException e) {
+      closeQuietly(connection.channel);
+    }
+  }
+
+  /**
+   * @return true if the headers of a request are complete
+   */
+  private boolean readHeaders(Connection connection) {
+    try {
+      int read = connection.channel.read(connection.buffer);
+      if (read == -1 || (findHeaderEnd(connection.buffer) == 0 && !connection.buffer.hasRemaining())) {
+        closeQuietly(connection.channel);
+        return false;
+      }
+      return findHeaderEnd(connection.buffer) > 0;
+    } catch (IOException e) {
+      closeQuietly(connection.channel);
+      return false;
+    }
+  }
+
+  private void dispatch(Connection connection) {
+    try {
+      connection.channel.configureBlocking(true);
+      workers.execute(() -> serve(connection));
+    } catch (IOException | RejectedExecutionException e) {
+      try {
+        writeAscii(connection.channel, "HTTP/1.1 503 Service Unavailable\r\nContent-Length: 0\r\nConnection: close\r\n\r\n");
+      } catch (IOException ignored) {
+        // the connection is closed anyway
+      }
+      closeQuietly(connection.channel);
+    }
+  }
+
+  private void serve(Connection connection) {
+    boolean keepAlive = false;
+    try {
+      Request request = parseRequest(connection.buffer);
+      if (request == null) {
+        writeAscii(connection.channel, "HTTP/1.1 400 Bad Request\r\nContent-Length: 0\r\nConnection: close\r\n\r\n");
+      } else if (!"GET".equals(request.method) && !"HEAD".equals(request.method)) {
+        writeAscii(connection.channel, "HTTP/1.1 405 Method Not Allowed\r\nAllow: GET, HEAD\r\nContent-Length: 0\r\nConnection: close\r\n\r\n");
+      } else if (!MessageDigest.isEqual(request.path.getBytes(ASCII), path)) {
+        writeAscii(connection.channel, "HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\nConnection: close\r\n\r\n");
+      } else {
+        keepAlive = request.keepAlive;
+        respond(connection.channel, request);
+      }
+    } catch (IOException e) {
+      // the client closed the connection, eg. because it seeks
+      keepAlive = false;
+    }
+
+    if (keepAlive && running) {
+      returned.add(connection);
+      selector.wakeup();
+    } else {
+      closeQuietly(connection.channel);
+    }
+  }
+
+  private void respond(SocketChannel channel, Request request) throws IOException {
+    long         size        = source.getSize();
+    String       contentType = source.getContentType() != null ? source.getContentType() : "application/octet-stream";
+    String       connection  = request.keepAlive ? "keep-alive" : "close";
+    boolean      head        = "HEAD".equals(request.method);
+    List<long[]> ranges      = parseRanges(request.headers.get("range"), size);
+
+    if (ranges == null) {
+      writeAscii(channel, "HTTP/1.1 200 OK\r\n" +
+                          "Content-Type: " + contentType + "\r\n" +
+                          "Accept-Ranges: bytes\r\n" +
+                          "Content-Length: " + size + "\r\n" +
+                          "Connection: " + connection + "\r\n\r\n");
+      if (!head && size > 0) {
+        source.transferTo(0, size, channel);
+      }
+    } else if (ranges.isEmpty()) {
+      writeAscii(channel, "HTTP/1.1 416 Range Not Satisfiable\r\n" +
+                          "Content-Range: bytes */" + size + "\r\n" +
+                          "Content-Length: 0\r\n" +
+                          "Connection: " + connection + "\r\n\r\n");
+    } else if (ranges.size() == 1) {
+      long[] range = ranges.get(0);
+      writeAscii(channel, "HTTP/1.1 206 Partial Content\r\n" +
+                          "Content-Type: " + contentType + "\r\n" +
+                          "Accept-Ranges: bytes\r\n" +
+                          "Content-Range: bytes " + range[0] + "-" + range[1] + "/" + size + "\r\n" +
+                          "Content-Length: " + (range[1] - range[0] + 1) + "\r\n" +
+                          "Connection: " + connection + "\r\n\r\n");
+      if (!head) {
+        source.transferTo(range[0], range[1] - range[0] + 1, channel);
+      }
+    } else {
+      List<String> partHeaders = new ArrayList<>();
+      long         length      = 0;
+      for (long[] range : ranges) {
+        String partHeader = "\r\n--" + BOUNDARY + "\r\n" +
+                            "Content-Type: " + contentType + "\r\n" +
+                            "Content-Range: bytes " + range[0] + "-" + range[1] + "/" + size + "\r\n\r\n";
+        partHeaders.add(partHeader);
+        length += partHeader.length() + range[1] - range[0] + 1;
+      }
+      String end = "\r\n--" + BOUNDARY + "--\r\n";
+      length += end.length();
+
+      writeAscii(channel, "HTTP/1.1 206 Partial Content\r\n" +
+                          "Content-Type: multipart/byteranges; boundary=" + BOUNDARY + "\r\n" +
+                          "Accept-Ranges: bytes\r\n" +
+                          "Content-Length: " + length + "\r\n" +
+                          "Connection: " + connection + "\r\n\r\n");
+      if (!head) {
+        for (int i = 0; i < ranges.size(); i++) {
+          long[] range = ranges.get(i);
+          writeAscii(channel, partHeaders.get(i));
+          source.transferTo(range[0], range[1] - range[0] + 1, channel);
+        }
+        writeAscii(channel, end);
+      }
+    }
+  }
+
+  /**
+   * Parses a Range header as of RFC 7233, eg. "bytes=0-499", "bytes=500-", "bytes=-500" or "bytes=0-0,-1".
+   *
+   * @return the first and last byte of each satisfiable range, an empty list if none is satisfiable
+   *         or null if there is no valid Range header and the whole source is to be sent
+   */
+  static List<long[]> parseRanges(String header, long size) {
+    if (header == null || !header.regionMatches(true, 0, "bytes=", 0, 6)) {
+      return null;
+    }
+
+    List<long[]> ranges = new ArrayList<>();
+    for (String spec : header.substring(6).split(",")) {
+      spec = spec.trim();
+      int dash = spec.indexOf('-');
+      if (dash == -1) {
+        return null;
+      }
+      try {
+        String firstString = spec.substring(0, dash).trim();
+        String lastString  = spec.substring(dash + 1).trim();
+        long   first;
+        long   last;
+        if (firstString.isEmpty()) {
+          long suffix = Long.parseLong(lastString);
+          if (suffix < 0) return null;
+          if (suffix == 0) continue;
+          first = Math.max(0, size - suffix);
+          last  = size - 1;
+        } else {
+          first = Long.parseLong(firstString);
+          last  = lastString.isEmpty() ? Long.MAX_VALUE : Long.parseLong(lastString);
+          if (first < 0 || last < first) return null;
+          last = Math.min(last, size - 1);
+        }
+        if (first < size) {
+          ranges.add(new long[]{first, last});
+        }
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+    return ranges;
+  }
+
+  /**
+   * Parses the request at the start of the buffer and removes it from there.
+   */
+  private static Request parseRequest(ByteBuffer buffer) {
+    int end = findHeaderEnd(buffer);
+    String head = new String(buffer.array(), 0, end, ASCII);
+
+    // keep what was read beyond the request
+    buffer.flip();
+    buffer.position(end);
+    buffer.compact();
+
+    String[] lines = head.split("\r\n");
+    String[] requestLine = lines[0].split(" ");
+    if (requestLine.length != 3) {
+      return null;
+    }
+
+    Request request = new Request();
+    request.method  = requestLine[0];
+    request.path    = requestLine[1];
+    for (int i = 1; i < lines.length; i++) {
+      int colon = lines[i].indexOf(':');
+      if (colon > 0) {
+        request.headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT), lines[i].substring(colon + 1).trim());
+      }
+    }
+
+    String connection = request.headers.get("connection");
+    if ("HTTP/1.1".equals(requestLine[2])) {
+      request.keepAlive = connection == null || !connection.equalsIgnoreCase("close");
+    } else {
+      request.keepAlive = connection != null && connection.equalsIgnoreCase("keep-alive");
+    }
+    return request;
+  }
+
+  /**
+   * @return the length of the request headers including the empty line or 0 if they are not complete yet
+   */
+  private static int findHeaderEnd(ByteBuffer buffer) {
+    byte[] bytes = buffer.array();
+    for (int i = 0; i + 3 < buffer.position(); i++) {
+      if (bytes[i] == '\r' && bytes[i + 1] == '\n' && bytes[i + 2] == '\r' && bytes[i + 3] == '\n') {
+        return i + 4;
+      }
+    }
+    return 0;
+  }
+
+  private static void writeAscii(WritableByteChannel channel, String text) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(ASCII));
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    try {
+      closeable.close();
+    } catch (IOException | RuntimeException e) {
+      // nothing to do
+    }
+  }
+}
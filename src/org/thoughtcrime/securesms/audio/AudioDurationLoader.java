@@ -0,0 +1,119 @@
+package org.thoughtcrime.securesms.audio;
+
+import android.media.MediaMetadataRetriever;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.b44t.messenger.DcMsg;
+
+import org.thoughtcrime.securesms.util.LRUCache;
+import org.thoughtcrime.securesms.util.Util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gets the durations of audio messages the core does not know yet.
+ *
+ * The duration is read from the headers of the blob file on a small background pool
+ * and written back to the core once, so the next time the message is loaded, getDuration() has it.
+ * Until then, the results are cached here; parallel requests for the same file are probed only once.
+ */
+public class AudioDurationLoader {
+
+  private static final String TAG = AudioDurationLoader.class.getSimpleName();
+
+  private static final int THREADS    = 2;
+  private static final int CACHE_SIZE = 200;
+
+  public interface Listener {
+    void onDuration(int millis);
+  }
+
+  private static final ExecutorService executor;
+
+  static {
+    ThreadPoolExecutor threadPool = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+    threadPool.allowCoreThreadTimeOut(true);
+    executor = threadPool;
+  }
+
+  private static final LRUCache<String, Integer>     durations = new LRUCache<>(CACHE_SIZE);
+  private static final Map<String, List<Listener>> pending   = new HashMap<>();
+
+  /**
+   * Calls the listener on the main thread when the duration is known; not at all if it cannot be found out.
+   */
+  public static void requestDuration(@NonNull DcMsg msg, @NonNull Listener listener) {
+    final String path = msg.getFile();
+    if (path == null || path.isEmpty()) {
+      return;
+    }
+
+    synchronized (AudioDurationLoader.class) {
+      Integer duration = durations.get(path);
+      if (duration != null) {
+        if (duration > 0) {
+          Util.runOnMain(() -> listener.onDuration(duration));
+        }
+        return;
+      }
+
+      List<Listener> listeners = pending.get(path);
+      if (listeners != null) {
+        listeners.add(listener);
+        return;
+      }
+      listeners = new ArrayList<>();
+      listeners.add(listener);
+      pending.put(path, listeners);
+    }
+
+    executor.execute(() -> {
+      int duration = probe(path);
+      if (duration > 0) {
+        msg.lateFilingMediaSize(0, 0, duration);
+      }
+
+      List<Listener> listeners;
+      synchronized (AudioDurationLoader.class) {
+        durations.put(path, duration);
+        listeners = pending.remove(path);
+      }
+      if (duration > 0 && listeners != null) {
+        Util.runOnMain(() -> {
+          for (Listener l : listeners) {
+            l.onDuration(duration);
+          }
+        });
+      }
+    });
+  }
+
+  private static int probe(String path) {
+    int duration = AudioDurationProbe.getDuration(new File(path));
+    if (duration > 0) {
+      return duration;
+    }
+
+    // unknown container, ask the platform, still without preparing a player
+    MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+    try {
+      retriever.setDataSource(path);
+      String value = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+      return value != null ? Integer.parseInt(value) : 0;
+    } catch (RuntimeException e) {
+      Log.w(TAG, "cannot get duration of " + path, e);
+      return 0;
+    } finally {
+      retriever.release();
+    }
+  }
+}
@@ -0,0 +1,379 @@
+package org.thoughtcrime.securesms.audio;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * Reads the duration of an audio file from its container headers,
+ * without decoding and without the MediaPlayer.
+ *
+ * Supported are MP3 (Xing/Info and VBRI headers or constant bitrate), AAC in ADTS,
+ * Opus and Vorbis in Ogg, M4A/MP4 and WAV.
+ */
+public class AudioDurationProbe {
+
+  private static final int MAX_SYNC_SEARCH = 64 * 1024;
+  private static final int OGG_TAIL_SIZE   = 64 * 1024;
+
+  private static final int[] MPEG1_LAYER3_BITRATES = {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 0};
+  private static final int[] MPEG2_LAYER3_BITRATES = {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160, 0};
+  private static final int[] MPEG1_SAMPLE_RATES    = {44100, 48000, 32000, 0};
+
+  private static final int[] ADTS_SAMPLE_RATES = {96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050,
+                                                  16000, 12000, 11025, 8000, 7350, 0, 0, 0};
+
+  /**
+   * @return the duration in milliseconds or 0 if the format is not known or the file is broken
+   */
+  public static int getDuration(File file) {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      byte[] head = new byte[12];
+      if (raf.length() < head.length) {
+        return 0;
+      }
+      raf.readFully(head);
+
+      long duration;
+      if (startsWith(head, 0, "OggS")) {
+        duration = getOggDuration(raf);
+      } else if (startsWith(head, 4, "ftyp")) {
+        duration = getMp4Duration(raf);
+      } else if (startsWith(head, 0, "RIFF") && startsWith(head, 8, "WAVE")) {
+        duration = getWavDuration(raf);
+      } else {
+        duration = getMpegDuration(file, raf, head);
+      }
+      return duration > 0 && duration < Integer.MAX_VALUE ? (int) duration : 0;
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  // MP3 and ADTS; both may be preceded by an ID3v2 tag
+
+  private static long getMpegDuration(File file, RandomAccessFile raf, byte[] head) throws IOException {
+    long start = 0;
+    if (startsWith(head, 0, "ID3")) {
+      long tagSize = ((head[6] & 0x7f) << 21) | ((head[7] & 0x7f) << 14) | ((head[8] & 0x7f) << 7) | (head[9] & 0x7f);
+      start = 10 + tagSize + ((head[5] & 0x10) != 0 ? 10 : 0);
+    }
+
+    byte[] buffer = new byte[(int) Math.min(MAX_SYNC_SEARCH, raf.length() - start)];
+    if (buffer.length < 4) {
+      return 0;
+    }
+    raf.seek(start);
+    raf.readFully(buffer);
+
+    for (int i = 0; i + 4 <= buffer.length; i++) {
+      if ((buffer[i] & 0xff) != 0xff) {
+        continue;
+      }
+      int b1 = buffer[i + 1] & 0xff;
+      if ((b1 & 0xf6) == 0xf0) {
+        if (isAdtsFrame(buffer, i)) {
+          return getAdtsDuration(file, start + i);
+        }
+      } else if ((b1 & 0xe0) == 0xe0) {
+        long duration = getMp3Duration(raf, buffer, i, start + i);
+        if (duration > 0) {
+          return duration;
+        }
+      }
+    }
+    return 0;
+  }
+
+  private static boolean isAdtsFrame(byte[] buffer, int offset) {
+    if (offset + 7 > buffer.length) {
+      return false;
+    }
+    int frameLength = getAdtsFrameLength(buffer, offset);
+    if (frameLength < 7 || ADTS_SAMPLE_RATES[(buffer[offset + 2] >> 2) & 0x0f] == 0) {
+      return false;
+    }
+    // the next frame has to follow directly, unless the buffer ends before
+    int next = offset + frameLength;
+    return next + 2 > buffer.length || ((buffer[next] & 0xff) == 0xff && (buffer[next + 1] & 0xf6) == 0xf0);
+  }
+
+  private static int getAdtsFrameLength(byte[] header, int offset) {
+    return ((header[offset + 3] & 0x03) << 11) | ((header[offset + 4] & 0xff) << 3) | ((header[offset + 5] & 0xff) >> 5);
+  }
+
+  /**
+   * ADTS has no header with the total length, so the frame headers are counted;
+   * the frames in between are skipped without reading them.
+   */
+  private static long getAdtsDuration(File file, long start) throws IOException {
+    long samples    = 0;
+    int  sampleRate = 0;
+    byte[] header   = new byte[7];
+
+    try (InputStream in = new BufferedInputStream(new FileInputStream(file), 8 * 1024)) {
+      if (!skipFully(in, start)) {
+        return 0;
+      }
+      while (readFully(in, header)) {
+        if ((header[0] & 0xff) != 0xff || (header[1] & 0xf6) != 0xf0) {
+          break;
+        }
+        int frameLength = getAdtsFrameLength(header, 0);
+        if (frameLength < header.length) {
+          break;
+        }
+        if (sampleRate == 0) {
+          sampleRate = ADTS_SAMPLE_RATES[(header[2] >> 2) & 0x0f];
+        }
+        samples += 1024 * ((header[6] & 0x03) + 1);
+        if (!skipFully(in, frameLength - header.length)) {
+          break;
+        }
+      }
+    }
+    return sampleRate > 0 ? samples * 1000 / sampleRate : 0;
+  }
+
+  private static long getMp3Duration(RandomAccessFile raf, byte[] buffer, int offset, long frameStart) throws IOException {
+    int b1 = buffer[offset + 1] & 0xff;
+    int b2 = buffer[offset + 2] & 0xff;
+    int b3 = buffer[offset + 3] & 0xff;
+
+    int version = (b1 >> 3) & 0x03;   // 3: MPEG 1, 2: MPEG 2, 0: MPEG 2.5
+    int layer   = (b1 >> 1) & 0x03;   // 1: Layer III
+    if (version == 1 || layer != 1) {
+      return 0;
+    }
+
+    boolean mpeg1      = version == 3;
+    int     bitrate    = (mpeg1 ? MPEG1_LAYER3_BITRATES : MPEG2_LAYER3_BITRATES)[b2 >> 4];
+    int     sampleRate = MPEG1_SAMPLE_RATES[(b2 >> 2) & 0x03];
+    if (bitrate == 0 || sampleRate == 0) {
+      return 0;
+    }
+    if (!mpeg1) {
+      sampleRate /= version == 2 ? 2 : 4;
+    }
+    int samplesPerFrame = mpeg1 ? 1152 : 576;
+    int frameLength     = samplesPerFrame / 8 * bitrate * 1000 / sampleRate + ((b2 >> 1) & 0x01);
+
+    // the next frame has to follow directly, unless the buffer ends before
+    int next = offset + frameLength;
+    if (next + 2 <= buffer.length && ((buffer[next] & 0xff) != 0xff || (buffer[next + 1] & 0xe0) != 0xe0)) {
+      return 0;
+    }
+
+    boolean mono       = (b3 >> 6) == 3;
+    int     sideInfo   = mpeg1 ? (mono ? 17 : 32) : (mono ? 9 : 17);
+    int     xing       = offset + 4 + sideInfo;
+    if (xing + 12 <= buffer.length && (startsWith(buffer, xing, "Xing") || startsWith(buffer, xing, "Info"))) {
+      int flags = readIntBE(buffer, xing + 4);
+      if ((flags & 0x01) != 0) {
+        return (long) readIntBE(buffer, xing + 8) * samplesPerFrame * 1000 / sampleRate;
+      }
+    }
+
+    int vbri = offset + 4 + 32;
+    if (vbri + 18 <= buffer.length && startsWith(buffer, vbri, "VBRI")) {
+      return (long) readIntBE(buffer, vbri + 14) * samplesPerFrame * 1000 / sampleRate;
+    }
+
+    long length = raf.length() - frameStart;
+    if (raf.length() >= 128) {
+      byte[] tag = new byte[3];
+      raf.seek(raf.length() - 128);
+      raf.readFully(tag);
+      if (startsWith(tag, 0, "TAG")) {
+        length -= 128;
+      }
+    }
+    return length * 8 / bitrate;
+  }
+
+  // Ogg: the granule position of the last page is the number of samples
+
+  private static long getOggDuration(RandomAccessFile raf) throws IOException {
+    byte[] page = new byte[27 + 255 + 19];
+    raf.seek(0);
+    int read = raf.read(page);
+    if (read < 27 + 1) {
+      return 0;
+    }
+    int  serial   = readIntLE(page, 14);
+    int  packet   = 27 + (page[26] & 0xff);
+    long preSkip  = 0;
+    long sampleRate;
+    if (packet + 12 <= read && startsWith(page, packet, "OpusHead")) {
+      preSkip    = readShortLE(page, packet + 10);
+      sampleRate = 48000;
+    } else if (packet + 16 <= read && page[packet] == 1 && startsWith(page, packet + 1, "vorbis")) {
+      sampleRate = readIntLE(page, packet + 12) & 0xffffffffL;
+    } else {
+      return 0;
+    }
+    if (sampleRate == 0) {
+      return 0;
+    }
+
+    int tailSize = (int) Math.min(OGG_TAIL_SIZE, raf.length());
+    byte[] tail  = new byte[tailSize];
+    raf.seek(raf.length() - tailSize);
+    raf.readFully(tail);
+
+    for (int i = tailSize - 27; i >= 0; i--) {
+      if (startsWith(tail, i, "OggS") && readIntLE(tail, i + 14) == serial) {
+        long granule = readLongLE(tail, i + 6);
+        if (granule > preSkip) {
+          return (granule - preSkip) * 1000 / sampleRate;
+        }
+      }
+    }
+    return 0;
+  }
+
+  // MP4: the duration is in the movie header, moov/mvhd
+
+  private static long getMp4Duration(RandomAccessFile raf) throws IOException {
+    long moov = findBox(raf, 0, raf.length(), "moov");
+    if (moov < 0) {
+      return 0;
+    }
+    long moovEnd = moov + readBoxSize(raf, moov);
+    long mvhd    = findBox(raf, moov + 8, moovEnd, "mvhd");
+    if (mvhd < 0) {
+      return 0;
+    }
+
+    byte[] header = new byte[8 + 4 + 28];
+    raf.seek(mvhd);
+    raf.readFully(header, 0, 12);
+    long timescale;
+    long duration;
+    if (header[8] == 1) {
+      raf.readFully(header, 12, 28);
+      timescale = readIntBE(header, 28) & 0xffffffffL;
+      duration  = readLongBE(header, 32);
+    } else {
+      raf.readFully(header, 12, 16);
+      timescale = readIntBE(header, 20) & 0xffffffffL;
+      duration  = readIntBE(header, 24) & 0xffffffffL;
+    }
+    return timescale > 0 && duration > 0 ? duration * 1000 / timescale : 0;
+  }
+
+  private static long findBox(RandomAccessFile raf, long start, long end, String type) throws IOException {
+    byte[] header = new byte[8];
+    long pos = start;
+    while (pos + 8 <= end) {
+      raf.seek(pos);
+      raf.readFully(header);
+      long size = readBoxSize(raf, pos);
+      if (startsWith(header, 4, type)) {
+        return pos;
+      }
+      if (size < 8) {
+        return -1;
+      }
+      pos += size;
+    }
+    return -1;
+  }
+
+  private static long readBoxSize(RandomAccessFile raf, long pos) throws IOException {
+    raf.seek(pos);
+    long size = raf.readInt() & 0xffffffffL;
+    if (size == 1) {
+      raf.seek(pos + 8);
+      size = raf.readLong();
+    } else if (size == 0) {
+      size = raf.length() - pos;
+    }
+    return size;
+  }
+
+  // WAV: data size divided by the byte rate of the fmt chunk
+
+  private static long getWavDuration(RandomAccessFile raf) throws IOException {
+    byte[] header   = new byte[8];
+    long   byteRate = 0;
+    long   pos      = 12;
+    while (pos + 8 <= raf.length()) {
+      raf.seek(pos);
+      raf.readFully(header);
+      long size = readIntLE(header, 4) & 0xffffffffL;
+      if (startsWith(header, 0, "fmt ") && size >= 12) {
+        byte[] fmt = new byte[12];
+        raf.readFully(fmt);
+        byteRate = readIntLE(fmt, 8) & 0xffffffffL;
+      } else if (startsWith(header, 0, "data")) {
+        size = Math.min(size, raf.length() - pos - 8);
+        return byteRate > 0 ? size * 1000 / byteRate : 0;
+      }
+      pos += 8 + size + (size & 1);
+    }
+    return 0;
+  }
+
+  private static boolean startsWith(byte[] buffer, int offset, String magic) {
+    if (offset < 0 || offset + magic.length() > buffer.length) {
+      return false;
+    }
+    for (int i = 0; i < magic.length(); i++) {
+      if (buffer[offset + i] != magic.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int readIntBE(byte[] b, int offset) {
+    return ((b[offset] & 0xff) << 24) | ((b[offset + 1] & 0xff) << 16) | ((b[offset + 2] & 0xff) << 8) | (b[offset + 3] & 0xff);
+  }
+
+  private static long readLongBE(byte[] b, int offset) {
+    return ((readIntBE(b, offset) & 0xffffffffL) << 32) | (readIntBE(b, offset + 4) & 0xffffffffL);
+  }
+
+  private static int readShortLE(byte[] b, int offset) {
+    return (b[offset] & 0xff) | ((b[offset + 1] & 0xff) << 8);
+  }
+
+  private static int readIntLE(byte[] b, int offset) {
+    return (b[offset] & 0xff) | ((b[offset + 1] & 0xff) << 8) | ((b[offset + 2] & 0xff) << 16) | ((b[offset + 3] & 0xff) << 24);
+  }
+
+  private static long readLongLE(byte[] b, int offset) {
+    return (readIntLE(b, offset) & 0xffffffffL) | ((readIntLE(b, offset + 4) & 0xffffffffL) << 32);
+  }
+
+  private static boolean readFully(InputStream in, byte[] buffer) throws IOException {
+    int offset = 0;
+    while (offset < buffer.length) {
+      int read = in.read(buffer, offset, buffer.length - offset);
+      if (read == -1) {
+        return false;
+      }
+      offset += read;
+    }
+    return true;
+  }
+
+  private static boolean skipFully(InputStream in, long count) throws IOException {
+    while (count > 0) {
+      long skipped = in.skip(count);
+      if (skipped <= 0) {
+        // skip() may return 0 before the end, read() tells
+        if (in.read() == -1) {
+          return false;
+        }
+        skipped = 1;
+      }
+      count -= skipped;
+    }
+    return true;
+  }
+}
@@ -24,6 +24,7 @@ import org.thoughtcrime.securesms.components.emoji.parsing.EmojiPageBitmap;
 import org.thoughtcrime.securesms.components.emoji.parsing.EmojiParser;
 import org.thoughtcrime.securesms.components.emoji.parsing.EmojiTree;
 import org.thoughtcrime.securesms.util.FutureTaskListener;
+import org.thoughtcrime.securesms.util.LRUCache;
 import org.thoughtcrime.securesms.util.Pair;
 import org.thoughtcrime.securesms.util.Util;
 
@@ -38,6 +39,11 @@ class EmojiProvider {
 
   private final EmojiTree emojiTree = new EmojiTree();
 
+  // the same texts are parsed again and again when list items are bound
+  private static final int CANDIDATE_CACHE_SIZE  = 256;
+  private static final int MAX_CACHED_TEXT_LENGTH = 1000;
+  private final LRUCache<String, EmojiParser.CandidateList> candidateCache = new LRUCache<>(CANDIDATE_CACHE_SIZE);
+
   private static final int EMOJI_RAW_HEIGHT = 64;
   private static final int EMOJI_RAW_WIDTH  = 64;
   private static final int EMOJI_VERT_PAD   = 0;
@@ -72,13 +78,26 @@ class EmojiProvider {
     }
 
     for (Pair<String,String> obsolete : EmojiPages.OBSOLETE) {
-      emojiTree.add(obsolete.first(), emojiTree.getEmoji(obsolete.second(), 0, obsolete.second().length()));
+      emojiTree.addAlias(obsolete.first(), obsolete.second());
     }
   }
 
   @Nullable EmojiParser.CandidateList getCandidates(@Nullable CharSequence text) {
     if (text == null) return null;
-    return new EmojiParser(emojiTree).findCandidates(text);
+    if (text.length() > MAX_CACHED_TEXT_LENGTH) return new EmojiParser(emojiTree).findCandidates(text);
+
+    String key = text.toString();
+    EmojiParser.CandidateList candidates;
+    synchronized (candidateCache) {
+      candidates = candidateCache.get(key);
+    }
+    if (candidates == null) {
+      candidates = new EmojiParser(emojiTree).findCandidates(text);
+      synchronized (candidateCache) {
+        candidateCache.put(key, candidates);
+      }
+    }
+    return candidates;
   }
 
   @Nullable Spannable emojify(@Nullable CharSequence text, @NonNull TextView tv) {
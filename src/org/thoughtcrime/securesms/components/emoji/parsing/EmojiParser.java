@@ -24,8 +24,9 @@ package org.thoughtcrime.securesms.components.emoji.parsing;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -39,15 +40,18 @@ public class EmojiParser {
     this.emojiTree = emojiTree;
   }
 
+  /**
+   * Finds the emojis from left to right; at each position, the longest emoji is taken.
+   * Nothing is allocated for texts without emojis.
+   */
   public @NonNull CandidateList findCandidates(@Nullable CharSequence text) {
-    List<Candidate> results = new LinkedList<>();
+    if (text == null) return new CandidateList(Collections.<Candidate>emptyList(), false);
 
-    if (text == null) return new CandidateList(results, false);
-
-    boolean allEmojis = text.length() > 0;
+    List<Candidate> results   = null;
+    boolean         allEmojis = text.length() > 0;
 
     for (int i = 0; i < text.length(); i++) {
-      int emojiEnd = getEmojiEndPos(text, i);
+      int emojiEnd = emojiTree.findEmojiEnd(text, i);
 
       if (emojiEnd != -1) {
         EmojiDrawInfo drawInfo = emojiTree.getEmoji(text, i, emojiEnd);
@@ -58,6 +62,7 @@ public class EmojiParser {
           }
         }
 
+        if (results == null) results = new ArrayList<>();
         results.add(new Candidate(i, emojiEnd, drawInfo));
 
         i = emojiEnd - 1;
@@ -66,23 +71,7 @@ public class EmojiParser {
       }
     }
 
-    return new CandidateList(results, allEmojis);
-  }
-
-  private int getEmojiEndPos(CharSequence text, int startPos) {
-    int best = -1;
-
-    for (int j = startPos + 1; j <= text.length(); j++) {
-      EmojiTree.Matches status = emojiTree.isEmoji(text, startPos, j);
-
-      if (status.exactMatch()) {
-        best = j;
-      } else if (status.impossibleMatch()) {
-        return best;
-      }
-    }
-
-    return best;
+    return new CandidateList(results != null ? results : Collections.<Candidate>emptyList(), allEmojis);
   }
 
   public static class Candidate {
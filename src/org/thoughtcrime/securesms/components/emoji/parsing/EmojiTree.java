@@ -22,11 +22,17 @@ package org.thoughtcrime.securesms.components.emoji.parsing;
 
 import android.support.annotation.Nullable;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Based in part on code from emoji-java
+ *
+ * The tree is built from nodes with maps; for matching, it is compiled into arrays:
+ * the children of a node are stored as a sorted range of chars, so a step is a binary search without boxing.
  */
 public class EmojiTree {
 
@@ -34,6 +40,8 @@ public class EmojiTree {
 
   private static final char TERMINATOR = '\ufe0f';
 
+  private volatile CompiledTree compiled;
+
   public void add(String emojiEncoding, EmojiDrawInfo emoji) {
     EmojiTreeNode tree = root;
 
@@ -46,52 +54,98 @@ public class EmojiTree {
     }
 
     tree.setEmoji(emoji);
+    compiled = null;
   }
 
-  public Matches isEmoji(CharSequence sequence, int startPosition, int endPosition) {
-    if (sequence == null) {
-      return Matches.POSSIBLY;
+  /**
+   * Adds another encoding for an emoji that was added before;
+   * resolved on the nodes, so adding many aliases does not compile the tree each time.
+   */
+  public void addAlias(String aliasEncoding, String emojiEncoding) {
+    EmojiTreeNode node = root;
+    for (int i = 0; i < emojiEncoding.length() && node != null; i++) {
+      node = node.getChild(emojiEncoding.charAt(i));
+    }
+    if (node == null) {
+      return;
     }
 
-    EmojiTreeNode tree = root;
+    EmojiDrawInfo emoji = node.getEmoji();
+    if (emoji == null && !emojiEncoding.isEmpty() && emojiEncoding.charAt(emojiEncoding.length()-1) != TERMINATOR) {
+      EmojiTreeNode terminated = node.getChild(TERMINATOR);
+      emoji = terminated != null ? terminated.getEmoji() : null;
+    }
+    if (emoji != null) {
+      add(aliasEncoding, emoji);
+    }
+  }
 
-    for (int i=startPosition; i<endPosition; i++) {
+  /**
+   * Finds the longest emoji starting at startPosition in a single walk.
+   *
+   * @return the end position of the emoji or -1 if there is no emoji at startPosition
+   */
+  public int findEmojiEnd(CharSequence sequence, int startPosition) {
+    CompiledTree tree = getCompiled();
+    int          node = 0;
+    int          best = -1;
+
+    for (int i = startPosition; i < sequence.length(); i++) {
       char character = sequence.charAt(i);
 
-      if (!tree.hasChild(character)) {
-        return Matches.IMPOSSIBLE;
+      node = tree.getChild(node, character);
+      if (node == -1) {
+        break;
       }
 
-      tree = tree.getChild(character);
+      if (tree.emojis[node] != null) {
+        best = i + 1;
+      } else if (character != TERMINATOR) {
+        int terminated = tree.getChild(node, TERMINATOR);
+        if (terminated != -1 && tree.emojis[terminated] != null) {
+          best = i + 1;
+        }
+      }
     }
 
-    if (tree.isEndOfEmoji()) {
-      return Matches.EXACTLY;
-    } else if (sequence.charAt(endPosition-1) != TERMINATOR && tree.hasChild(TERMINATOR) && tree.getChild(TERMINATOR).isEndOfEmoji()) {
-      return Matches.EXACTLY;
-    } else {
-      return Matches.POSSIBLY;
-    }
+    return best;
   }
 
   public @Nullable EmojiDrawInfo getEmoji(CharSequence unicode, int startPosition, int endPostiion) {
-    EmojiTreeNode tree = root;
+    CompiledTree tree = getCompiled();
+    int          node = 0;
 
     for (int i=startPosition; i<endPostiion; i++) {
-      char character = unicode.charAt(i);
+      node = tree.getChild(node, unicode.charAt(i));
 
-      if (!tree.hasChild(character)) {
+      if (node == -1) {
         return null;
       }
-
-      tree = tree.getChild(character);
     }
 
-    if      (tree.getEmoji() != null)                                                  return tree.getEmoji();
-    else if (unicode.charAt(endPostiion-1) != TERMINATOR && tree.hasChild(TERMINATOR)) return tree.getChild(TERMINATOR).getEmoji();
-    else    return null;
+    if (tree.emojis[node] != null) {
+      return tree.emojis[node];
+    } else if (unicode.charAt(endPostiion-1) != TERMINATOR) {
+      int terminated = tree.getChild(node, TERMINATOR);
+      return terminated != -1 ? tree.emojis[terminated] : null;
+    } else {
+      return null;
+    }
   }
 
+  private CompiledTree getCompiled() {
+    CompiledTree tree = compiled;
+    if (tree == null) {
+      synchronized (this) {
+        tree = compiled;
+        if (tree == null) {
+          tree     = new CompiledTree(root);
+          compiled = tree;
+        }
+      }
+    }
+    return tree;
+  }
 
   private static class EmojiTreeNode {
 
@@ -117,21 +171,60 @@ public class EmojiTree {
     EmojiTreeNode getChild(char child) {
       return children.get(child);
     }
-
-    boolean isEndOfEmoji() {
-      return emoji != null;
-    }
   }
 
-  public enum Matches {
-    EXACTLY, POSSIBLY, IMPOSSIBLE;
+  /**
+   * The nodes in breadth-first order, node 0 is the root;
+   * the children of node n are childChars/childNodes[childStart[n] until childStart[n+1]], sorted by char.
+   */
+  private static class CompiledTree {
+
+    private final int[]           childStart;
+    private final char[]          childChars;
+    private final int[]           childNodes;
+    private final EmojiDrawInfo[] emojis;
+
+    CompiledTree(EmojiTreeNode root) {
+      List<EmojiTreeNode> nodes = new ArrayList<>();
+      nodes.add(root);
+      for (int i = 0; i < nodes.size(); i++) {
+        EmojiTreeNode node = nodes.get(i);
+        Character[]   keys = node.children.keySet().toArray(new Character[0]);
+        Arrays.sort(keys);
+        for (Character key : keys) {
+          nodes.add(node.getChild(key));
+        }
+      }
 
-    public boolean exactMatch() {
-      return this == EXACTLY;
+      int count  = nodes.size();
+      childStart = new int[count + 1];
+      childChars = new char[count - 1];
+      childNodes = new int[count - 1];
+      emojis     = new EmojiDrawInfo[count];
+
+      int next = 1; // children are numbered in the order they were added above
+      for (int i = 0; i < count; i++) {
+        EmojiTreeNode node = nodes.get(i);
+        Character[]   keys = node.children.keySet().toArray(new Character[0]);
+        Arrays.sort(keys);
+
+        childStart[i] = next - 1;
+        for (Character key : keys) {
+          childChars[next - 1] = key;
+          childNodes[next - 1] = next;
+          next++;
+        }
+        emojis[i] = node.getEmoji();
+      }
+      childStart[count] = next - 1;
     }
 
-    public boolean impossibleMatch() {
-      return this == IMPOSSIBLE;
+    /**
+     * @return the child of node for the given char or -1
+     */
+    int getChild(int node, char c) {
+      int index = Arrays.binarySearch(childChars, childStart[node], childStart[node + 1], c);
+      return index >= 0 ? childNodes[index] : -1;
     }
   }
 
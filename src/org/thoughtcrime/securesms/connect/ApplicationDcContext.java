@@ -1,5 +1,6 @@
 package org.thoughtcrime.securesms.connect;
 
+import android.annotation.TargetApi;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
@@ -12,7 +13,10 @@ import android.os.Environment;
 import android.os.PowerManager;
 import android.support.annotation.IntDef;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.v4.content.FileProvider;
+import android.system.ErrnoException;
+import android.system.Os;
 import android.util.Log;
 import android.webkit.MimeTypeMap;
 import android.widget.Toast;
@@ -32,18 +36,16 @@ import org.thoughtcrime.securesms.database.Address;
 import org.thoughtcrime.securesms.database.model.ThreadRecord;
 import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.util.Hash;
+import org.thoughtcrime.securesms.util.LRUCache;
 import org.thoughtcrime.securesms.util.Prefs;
 import org.thoughtcrime.securesms.util.Util;
+import org.thoughtcrime.securesms.util.WakeLockRegistry;
+import org.thoughtcrime.securesms.util.WakeLockRegistry.TrackedWakeLock;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 
@@ -59,32 +61,25 @@ public class ApplicationDcContext extends DcContext {
   public static final int RECIPIENT_TYPE_CONTACT = 1;
 
   public Context context;
+
+  private static final int MAX_CACHED_RECIPIENTS = 256;
+  private static final long BLOB_DEDUPLICATION_INTERVAL_MS = 24 * 60 * 60 * 1000;
+  private final LRUCache<Integer, Recipient> chatRecipients    = new LRUCache<>(MAX_CACHED_RECIPIENTS);
+  private final LRUCache<Integer, Recipient> contactRecipients = new LRUCache<>(MAX_CACHED_RECIPIENTS);
   public volatile boolean isScreenOn = false;
 
   public ApplicationDcContext(Context context) {
     super("Android "+BuildConfig.VERSION_NAME);
     this.context = context;
+    this.httpBridge = new HttpBridge(new File(context.getCacheDir(), "http"));
 
     File dbfile = new File(context.getFilesDir(), "messenger.db");
     open(dbfile.getAbsolutePath());
 
     try {
-      PowerManager pm = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
-
-      imapWakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "imapWakeLock");
-      imapWakeLock.setReferenceCounted(false); // if the idle-thread is killed for any reasons, it is better not to rely on reference counting
-
-      mvboxWakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "mvboxWakeLock");
-      mvboxWakeLock.setReferenceCounted(false); // if the idle-thread is killed for any reasons, it is better not to rely on reference counting
+      mailboxScheduler = createMailboxScheduler();
 
-      sentboxWakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "sentboxWakeLock");
-      sentboxWakeLock.setReferenceCounted(false); // if the idle-thread is killed for any reasons, it is better not to rely on reference counting
-
-      smtpWakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "smtpWakeLock");
-      smtpWakeLock.setReferenceCounted(false); // if the idle-thread is killed for any reasons, it is better not to rely on reference counting
-
-      afterForegroundWakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "afterForegroundWakeLock");
-      afterForegroundWakeLock.setReferenceCounted(false);
+      afterForegroundWakeLock = WakeLockRegistry.newWakeLock(context, "afterForegroundWakeLock", AFTER_FOREGROUND_WAKE_LOCK_TIMEOUT_MS);
 
     } catch (Exception e) {
       Log.e(TAG, "Cannot create wakeLocks");
@@ -186,20 +181,17 @@ public class ApplicationDcContext extends DcContext {
     return mimeType;
   }
 
+  /**
+   * Creates an empty file in the blobdir, named `<filename>[-<random>]<ext>`, and returns its path.
+   */
   public String getBlobdirFile(String filename, String ext) {
-    String outPath = null;
-    for (int i = 0; i < 1000; i++) {
-      String test = getBlobdir() + "/" + filename + (i == 0 ? "" : i < 100 ? "-" + i : "-" + (new Date().getTime() + i)) + ext;
-      if (!new File(test).exists()) {
-        outPath = test;
-        break;
-      }
-    }
-    if(outPath==null) {
+    try {
+      return BlobImporter.createBlobFile(new File(getBlobdir()), filename, ext).getPath();
+    } catch (IOException e) {
       // should not happen
-      outPath = getBlobdir() + "/" + Math.random();
+      Log.e(TAG, "cannot create blobdir file", e);
+      return getBlobdir() + "/" + Math.random();
     }
-    return outPath;
   }
 
   public String getBlobdirFile(String path) {
@@ -214,6 +206,51 @@ public class ApplicationDcContext extends DcContext {
 
   }
 
+  private BlobIndex blobIndex;
+
+  /**
+   * @return the content index of the blobdir, or null if files cannot be linked on this device
+   */
+  public synchronized @Nullable BlobIndex getBlobIndex() {
+    if (blobIndex == null && Build.VERSION.SDK_INT >= 21) {
+      File blobdir = new File(getBlobdir());
+      blobIndex = new BlobIndex(blobdir, new File(blobdir.getParentFile(), blobdir.getName() + ".index"), new OsLinker());
+    }
+    return blobIndex;
+  }
+
+  @TargetApi(21)
+  private static class OsLinker implements BlobIndex.Linker {
+    @Override
+    public void link(File existing, File link) throws IOException {
+      try {
+        Os.link(existing.getPath(), link.getPath());
+      } catch (ErrnoException e) {
+        throw new IOException(e);
+      }
+    }
+  }
+
+  /**
+   * Links the blobdir files with the same content, at most once a day.
+   * Reads all new files, so this must not be called on the main thread.
+   */
+  public void deduplicateBlobsIfNeeded() {
+    BlobIndex index = getBlobIndex();
+    long now = System.currentTimeMillis();
+    if (index == null || now - Prefs.getLastBlobDeduplication(context) < BLOB_DEDUPLICATION_INTERVAL_MS) {
+      return;
+    }
+    Prefs.setLastBlobDeduplication(context, now);
+
+    try {
+      long freed = index.deduplicateAll();
+      Log.i(TAG, "blobdir deduplicated, " + freed + " bytes freed");
+    } catch (IOException e) {
+      Log.w(TAG, "cannot deduplicate blobdir", e);
+    }
+  }
+
   /***********************************************************************************************
    * create objects compatible to the database model of Signal
    **********************************************************************************************/
@@ -221,10 +258,21 @@ public class ApplicationDcContext extends DcContext {
   @NonNull
   public Recipient getRecipient(@RecipientType int recipientType, int id) {
     switch (recipientType) {
-      case RECIPIENT_TYPE_CHAT:
-        return getRecipient(getChat(id));
-      case RECIPIENT_TYPE_CONTACT:
-        return getRecipient(getContact(id));
+      case RECIPIENT_TYPE_CHAT: {
+        // a cached recipient does not need the chat to be loaded
+        Recipient recipient;
+        synchronized (chatRecipients) {
+          recipient = chatRecipients.get(id);
+        }
+        return recipient != null ? recipient : getRecipient(getChat(id));
+      }
+      case RECIPIENT_TYPE_CONTACT: {
+        Recipient recipient;
+        synchronized (contactRecipients) {
+          recipient = contactRecipients.get(id);
+        }
+        return recipient != null ? recipient : getRecipient(getContact(id));
+      }
       default:
         throw new IllegalArgumentException("Wrong RecipientType");
     }
@@ -232,34 +280,84 @@ public class ApplicationDcContext extends DcContext {
 
   @NonNull
   public Recipient getRecipient(DcChat chat) {
-    return new Recipient(context, chat, null);
+    int chatId = chat.getId();
+    if (chatId == 0) {
+      return new Recipient(context, chat, null);
+    }
+
+    synchronized (chatRecipients) {
+      Recipient recipient = chatRecipients.get(chatId);
+      if (recipient == null) {
+        recipient = new Recipient(context, chat, null);
+        chatRecipients.put(chatId, recipient);
+      }
+      return recipient;
+    }
   }
 
   @NonNull
-
   public Recipient getRecipient(DcContact contact) {
-    return new Recipient(context, null, contact);
+    int contactId = contact.getId();
+    if (contactId == 0) {
+      return new Recipient(context, null, contact);
+    }
+
+    synchronized (contactRecipients) {
+      Recipient recipient = contactRecipients.get(contactId);
+      if (recipient == null) {
+        recipient = new Recipient(context, null, contact);
+        contactRecipients.put(contactId, recipient);
+      }
+      return recipient;
+    }
+  }
+
+  /**
+   * Forget all cached recipients, eg. after the system contacts were read.
+   */
+  public void invalidateRecipients() {
+    synchronized (chatRecipients) {
+      chatRecipients.clear();
+    }
+    synchronized (contactRecipients) {
+      contactRecipients.clear();
+    }
+  }
+
+  private void invalidateRecipients(int event, long data1) {
+    if (event == DC_EVENT_CHAT_MODIFIED) {
+      synchronized (chatRecipients) {
+        if (data1 == 0) chatRecipients.clear();
+        else            chatRecipients.remove((int) data1);
+      }
+    } else if (event == DC_EVENT_CONTACTS_CHANGED) {
+      synchronized (contactRecipients) {
+        if (data1 == 0) contactRecipients.clear();
+        else            contactRecipients.remove((int) data1);
+      }
+      // names and avatars of one-to-one chats are taken from the contacts
+      synchronized (chatRecipients) {
+        chatRecipients.clear();
+      }
+    }
   }
 
   @NonNull
   public ThreadRecord getThreadRecord(DcLot summary, DcChat chat) { // adapted from ThreadDatabase.getCurrent()
     int chatId = chat.getId();
 
-    String body = summary.getText1();
-    if (!body.isEmpty()) {
-      body += ": ";
-    }
-    body += summary.getText2();
-
     Recipient recipient = getRecipient(chat);
     long date = summary.getTimestamp();
     int unreadCount = getFreshMsgCount(chatId);
     boolean archived = chat.getArchived() != 0;
     boolean verified = chat.isVerified();
+    boolean muted = Prefs.isChatMuted(context, chatId);
 
-    return new ThreadRecord(context, body, recipient, date,
+    return new ThreadRecord(context,
+        summary.getText1(), summary.getText1Meaning(), summary.getText2(), summary.getState(),
+        recipient, null, date,
         unreadCount, chatId,
-        archived, verified, summary);
+        archived, verified, muted);
   }
 
 
@@ -267,191 +365,70 @@ public class ApplicationDcContext extends DcContext {
    * Working Threads
    **********************************************************************************************/
 
-  private final Object threadsCritical = new Object();
-
-  private boolean imapThreadStartedVal;
-  private final Object imapThreadStartedCond = new Object();
-  public Thread imapThread = null;
-  private PowerManager.WakeLock imapWakeLock = null;
-
-  private boolean mvboxThreadStartedVal;
-  private final Object mvboxThreadStartedCond = new Object();
-  public Thread mvboxThread = null;
-  private PowerManager.WakeLock mvboxWakeLock = null;
+  private static final long WAKE_LOCK_TIMEOUT_MS         = 10 * 60 * 1000;
+  private static final long WATCHER_WAKE_LOCK_TIMEOUT_MS = 2 * 60 * 1000;
+  private static final long AFTER_FOREGROUND_WAKE_LOCK_TIMEOUT_MS = 60 * 1000;
 
-  private boolean sentboxThreadStartedVal;
-  private final Object sentboxThreadStartedCond = new Object();
-  public Thread sentboxThread = null;
-  private PowerManager.WakeLock sentboxWakeLock = null;
+  private MailboxScheduler mailboxScheduler = null;
 
-  private boolean smtpThreadStartedVal;
-  private final Object smtpThreadStartedCond = new Object();
-  public Thread smtpThread = null;
-  private PowerManager.WakeLock smtpWakeLock = null;
-
-  public PowerManager.WakeLock afterForegroundWakeLock = null;
+  public TrackedWakeLock afterForegroundWakeLock = null;
 
   public final static int INTERRUPT_IDLE = 0x01; // interrupt idle if the thread is already running
 
-  public void startThreads(int flags) {
-    synchronized (threadsCritical) {
-
-      if (imapThread == null || !imapThread.isAlive()) {
-
-        synchronized (imapThreadStartedCond) {
-          imapThreadStartedVal = false;
-        }
-
-        imapThread = new Thread(() -> {
-          // raise the starting condition
-          // after acquiring a wakelock so that the process is not terminated.
-          // as imapWakeLock is not reference counted that would result in a wakelock-gap is not needed here.
-          imapWakeLock.acquire();
-          synchronized (imapThreadStartedCond) {
-            imapThreadStartedVal = true;
-            imapThreadStartedCond.notifyAll();
-          }
-
-          Log.i(TAG, "###################### IMAP-Thread started. ######################");
-
-
-          while (true) {
-            imapWakeLock.acquire();
-            performImapJobs();
-            performImapFetch();
-            imapWakeLock.release();
-            performImapIdle();
-          }
-        }, "imapThread");
-        imapThread.setPriority(Thread.NORM_PRIORITY);
-        imapThread.start();
-      } else {
-        if ((flags & INTERRUPT_IDLE) != 0) {
-          interruptImapIdle();
-        }
-      }
-
-
-      if (mvboxThread == null || !mvboxThread.isAlive()) {
-
-        synchronized (mvboxThreadStartedCond) {
-          mvboxThreadStartedVal = false;
-        }
-
-        mvboxThread = new Thread(() -> {
-          mvboxWakeLock.acquire();
-          synchronized (mvboxThreadStartedCond) {
-            mvboxThreadStartedVal = true;
-            mvboxThreadStartedCond.notifyAll();
-          }
-
-          Log.i(TAG, "###################### MVBOX-Thread started. ######################");
-
-
-          while (true) {
-            mvboxWakeLock.acquire();
-            performMvboxFetch();
-            mvboxWakeLock.release();
-            performMvboxIdle();
-          }
-        }, "mvboxThread");
-        mvboxThread.setPriority(Thread.NORM_PRIORITY);
-        mvboxThread.start();
-      } else {
-        if ((flags & INTERRUPT_IDLE) != 0) {
-          interruptMvboxIdle();
-        }
-      }
-
-
-      if (sentboxThread == null || !sentboxThread.isAlive()) {
-
-        synchronized (sentboxThreadStartedCond) {
-          sentboxThreadStartedVal = false;
-        }
-
-        sentboxThread = new Thread(() -> {
-          sentboxWakeLock.acquire();
-          synchronized (sentboxThreadStartedCond) {
-            sentboxThreadStartedVal = true;
-            sentboxThreadStartedCond.notifyAll();
-          }
-
-          Log.i(TAG, "###################### SENTBOX-Thread started. ######################");
-
-
-          while (true) {
-            sentboxWakeLock.acquire();
-            performSentboxFetch();
-            sentboxWakeLock.release();
-            performSentboxIdle();
-          }
-        }, "sentboxThread");
-        sentboxThread.setPriority(Thread.NORM_PRIORITY-1);
-        sentboxThread.start();
-      } else {
-        if ((flags & INTERRUPT_IDLE) != 0) {
-          interruptSentboxIdle();
-        }
-      }
-
-
-      if (smtpThread == null || !smtpThread.isAlive()) {
-
-        synchronized (smtpThreadStartedCond) {
-          smtpThreadStartedVal = false;
-        }
-
-        smtpThread = new Thread(() -> {
-          smtpWakeLock.acquire();
-          synchronized (smtpThreadStartedCond) {
-            smtpThreadStartedVal = true;
-            smtpThreadStartedCond.notifyAll();
-          }
-
-          Log.i(TAG, "###################### SMTP-Thread started. ######################");
+  private MailboxScheduler createMailboxScheduler() {
+    MailboxLoop imapLoop = new MailboxLoop("imap", Thread.NORM_PRIORITY, newWakeLock("imapWakeLock", WAKE_LOCK_TIMEOUT_MS)) {
+      @Override protected void perform()       { performImapJobs(); performImapFetch(); }
+      @Override protected void idle()          { performImapIdle(); }
+      @Override protected void interruptIdle() { interruptImapIdle(); }
+      @Override protected boolean isNetworkAvailable() { return isNetworkConnected(); }
+    };
+
+    MailboxLoop smtpLoop = new MailboxLoop("smtp", Thread.MAX_PRIORITY, newWakeLock("smtpWakeLock", WAKE_LOCK_TIMEOUT_MS)) {
+      @Override protected void perform()       { performSmtpJobs(); }
+      @Override protected void idle()          { performSmtpIdle(); }
+      @Override protected void interruptIdle() { } // the core ends the smtp idle when there is something to send
+      @Override protected boolean isNetworkAvailable() { return isNetworkConnected(); }
+    };
+
+    MailboxLoop mvboxLoop = new MailboxLoop("mvbox", Thread.NORM_PRIORITY, newWakeLock("mvboxWakeLock", WATCHER_WAKE_LOCK_TIMEOUT_MS)) {
+      @Override protected void perform()       { performMvboxFetch(); }
+      @Override protected void idle()          { performMvboxIdle(); }
+      @Override protected void interruptIdle() { interruptMvboxIdle(); }
+      @Override protected boolean isEnabled()  { return getConfigInt("mvbox_watch") != 0; }
+      @Override protected boolean isNetworkAvailable() { return isNetworkConnected(); }
+    };
+
+    MailboxLoop sentboxLoop = new MailboxLoop("sentbox", Thread.NORM_PRIORITY-1, newWakeLock("sentboxWakeLock", WATCHER_WAKE_LOCK_TIMEOUT_MS)) {
+      @Override protected void perform()       { performSentboxFetch(); }
+      @Override protected void idle()          { performSentboxIdle(); }
+      @Override protected void interruptIdle() { interruptSentboxIdle(); }
+      @Override protected boolean isEnabled()  { return getConfigInt("sentbox_watch") != 0; }
+      @Override protected boolean isNetworkAvailable() { return isNetworkConnected(); }
+    };
+
+    return new MailboxScheduler(Arrays.asList(imapLoop, smtpLoop), mvboxLoop, sentboxLoop);
+  }
 
+  private TrackedWakeLock newWakeLock(String tag, long maxHoldMillis) {
+    // tracked wake locks are not reference counted, if the idle-thread is killed for any reasons, it is better not to rely on that
+    return WakeLockRegistry.newWakeLock(context, tag, maxHoldMillis);
+  }
 
-          while (true) {
-            smtpWakeLock.acquire();
-            performSmtpJobs();
-            smtpWakeLock.release();
-            performSmtpIdle();
-          }
-        }, "smtpThread");
-        smtpThread.setPriority(Thread.MAX_PRIORITY);
-        smtpThread.start();
-      }
+  public void startThreads(int flags) {
+    if (mailboxScheduler != null) {
+      mailboxScheduler.start((flags & INTERRUPT_IDLE) != 0);
     }
   }
 
   public void waitForThreadsRunning() {
-    try {
-      synchronized (imapThreadStartedCond) {
-        while (!imapThreadStartedVal) {
-          imapThreadStartedCond.wait();
-        }
-      }
-
-      synchronized (mvboxThreadStartedCond) {
-        while (!mvboxThreadStartedVal) {
-          mvboxThreadStartedCond.wait();
-        }
-      }
-
-      synchronized (sentboxThreadStartedCond) {
-        while (!sentboxThreadStartedVal) {
-          sentboxThreadStartedCond.wait();
-        }
-      }
+    if (mailboxScheduler != null) {
+      mailboxScheduler.waitForRunning();
+    }
+  }
 
-      synchronized (smtpThreadStartedCond) {
-        while (!smtpThreadStartedVal) {
-          smtpThreadStartedCond.wait();
-        }
-      }
-    } catch (Exception e) {
-      e.printStackTrace();
+  public void logThreadMetrics() {
+    if (mailboxScheduler != null) {
+      mailboxScheduler.logMetrics();
     }
   }
 
@@ -479,6 +456,10 @@ public class ApplicationDcContext extends DcContext {
 
   public DcEventCenter eventCenter = new DcEventCenter();
 
+  private final DcEventPipeline eventPipeline = new DcEventPipeline(eventCenter, TAG);
+
+  private final HttpBridge httpBridge;
+
   private final Object lastErrorLock = new Object();
   private String lastErrorString = "";
   private boolean showNextErrorAsToast = true;
@@ -508,10 +489,19 @@ public class ApplicationDcContext extends DcContext {
     }
   }
 
+  private void log(int priority, String line) {
+    // the native threads must not wait for the log; the pipeline is null only while the object is constructed
+    if (eventPipeline != null) {
+      eventPipeline.log(priority, line);
+    } else {
+      Log.println(priority, TAG, String.valueOf(line));
+    }
+  }
+
   private void handleError(int event, boolean popUp, String string) {
     // log error
     boolean showAsToast;
-    Log.e(TAG, string);
+    log(Log.ERROR, string);
     synchronized (lastErrorLock) {
       lastErrorString = string;
       showAsToast = showNextErrorAsToast;
@@ -544,11 +534,11 @@ public class ApplicationDcContext extends DcContext {
   public long handleEvent(final int event, long data1, long data2) {
     switch (event) {
       case DC_EVENT_INFO:
-        Log.i(TAG, dataToString(data2));
+        log(Log.INFO, dataToString(data2));
         break;
 
       case DC_EVENT_WARNING:
-        Log.w(TAG, dataToString(data2));
+        log(Log.WARN, dataToString(data2));
         break;
 
       case DC_EVENT_ERROR:
@@ -565,73 +555,21 @@ public class ApplicationDcContext extends DcContext {
 
       case DC_EVENT_HTTP_GET:
         // calling this from the main thread may result in NetworkOnMainThreadException error
-        String httpContent = null;
         try {
-          URL url = new URL(dataToString(data1));
-          HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
-          try {
-            urlConnection.setConnectTimeout(10 * 1000);
-            InputStream inputStream = new BufferedInputStream(urlConnection.getInputStream());
-
-            BufferedReader r = new BufferedReader(new InputStreamReader(inputStream));
-
-            StringBuilder total = new StringBuilder();
-            String line;
-            while ((line = r.readLine()) != null) {
-              total.append(line).append('\n');
-            }
-            httpContent = total.toString();
-          } finally {
-            urlConnection.disconnect();
-          }
+          return bytesToData(httpBridge.get(dataToString(data1)));
         } catch (Exception e) {
-          e.printStackTrace();
+          log(Log.WARN, "DC_EVENT_HTTP_GET error: " + e);
         }
-        return stringToData(httpContent);
+        return 0;
 
       case DC_EVENT_HTTP_POST:
         // calling this from the main thread may result in NetworkOnMainThreadException error
-        String postContent = null;
         try {
-          String urlStr = dataToString(data1);
-          String paramStr = "";
-          if(urlStr.contains("?")) {
-              paramStr = urlStr.substring(urlStr.indexOf("?")+1);
-              urlStr = urlStr.substring(0, urlStr.indexOf("?"));
-          }
-          byte[] bytes = paramStr.getBytes();
-
-          URL url = new URL(urlStr);
-          HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-          try {
-            conn.setConnectTimeout(15 * 1000);
-            conn.setReadTimeout(15 * 1000);
-            conn.setDoOutput(true);
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-            conn.setRequestProperty("Content-Length", String.valueOf(bytes.length));
-            conn.getOutputStream().write(bytes);
-
-            int responseCode = conn.getResponseCode();
-            BufferedReader br = new BufferedReader(new InputStreamReader(new BufferedInputStream(conn.getInputStream())));
-            StringBuilder total = new StringBuilder();
-            String line;
-            while ((line = br.readLine()) != null) {
-              total.append(line).append('\n');
-            }
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-              postContent = total.toString();
-            }
-            else {
-              Log.i("DeltaChat", String.format("DC_EVENT_HTTP_POST error: %s", total.toString()));
-            }
-          } finally {
-            conn.disconnect();
-          }
+          return bytesToData(httpBridge.post(dataToString(data1)));
         } catch (Exception e) {
-          e.printStackTrace();
+          log(Log.WARN, "DC_EVENT_HTTP_POST error: " + e);
         }
-        return stringToData(postContent);
+        return 0;
 
       case DC_EVENT_GET_STRING:
         String s;
@@ -677,10 +615,14 @@ public class ApplicationDcContext extends DcContext {
         return stringToData(s);
 
       default: {
-        final Object data1obj = data1IsString(event) ? dataToString(data1) : data1;
-        final Object data2obj = data2IsString(event) ? dataToString(data2) : data2;
-        if (eventCenter != null) {
-          eventCenter.sendToObservers(event, data1obj, data2obj);
+        invalidateRecipients(event, data1);
+        // strings given by the core are valid only during this call and have to be converted here
+        int stringFlags = (data1IsString(event) ? DcEventPipeline.STRING_DATA1 : 0)
+                        | (data2IsString(event) ? DcEventPipeline.STRING_DATA2 : 0);
+        String data1str = (stringFlags & DcEventPipeline.STRING_DATA1) != 0 ? dataToString(data1) : null;
+        String data2str = (stringFlags & DcEventPipeline.STRING_DATA2) != 0 ? dataToString(data2) : null;
+        if (eventPipeline != null) {
+          eventPipeline.sendEvent(event, data1, data2, data1str, data2str, stringFlags);
         }
       }
       break;
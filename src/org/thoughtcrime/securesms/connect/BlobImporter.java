@@ -0,0 +1,228 @@
+package org.thoughtcrime.securesms.connect;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copies files into the blobdir, where the core takes them from.
+ *
+ * Each source is read once and written directly to its final name; several sources are copied in parallel,
+ * but not more than the I/O budget allows, as the storage does not get faster with more streams.
+ * With a {@link BlobIndex}, the content is hashed while it is copied and duplicates are stored once.
+ */
+public class BlobImporter {
+
+  public static final int IO_PARALLELISM = 3;
+
+  private static final int CHUNK_SIZE        = 1024 * 1024;
+  private static final int BUFFER_SIZE       = 64 * 1024;
+  private static final int MAX_NAME_ATTEMPTS = 8;
+
+  private static final SecureRandom random = new SecureRandom();
+
+  public interface Source {
+    /**
+     * @return the name of the file, with extension
+     */
+    String getName();
+
+    /**
+     * @return the size in bytes, or -1 if unknown
+     */
+    long getSize();
+
+    InputStream open() throws IOException;
+  }
+
+  public interface ProgressListener {
+    /**
+     * Called from the copying threads.
+     */
+    void onProgress(int filesDone, int filesTotal, long bytesDone, long bytesTotal);
+  }
+
+  private final File      blobdir;
+  private final BlobIndex index;
+
+  private volatile boolean canceled;
+
+  public BlobImporter(File blobdir) {
+    this(blobdir, null);
+  }
+
+  public BlobImporter(File blobdir, BlobIndex index) {
+    this.blobdir = blobdir;
+    this.index   = index;
+  }
+
+  public void cancel() {
+    canceled = true;
+  }
+
+  /**
+   * Copies all sources, blocking until done.
+   *
+   * @return the files in the blobdir, in the order of the sources; null for sources that could not be copied
+   */
+  public File[] importAll(List<? extends Source> sources, ProgressListener listener) throws InterruptedException {
+    final int           filesTotal = sources.size();
+    final File[]        results    = new File[filesTotal];
+    final AtomicInteger filesDone  = new AtomicInteger();
+    final AtomicLong    bytesDone  = new AtomicLong();
+
+    long total = 0;
+    for (Source source : sources) {
+      total += Math.max(0, source.getSize());
+    }
+    final long bytesTotal = total;
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(IO_PARALLELISM, filesTotal)));
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < filesTotal; i++) {
+        final int    index  = i;
+        final Source source = sources.get(i);
+        futures.add(executor.submit(() -> {
+          results[index] = importOne(source, read -> {
+            long done = bytesDone.addAndGet(read);
+            if (listener != null) listener.onProgress(filesDone.get(), filesTotal, done, bytesTotal);
+          });
+          int done = filesDone.incrementAndGet();
+          if (listener != null) listener.onProgress(done, filesTotal, bytesDone.get(), bytesTotal);
+        }));
+      }
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          // importOne() does not throw, the result stays null
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    return results;
+  }
+
+  private interface CopyListener {
+    void onCopied(long bytes);
+  }
+
+  private File importOne(Source source, CopyListener listener) {
+    if (canceled) {
+      return null;
+    }
+
+    File target = null;
+    try (InputStream in = source.open()) {
+      target = createBlobFile(blobdir, source.getName());
+      MessageDigest digest = index != null ? BlobIndex.newDigest() : null;
+      try (FileOutputStream out = new FileOutputStream(target)) {
+        if (digest != null) {
+          // the hash needs the bytes, transferTo() would bypass them
+          copy(in, new DigestOutputStream(out, digest), listener);
+        } else if (in instanceof FileInputStream) {
+          transfer(((FileInputStream) in).getChannel(), out.getChannel(), listener);
+        } else {
+          copy(in, out, listener);
+        }
+      }
+      if (digest != null) {
+        index.add(target, digest);
+      }
+      return target;
+    } catch (IOException e) {
+      if (target != null) {
+        target.delete();
+      }
+      return null;
+    }
+  }
+
+  private void transfer(FileChannel in, FileChannel out, CopyListener listener) throws IOException {
+    long position = in.position();
+    long size     = in.size();
+    while (position < size) {
+      checkCanceled();
+      long transferred = in.transferTo(position, Math.min(CHUNK_SIZE, size - position), out);
+      if (transferred <= 0) {
+        break;
+      }
+      position += transferred;
+      listener.onCopied(transferred);
+    }
+  }
+
+  private void copy(InputStream in, OutputStream out, CopyListener listener) throws IOException {
+    byte[] buffer   = new byte[BUFFER_SIZE];
+    long   reported = 0;
+    int    read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+      reported += read;
+      if (reported >= CHUNK_SIZE) {
+        checkCanceled();
+        listener.onCopied(reported);
+        reported = 0;
+      }
+    }
+    listener.onCopied(reported);
+  }
+
+  private void checkCanceled() throws IOException {
+    if (canceled || Thread.currentThread().isInterrupted()) {
+      throw new InterruptedIOException("Import canceled");
+    }
+  }
+
+  /**
+   * Creates a new, empty file in the directory. The name is taken as is if it is free,
+   * otherwise a random suffix is added; as the file is created atomically,
+   * two callers never get the same file.
+   *
+   * @param name a file name from outside; directories are removed from it
+   */
+  public static File createBlobFile(File dir, String name) throws IOException {
+    name = name != null ? name.substring(name.lastIndexOf('/') + 1).trim() : "";
+    if (name.isEmpty() || name.equals(".") || name.equals("..")) {
+      name = "file";
+    }
+
+    String base = name;
+    String ext  = "";
+    int point = name.lastIndexOf('.');
+    if (point > 0) {
+      base = name.substring(0, point);
+      ext  = name.substring(point);
+    }
+    return createBlobFile(dir, base, ext);
+  }
+
+  public static File createBlobFile(File dir, String base, String ext) throws IOException {
+    File file = new File(dir, base + ext);
+    for (int i = 0; i < MAX_NAME_ATTEMPTS; i++) {
+      if (file.createNewFile()) {
+        return file;
+      }
+      file = new File(dir, base + "-" + Integer.toHexString(random.nextInt() & 0xffffff) + ext);
+    }
+    throw new IOException("Cannot create a file for " + base + ext + " in " + dir);
+  }
+}
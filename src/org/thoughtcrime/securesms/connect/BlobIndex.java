@@ -0,0 +1,280 @@
+package org.thoughtcrime.securesms.connect;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Content index of the blobdir, so that identical files are stored only once.
+ *
+ * The paths handed to the core stay as they are: a duplicate is replaced by a hard link to the file
+ * that already has the content. Deleting any of the paths is therefore safe, the filesystem keeps
+ * the content until the last link is gone.
+ *
+ * Files are only linked after they are written completely; the blobdir files are never written again
+ * afterwards, so a link cannot change the content of another message.
+ */
+public class BlobIndex {
+
+  // a smaller file does not occupy less than one block
+  static final long MIN_SIZE = 4096;
+
+  // files changed more recently may still be written by the core
+  static final long MIN_AGE_MS = 10 * 60 * 1000;
+
+  public interface Linker {
+    /**
+     * Creates `link` as a new hard link to `existing`.
+     */
+    void link(File existing, File link) throws IOException;
+  }
+
+  private static class Entry {
+    final String hash;
+    final long   size;
+    final long   modified;
+
+    Entry(String hash, long size, long modified) {
+      this.hash     = hash;
+      this.size     = size;
+      this.modified = modified;
+    }
+
+    boolean isValidFor(File file) {
+      return file.length() == size && file.lastModified() == modified;
+    }
+  }
+
+  private final File   blobdir;
+  private final File   indexFile;
+  private final Linker linker;
+
+  // file name to content, and content to the file holding it
+  private final Map<String, Entry>  names  = new HashMap<>();
+  private final Map<String, String> hashes = new HashMap<>();
+  private boolean loaded;
+
+  public BlobIndex(File blobdir, File indexFile, Linker linker) {
+    this.blobdir   = blobdir;
+    this.indexFile = indexFile;
+    this.linker    = linker;
+  }
+
+  public static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * Adds a file that was just written to the blobdir.
+   *
+   * @param digest the digest the content was streamed through while writing
+   * @return true if the file was replaced by a link to an existing file with the same content
+   */
+  public synchronized boolean add(File file, MessageDigest digest) {
+    return add(file, toHex(digest.digest()));
+  }
+
+  private boolean add(File file, String hash) {
+    load();
+
+    long size = file.length();
+    if (size < MIN_SIZE || file.getName().indexOf('\n') != -1) {
+      return false;
+    }
+
+    String existingName = hashes.get(hash);
+    if (existingName != null && !existingName.equals(file.getName())) {
+      File  existing = new File(blobdir, existingName);
+      Entry entry    = names.get(existingName);
+      if (entry != null && entry.isValidFor(existing) && entry.size == size && replaceByLink(existing, file)) {
+        put(file.getName(), new Entry(hash, size, existing.lastModified()));
+        return true;
+      }
+    }
+
+    hashes.put(hash, file.getName());
+    put(file.getName(), new Entry(hash, size, file.lastModified()));
+    return false;
+  }
+
+  private boolean replaceByLink(File existing, File file) {
+    File temp = new File(blobdir, "." + file.getName() + ".link");
+    temp.delete();
+    try {
+      linker.link(existing, temp);
+    } catch (IOException e) {
+      return false;
+    }
+    // rename() replaces the file atomically, the path is never missing
+    if (!temp.renameTo(file)) {
+      temp.delete();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Hashes the blobdir files not in the index yet and links the duplicates.
+   * Meant to be run in the background, takes as long as reading the new files.
+   *
+   * @return the number of bytes freed
+   */
+  public long deduplicateAll() throws IOException {
+    File[] files = blobdir.listFiles();
+    if (files == null) {
+      return 0;
+    }
+
+    long freed = 0;
+    long now   = System.currentTimeMillis();
+    for (File file : files) {
+      if (Thread.currentThread().isInterrupted()) {
+        break;
+      }
+      long size     = file.length();
+      long modified = file.lastModified();
+      if (!file.isFile() || file.getName().startsWith(".") || size < MIN_SIZE || now - modified < MIN_AGE_MS || isIndexed(file)) {
+        continue;
+      }
+
+      String hash;
+      try {
+        hash = hash(file);
+      } catch (IOException e) {
+        // eg. deleted by the core meanwhile, the other files are still deduplicated
+        continue;
+      }
+      synchronized (this) {
+        // skip the file if it was changed while hashing
+        if (file.length() == size && file.lastModified() == modified && add(file, hash)) {
+          freed += size;
+        }
+      }
+    }
+
+    compact();
+    return freed;
+  }
+
+  private synchronized boolean isIndexed(File file) {
+    load();
+    Entry entry = names.get(file.getName());
+    return entry != null && entry.isValidFor(file);
+  }
+
+  private static String hash(File file) throws IOException {
+    MessageDigest digest = newDigest();
+    byte[]        buffer = new byte[64 * 1024];
+    try (InputStream in = new FileInputStream(file)) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    return toHex(digest.digest());
+  }
+
+  private void load() {
+    if (loaded) {
+      return;
+    }
+    loaded = true;
+
+    if (!indexFile.exists()) {
+      return;
+    }
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        // `<hash> <size> <modified> <name>`, the name may contain spaces
+        String[] parts = line.split(" ", 4);
+        if (parts.length != 4) {
+          continue;
+        }
+        try {
+          Entry entry = new Entry(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+          names.put(parts[3], entry);
+          if (!hashes.containsKey(entry.hash)) {
+            hashes.put(entry.hash, parts[3]);
+          }
+        } catch (NumberFormatException e) {
+          // skip the broken line, the file is hashed again
+        }
+      }
+    } catch (IOException e) {
+      names.clear();
+      hashes.clear();
+    }
+  }
+
+  private void put(String name, Entry entry) {
+    names.put(name, entry);
+    try (Writer writer = new OutputStreamWriter(new FileOutputStream(indexFile, true), "UTF-8")) {
+      writer.write(format(name, entry));
+    } catch (IOException e) {
+      // the entry is only missing after the next start
+    }
+  }
+
+  /**
+   * Rewrites the index without the files that are gone.
+   */
+  private synchronized void compact() throws IOException {
+    List<String> stale = new ArrayList<>();
+    for (Map.Entry<String, Entry> entry : names.entrySet()) {
+      if (!entry.getValue().isValidFor(new File(blobdir, entry.getKey()))) {
+        stale.add(entry.getKey());
+      }
+    }
+    for (String name : stale) {
+      Entry entry = names.remove(name);
+      if (name.equals(hashes.get(entry.hash))) {
+        hashes.remove(entry.hash);
+      }
+    }
+    for (Map.Entry<String, Entry> entry : names.entrySet()) {
+      if (!hashes.containsKey(entry.getValue().hash)) {
+        hashes.put(entry.getValue().hash, entry.getKey());
+      }
+    }
+
+    File temp = new File(indexFile.getPath() + ".tmp");
+    try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8")) {
+      for (Map.Entry<String, Entry> entry : names.entrySet()) {
+        writer.write(format(entry.getKey(), entry.getValue()));
+      }
+    }
+    if (!temp.renameTo(indexFile)) {
+      temp.delete();
+      throw new IOException("Cannot replace " + indexFile);
+    }
+  }
+
+  private static String format(String name, Entry entry) {
+    return entry.hash + " " + entry.size + " " + entry.modified + " " + name + "\n";
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return hex.toString();
+  }
+}
@@ -8,7 +8,7 @@ import com.b44t.messenger.DcChatlist;
 
 import org.thoughtcrime.securesms.util.AsyncLoader;
 
-public class DcChatlistLoader extends AsyncLoader<DcChatlist> {
+public class DcChatlistLoader extends AsyncLoader<DcChatlistSnapshot> {
 
     private static final String TAG = DcChatlistLoader.class.getName();
 
@@ -25,14 +25,15 @@ public class DcChatlistLoader extends AsyncLoader<DcChatlist> {
 
     @Override
     public @NonNull
-    DcChatlist loadInBackground() {
+    DcChatlistSnapshot loadInBackground() {
         try {
-            return DcHelper.getContext(getContext()).getChatlist(listflags, query, queryId);
+            DcChatlist chatlist = DcHelper.getContext(getContext()).getChatlist(listflags, query, queryId);
+            return new DcChatlistSnapshot(getContext(), chatlist);
 
         } catch (Exception e) {
             Log.w(TAG, e);
         }
 
-        return new DcChatlist(0);
+        return new DcChatlistSnapshot(getContext(), new DcChatlist(0));
     }
 }
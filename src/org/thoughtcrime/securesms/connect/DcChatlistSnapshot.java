@@ -0,0 +1,113 @@
+package org.thoughtcrime.securesms.connect;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import com.b44t.messenger.DcChat;
+import com.b44t.messenger.DcChatlist;
+
+import org.thoughtcrime.securesms.database.model.ThreadRecord;
+import org.thoughtcrime.securesms.recipients.Recipient;
+import org.thoughtcrime.securesms.util.Prefs;
+
+/**
+ * Everything needed to render the rows of a chatlist.
+ *
+ * The rows are read by a single JNI call and kept in parallel arrays;
+ * the snapshot is created in the background, so binding a row does not need any native call.
+ */
+public class DcChatlistSnapshot {
+
+  private final @NonNull DcChatlist chatlist;
+  private final int                 cnt;
+
+  private final int[]       chatIds;
+  private final int[]       msgIds;
+  private final long[]      timestamps;
+  private final int[]       freshMsgCounts;
+  private final int[]       flags;
+  private final int[]       summaryStates;
+  private final int[]       text1Meanings;
+  private final String[]    text1s;
+  private final String[]    text2s;
+  private final int[]       fromIds;
+  private final Recipient[] recipients;
+  private final Recipient[] avatarRecipients;
+
+  /**
+   * Reads all rows of the chatlist, must not be called from the main thread.
+   */
+  public DcChatlistSnapshot(@NonNull Context context, @NonNull DcChatlist chatlist) {
+    ApplicationDcContext dcContext = DcHelper.getContext(context);
+
+    this.chatlist = chatlist;
+    this.cnt      = chatlist.getCnt();
+
+    chatIds        = new int[cnt];
+    msgIds         = new int[cnt];
+    timestamps     = new long[cnt];
+    freshMsgCounts = new int[cnt];
+    flags          = new int[cnt];
+    summaryStates  = new int[cnt];
+    text1Meanings  = new int[cnt];
+    text1s         = new String[cnt];
+    text2s         = new String[cnt];
+    fromIds        = new int[cnt];
+    recipients       = new Recipient[cnt];
+    avatarRecipients = new Recipient[cnt];
+
+    if (cnt > 0) {
+      chatlist.getRows(chatIds, msgIds, timestamps, freshMsgCounts, flags, summaryStates, text1Meanings, text1s, text2s, fromIds);
+    }
+
+    for (int i = 0; i < cnt; i++) {
+      recipients[i] = dcContext.getRecipient(ApplicationDcContext.RECIPIENT_TYPE_CHAT, chatIds[i]);
+      if (chatIds[i] == DcChat.DC_CHAT_ID_DEADDROP) {
+        avatarRecipients[i] = dcContext.getRecipient(ApplicationDcContext.RECIPIENT_TYPE_CONTACT, fromIds[i]);
+      }
+    }
+  }
+
+  public @NonNull DcChatlist getChatlist() {
+    return chatlist;
+  }
+
+  public int getCnt() {
+    return cnt;
+  }
+
+  public int getChatId(int index) {
+    return chatIds[index];
+  }
+
+  public int getMsgId(int index) {
+    return msgIds[index];
+  }
+
+  public int getFreshMsgCount(int index) {
+    return freshMsgCounts[index];
+  }
+
+  /**
+   * @return the sender of the contact request or 0 if there is no contact request in the list
+   */
+  public int getDeaddropContactId() {
+    for (int i = 0; i < cnt; i++) {
+      if (chatIds[i] == DcChat.DC_CHAT_ID_DEADDROP) {
+        return fromIds[i];
+      }
+    }
+    return 0;
+  }
+
+  public @NonNull ThreadRecord getThreadRecord(@NonNull Context context, int index) {
+    // muting a chat raises no event and does not reload the list, so the mute state is read on each bind
+    return new ThreadRecord(context,
+        text1s[index], text1Meanings[index], text2s[index], summaryStates[index],
+        recipients[index], avatarRecipients[index], timestamps[index],
+        freshMsgCounts[index], chatIds[index],
+        (flags[index] & DcChatlist.ROW_FLAG_ARCHIVED) != 0,
+        (flags[index] & DcChatlist.ROW_FLAG_VERIFIED) != 0,
+        Prefs.isChatMuted(context, chatIds[index]));
+  }
+}
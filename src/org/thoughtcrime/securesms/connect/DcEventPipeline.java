@@ -0,0 +1,248 @@
+package org.thoughtcrime.securesms.connect;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.b44t.messenger.DcContext;
+import com.b44t.messenger.DcEventCenter;
+
+/**
+ * Passes the events of the core from the native threads to the observers and to the log.
+ *
+ * The native threads only copy the event data into pre-allocated slots of a ring buffer and return;
+ * a dispatcher thread hands the events over to the DcEventCenter, a low-priority thread writes the log lines.
+ *
+ * If the event ring is full, further events are coalesced per event id as done by DcEventCenter:
+ * numeric data that differs is reset to 0 ("unspecific", eg. "any chat"),
+ * for progress events and strings the latest data is kept.
+ * The coalesced events are delivered after the ring is drained, so the order of the events is kept.
+ * If the log ring is full, log lines are dropped and counted.
+ */
+public class DcEventPipeline {
+
+  private static final String TAG = DcEventPipeline.class.getSimpleName();
+
+  private static final int EVENT_CAPACITY    = 1024;
+  private static final int OVERFLOW_CAPACITY = 32;   // distinct event ids that can be coalesced
+  private static final int LOG_CAPACITY      = 512;
+
+  public static final int STRING_DATA1 = 0x01;
+  public static final int STRING_DATA2 = 0x02;
+
+  private final @NonNull DcEventCenter eventCenter;
+  private final @NonNull String        logTag;
+
+  // events and overflow are guarded by events
+  private final Ring events   = new Ring(EVENT_CAPACITY);
+  private final Ring overflow = new Ring(OVERFLOW_CAPACITY);
+  private int        coalescedEvents;
+  private int        droppedEvents;
+
+  // logs are guarded by logs, the priority is stored as event id, the line as string2
+  private final Ring logs = new Ring(LOG_CAPACITY);
+  private int        droppedLogs;
+
+  public DcEventPipeline(@NonNull DcEventCenter eventCenter, @NonNull String logTag) {
+    this.eventCenter = eventCenter;
+    this.logTag      = logTag;
+
+    Thread dispatcher = new Thread(this::dispatchEvents, "DcEventDispatcher");
+    dispatcher.setDaemon(true);
+    dispatcher.start();
+
+    Thread logger = new Thread(this::writeLogs, "DcEventLogger");
+    logger.setDaemon(true);
+    logger.setPriority(Thread.MIN_PRIORITY);
+    logger.start();
+  }
+
+  /**
+   * Queue an event for the observers, never blocks on the observers.
+   *
+   * @param stringFlags STRING_DATA1 and/or STRING_DATA2 if string1 and/or string2 are used instead of data1 and/or data2
+   */
+  public void sendEvent(int eventId, long data1, long data2, String string1, String string2, int stringFlags) {
+    synchronized (events) {
+      // while there are coalesced events, newer events must not overtake them
+      if (!overflow.isEmpty() || !events.offer(eventId, data1, data2, string1, string2, stringFlags)) {
+        int index = overflow.find(eventId);
+        if (index >= 0) {
+          overflow.merge(index, data1, data2, string1, string2, isProgressEvent(eventId));
+          coalescedEvents++;
+        } else if (overflow.offer(eventId, data1, data2, string1, string2, stringFlags)) {
+          coalescedEvents++;
+        } else {
+          droppedEvents++;
+        }
+      }
+      events.notify();
+    }
+  }
+
+  /**
+   * Queue a line for the log, never blocks on writing the log.
+   *
+   * @param priority eg. Log.INFO
+   */
+  public void log(int priority, String line) {
+    synchronized (logs) {
+      if (logs.offer(priority, 0, 0, null, line, STRING_DATA2)) {
+        logs.notify();
+      } else {
+        droppedLogs++;
+      }
+    }
+  }
+
+  private static boolean isProgressEvent(int eventId) {
+    switch (eventId) {
+      case DcContext.DC_EVENT_CONFIGURE_PROGRESS:
+      case DcContext.DC_EVENT_IMEX_PROGRESS:
+      case DcContext.DC_EVENT_SECUREJOIN_INVITER_PROGRESS:
+      case DcContext.DC_EVENT_SECUREJOIN_JOINER_PROGRESS:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private void dispatchEvents() {
+    Slot slot = new Slot();
+    try {
+      while (true) {
+        int coalesced = 0, dropped = 0;
+        synchronized (events) {
+          while (events.isEmpty() && overflow.isEmpty()) {
+            events.wait();
+          }
+          if (!events.poll(slot)) {
+            overflow.poll(slot);
+            coalesced       = coalescedEvents;
+            dropped         = droppedEvents;
+            coalescedEvents = 0;
+            droppedEvents   = 0;
+          }
+        }
+
+        if (coalesced > 0 || dropped > 0) {
+          log(Log.WARN, "event queue full, " + coalesced + " events coalesced, " + dropped + " events dropped");
+        }
+
+        Object data1 = (slot.stringFlags & STRING_DATA1) != 0 ? slot.string1 : (Object) slot.data1;
+        Object data2 = (slot.stringFlags & STRING_DATA2) != 0 ? slot.string2 : (Object) slot.data2;
+        eventCenter.sendToObservers(slot.eventId, data1, data2);
+      }
+    } catch (InterruptedException e) {
+      Log.w(TAG, e);
+    }
+  }
+
+  private void writeLogs() {
+    Slot slot = new Slot();
+    try {
+      while (true) {
+        int dropped;
+        synchronized (logs) {
+          while (logs.isEmpty()) {
+            logs.wait();
+          }
+          logs.poll(slot);
+          dropped     = droppedLogs;
+          droppedLogs = 0;
+        }
+
+        if (dropped > 0) {
+          Log.w(logTag, dropped + " log lines dropped");
+        }
+        Log.println(slot.eventId, logTag, String.valueOf(slot.string2));
+      }
+    } catch (InterruptedException e) {
+      Log.w(TAG, e);
+    }
+  }
+
+  private static class Slot {
+    int    eventId;
+    long   data1;
+    long   data2;
+    String string1;
+    String string2;
+    int    stringFlags;
+  }
+
+  /**
+   * A bounded queue of events in parallel arrays, not thread-safe.
+   */
+  private static class Ring {
+    private final int[]    eventIds;
+    private final long[]   data1s;
+    private final long[]   data2s;
+    private final String[] string1s;
+    private final String[] string2s;
+    private final int[]    stringFlags;
+    private int            head;
+    private int            size;
+
+    Ring(int capacity) {
+      eventIds    = new int[capacity];
+      data1s      = new long[capacity];
+      data2s      = new long[capacity];
+      string1s    = new String[capacity];
+      string2s    = new String[capacity];
+      stringFlags = new int[capacity];
+    }
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    boolean offer(int eventId, long data1, long data2, String string1, String string2, int flags) {
+      if (size == eventIds.length) {
+        return false;
+      }
+      int index = (head + size) % eventIds.length;
+      eventIds[index]    = eventId;
+      data1s[index]      = data1;
+      data2s[index]      = data2;
+      string1s[index]    = string1;
+      string2s[index]    = string2;
+      stringFlags[index] = flags;
+      size++;
+      return true;
+    }
+
+    boolean poll(Slot slot) {
+      if (size == 0) {
+        return false;
+      }
+      slot.eventId     = eventIds[head];
+      slot.data1       = data1s[head];
+      slot.data2       = data2s[head];
+      slot.string1     = string1s[head];
+      slot.string2     = string2s[head];
+      slot.stringFlags = stringFlags[head];
+      string1s[head]   = null;
+      string2s[head]   = null;
+      head = (head + 1) % eventIds.length;
+      size--;
+      return true;
+    }
+
+    int find(int eventId) {
+      for (int i = 0; i < size; i++) {
+        int index = (head + i) % eventIds.length;
+        if (eventIds[index] == eventId) {
+          return index;
+        }
+      }
+      return -1;
+    }
+
+    void merge(int index, long data1, long data2, String string1, String string2, boolean keepLatest) {
+      data1s[index]   = keepLatest || data1s[index] == data1 ? data1 : 0;
+      data2s[index]   = keepLatest || data2s[index] == data2 ? data2 : 0;
+      string1s[index] = string1;
+      string2s[index] = string2;
+    }
+  }
+}
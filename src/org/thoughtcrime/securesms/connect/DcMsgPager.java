@@ -0,0 +1,143 @@
+package org.thoughtcrime.securesms.connect;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.b44t.messenger.DcContext;
+import com.b44t.messenger.DcMsg;
+
+import org.thoughtcrime.securesms.util.LRUCache;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Loads the messages of a message list in windows using a single JNI call per window.
+ * The cache is keyed by message id, so changing the list does not drop loaded messages
+ * and only changed messages have to be invalidated.
+ * While scrolling, the next window in scroll direction is prefetched in the background.
+ */
+public class DcMsgPager {
+
+  private static final String TAG = DcMsgPager.class.getSimpleName();
+
+  private static final int WINDOW_SIZE      = 32;
+  private static final int PREFETCH_DISTANCE = WINDOW_SIZE / 2;
+  private static final int MAX_CACHE_SIZE   = WINDOW_SIZE * 8;
+
+  private static final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor();
+
+  private final DcContext           dcContext;
+  private final Map<Integer, DcMsg> msgCache = Collections.synchronizedMap(new LRUCache<>(MAX_CACHE_SIZE));
+  private final AtomicBoolean       prefetching = new AtomicBoolean(false);
+
+  private volatile @NonNull int[] msgIds = new int[0];
+  private volatile int generation = 0; // incremented on invalidation, so that running prefetches do not put outdated messages to the cache
+  private int lastIndex = -1;
+
+  public DcMsgPager(@NonNull DcContext dcContext) {
+    this.dcContext = dcContext;
+  }
+
+  public void setMsgIds(@NonNull int[] msgIds) {
+    this.msgIds = msgIds;
+  }
+
+  public int getCount() {
+    return msgIds.length;
+  }
+
+  /**
+   * @param index index in the list given to setMsgIds()
+   */
+  public @NonNull DcMsg get(int index) {
+    final int[] ids = msgIds;
+    if (index < 0 || index >= ids.length) {
+      return new DcMsg(0);
+    }
+
+    DcMsg msg = msgCache.get(ids[index]);
+    if (msg == null) {
+      loadWindow(ids, index - WINDOW_SIZE / 2, index + WINDOW_SIZE / 2);
+      msg = msgCache.get(ids[index]);
+      if (msg == null) {
+        // the cache may be too small if a caller holds many loaded messages at once
+        msg = dcContext.getMsg(ids[index]);
+      }
+    }
+
+    int direction = lastIndex == -1 ? 0 : Integer.signum(index - lastIndex);
+    lastIndex = index;
+    if (direction != 0) {
+      maybePrefetch(ids, index + direction * PREFETCH_DISTANCE, direction);
+    }
+
+    return msg;
+  }
+
+  /**
+   * Forget a single message, eg. after DC_EVENT_MSGS_CHANGED for a specific message.
+   */
+  public void invalidate(int msgId) {
+    generation++;
+    msgCache.remove(msgId);
+  }
+
+  public void invalidateAll() {
+    generation++;
+    msgCache.clear();
+  }
+
+  private void maybePrefetch(final int[] ids, int index, int direction) {
+    if (index < 0 || index >= ids.length || msgCache.containsKey(ids[index])) {
+      return;
+    }
+
+    if (prefetching.compareAndSet(false, true)) {
+      final int start = direction > 0 ? index : index - WINDOW_SIZE + 1;
+      prefetchExecutor.execute(() -> {
+        try {
+          loadWindow(ids, start, start + WINDOW_SIZE);
+        } catch (Exception e) {
+          Log.w(TAG, "cannot prefetch messages", e);
+        } finally {
+          prefetching.set(false);
+        }
+      });
+    }
+  }
+
+  private void loadWindow(int[] ids, int start, int end) {
+    start = Math.max(0, start);
+    end   = Math.min(ids.length, end);
+
+    // load only the messages not yet in the cache
+    int[] missing = new int[end - start];
+    int missingCount = 0;
+    for (int i = start; i < end; i++) {
+      if (!msgCache.containsKey(ids[i])) {
+        missing[missingCount++] = ids[i];
+      }
+    }
+    if (missingCount == 0) {
+      return;
+    }
+    if (missingCount < missing.length) {
+      int[] trimmed = new int[missingCount];
+      System.arraycopy(missing, 0, trimmed, 0, missingCount);
+      missing = trimmed;
+    }
+
+    int startGeneration = generation;
+    DcMsg[] msgs = dcContext.getMsgs(missing);
+    if (startGeneration != generation) {
+      return;
+    }
+    for (int i = 0; i < msgs.length; i++) {
+      msgCache.put(missing[i], msgs[i]);
+    }
+  }
+}
@@ -0,0 +1,217 @@
+package org.thoughtcrime.securesms.connect;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.thoughtcrime.securesms.util.Hash;
+import org.thoughtcrime.securesms.util.LRUCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+
+/**
+ * Does the HTTP requests the core asks for, eg. for autoconfig lookups and OAuth2 during account setup.
+ *
+ * The bodies are passed through byte by byte and limited in size.
+ * Connections are not disconnected after a complete response, so HttpURLConnection keeps them alive for the next request.
+ * Successful XML responses to GET requests, ie. autoconfig and autodiscover documents, are cached in memory and on disk;
+ * other responses, eg. the JSON of OAuth2 that contains tokens, are never cached.
+ */
+public class HttpBridge {
+
+  private static final int  CONNECT_TIMEOUT_MILLIS = 10 * 1000;
+  private static final int  READ_TIMEOUT_MILLIS    = 15 * 1000;
+  private static final int  MAX_RESPONSE_BYTES     = 1024 * 1024;
+  private static final long CACHE_MAX_AGE_MILLIS   = 24 * 60 * 60 * 1000;
+  private static final int  MEMORY_CACHE_SIZE      = 16;
+
+  private final @Nullable File             cacheDir;
+  private final LRUCache<String, CacheEntry> memoryCache = new LRUCache<>(MEMORY_CACHE_SIZE);
+
+  /**
+   * @param cacheDir directory for the disk cache, null to cache in memory only
+   */
+  public HttpBridge(@Nullable File cacheDir) {
+    this.cacheDir = cacheDir;
+  }
+
+  public @NonNull byte[] get(@NonNull String url) throws IOException {
+    byte[] cached = getCached(url);
+    if (cached != null) {
+      return cached;
+    }
+
+    HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+    try {
+      conn.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+      conn.setReadTimeout(READ_TIMEOUT_MILLIS);
+
+      byte[] body = readResponse(conn);
+      if (isCacheable(conn)) {
+        putCached(url, body);
+      }
+      return body;
+    } catch (IOException e) {
+      conn.disconnect();
+      throw e;
+    }
+  }
+
+  /**
+   * @param url the parameters after the "?" are sent as form data
+   */
+  public @NonNull byte[] post(@NonNull String url) throws IOException {
+    String params = "";
+    int    query  = url.indexOf('?');
+    if (query != -1) {
+      params = url.substring(query + 1);
+      url    = url.substring(0, query);
+    }
+    byte[] bytes = params.getBytes(Charset.forName("UTF-8"));
+
+    HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+    try {
+      conn.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+      conn.setReadTimeout(READ_TIMEOUT_MILLIS);
+      conn.setDoOutput(true);
+      conn.setRequestMethod("POST");
+      conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+      conn.setFixedLengthStreamingMode(bytes.length);
+
+      OutputStream out = conn.getOutputStream();
+      try {
+        out.write(bytes);
+      } finally {
+        out.close();
+      }
+
+      return readResponse(conn);
+    } catch (IOException e) {
+      conn.disconnect();
+      throw e;
+    }
+  }
+
+  /**
+   * Reads the complete body, so that the connection can be reused.
+   */
+  private static byte[] readResponse(HttpURLConnection conn) throws IOException {
+    int responseCode = conn.getResponseCode();
+    if (responseCode != HttpURLConnection.HTTP_OK) {
+      InputStream error = conn.getErrorStream();
+      byte[]      body  = error != null ? readLimited(error, conn.getContentLength()) : new byte[0];
+      throw new IOException("HTTP " + responseCode + ": " + new String(body, Charset.forName("UTF-8")));
+    }
+    return readLimited(conn.getInputStream(), conn.getContentLength());
+  }
+
+  private static byte[] readLimited(InputStream in, int contentLength) throws IOException {
+    try {
+      if (contentLength > MAX_RESPONSE_BYTES) {
+        throw new IOException("response too large: " + contentLength + " bytes");
+      }
+
+      ByteArrayOutputStream out    = new ByteArrayOutputStream(contentLength > 0 ? contentLength : 4096);
+      byte[]                buffer = new byte[4096];
+      int                   read;
+      while ((read = in.read(buffer)) != -1) {
+        if (out.size() + read > MAX_RESPONSE_BYTES) {
+          throw new IOException("response larger than " + MAX_RESPONSE_BYTES + " bytes");
+        }
+        out.write(buffer, 0, read);
+      }
+      return out.toByteArray();
+    } finally {
+      in.close();
+    }
+  }
+
+  private static boolean isCacheable(HttpURLConnection conn) {
+    String contentType  = conn.getContentType();
+    String cacheControl = conn.getHeaderField("Cache-Control");
+    return contentType != null && contentType.toLowerCase().contains("xml")
+        && (cacheControl == null || !cacheControl.toLowerCase().contains("no-store"));
+  }
+
+  private @Nullable byte[] getCached(String url) {
+    long now = System.currentTimeMillis();
+    synchronized (memoryCache) {
+      CacheEntry entry = memoryCache.get(url);
+      if (entry != null) {
+        if (now - entry.timestamp < CACHE_MAX_AGE_MILLIS) {
+          return entry.body;
+        }
+        memoryCache.remove(url);
+      }
+    }
+
+    File file = getCacheFile(url);
+    if (file == null || !file.exists()) {
+      return null;
+    }
+    if (now - file.lastModified() >= CACHE_MAX_AGE_MILLIS) {
+      file.delete();
+      return null;
+    }
+
+    try {
+      byte[] body = readLimited(new FileInputStream(file), (int) file.length());
+      synchronized (memoryCache) {
+        memoryCache.put(url, new CacheEntry(body, file.lastModified()));
+      }
+      return body;
+    } catch (IOException e) {
+      file.delete();
+      return null;
+    }
+  }
+
+  private void putCached(String url, byte[] body) {
+    synchronized (memoryCache) {
+      memoryCache.put(url, new CacheEntry(body, System.currentTimeMillis()));
+    }
+
+    File file = getCacheFile(url);
+    if (file == null || (!cacheDir.exists() && !cacheDir.mkdirs())) {
+      return;
+    }
+
+    // write to a temporary file first so that a concurrent lookup never reads a partial body
+    File tmp = new File(cacheDir, file.getName() + ".tmp" + Thread.currentThread().getId());
+    try {
+      OutputStream out = new FileOutputStream(tmp);
+      try {
+        out.write(body);
+      } finally {
+        out.close();
+      }
+      if (!tmp.renameTo(file)) {
+        tmp.delete();
+      }
+    } catch (IOException e) {
+      tmp.delete();
+    }
+  }
+
+  private @Nullable File getCacheFile(String url) {
+    return cacheDir != null ? new File(cacheDir, Hash.sha256(url)) : null;
+  }
+
+  private static class CacheEntry {
+    final byte[] body;
+    final long   timestamp;
+
+    CacheEntry(byte[] body, long timestamp) {
+      this.body      = body;
+      this.timestamp = timestamp;
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package org.thoughtcrime.securesms.connect;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.thoughtcrime.securesms.util.WakeLockRegistry.TrackedWakeLock;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One of the loops the core needs to be run in, eg. fetching the INBOX and waiting there for new messages.
+ *
+ * A loop is run by a MailboxScheduler: perform() is called holding the wake lock of the loop,
+ * idle() blocks until there is something to do again.
+ * If idle() returns immediately while there is no network, the next perform() is delayed increasingly;
+ * with network, an immediate return means that jobs are waiting, so they are performed without delay.
+ */
+public abstract class MailboxLoop {
+
+  private static final long MIN_IDLE_MILLIS       = 1000;            // shorter idles without network are regarded as failed
+  private static final long MAX_BACKOFF_MILLIS    = 60 * 1000;
+  private static final long RARELY_ACTIVE_MILLIS  = 4 * 60 * 1000;   // the TimerReceiver interrupts the idle every 5 minutes
+  private static final int  MIN_IDLE_SAMPLES      = 3;
+
+  private final @NonNull  String          name;
+  private final           int             priority;
+  private final @Nullable TrackedWakeLock wakeLock;
+
+  // a loop must not be run by two threads at the same time, eg. while a retired thread is still idle
+  final ReentrantLock ownership = new ReentrantLock();
+
+  private final Object backoffLock = new Object();
+  private long    backoffMillis;
+  private boolean backoffInterrupted;
+
+  // metrics, guarded by this
+  private long performCount;
+  private long totalPerformMillis;
+  private long lastPerformMillis;
+  private long idleCount;
+  private long averageIdleMillis;
+
+  /**
+   * @param priority thread priority, a shared thread uses the highest priority of its loops
+   * @param wakeLock held while performing, null to perform without a wake lock;
+   *                 it is released after its maximum hold time even if perform() did not return
+   */
+  public MailboxLoop(@NonNull String name, int priority, @Nullable TrackedWakeLock wakeLock) {
+    this.name     = name;
+    this.priority = priority;
+    this.wakeLock = wakeLock;
+  }
+
+  /**
+   * Run the jobs and fetch the messages of the loop.
+   */
+  protected abstract void perform();
+
+  /**
+   * Wait until there is something to do, ended by interruptIdle().
+   */
+  protected abstract void idle();
+
+  protected abstract void interruptIdle();
+
+  /**
+   * @return false if the loop is switched off, eg. by the user; it is still run then, but regarded as rarely active.
+   */
+  protected boolean isEnabled() {
+    return true;
+  }
+
+  /**
+   * @return false if perform() cannot reach the server, so that an immediately returning idle() is a failure.
+   */
+  protected boolean isNetworkAvailable() {
+    return true;
+  }
+
+  public @NonNull String getName() {
+    return name;
+  }
+
+  public int getPriority() {
+    return priority;
+  }
+
+  void acquireWakeLock() {
+    if (wakeLock != null) {
+      wakeLock.acquire();
+    }
+  }
+
+  void runPerform() {
+    long start = SystemClock.elapsedRealtime();
+    acquireWakeLock();
+    try {
+      perform();
+    } finally {
+      if (wakeLock != null) {
+        wakeLock.release();
+      }
+    }
+
+    long duration = SystemClock.elapsedRealtime() - start;
+    synchronized (this) {
+      performCount++;
+      totalPerformMillis += duration;
+      lastPerformMillis   = duration;
+    }
+  }
+
+  void runIdle() {
+    long start = SystemClock.elapsedRealtime();
+    idle();
+    long duration = SystemClock.elapsedRealtime() - start;
+
+    synchronized (this) {
+      idleCount++;
+      averageIdleMillis = idleCount == 1 ? duration : (averageIdleMillis * 3 + duration) / 4;
+    }
+
+    synchronized (backoffLock) {
+      if (duration >= MIN_IDLE_MILLIS || isNetworkAvailable()) {
+        backoffMillis = 0;
+      } else {
+        backoffMillis = Math.min(MAX_BACKOFF_MILLIS, backoffMillis == 0 ? MIN_IDLE_MILLIS : backoffMillis * 2);
+      }
+    }
+  }
+
+  /**
+   * Wait before the next perform() if the last idle failed; ended by interrupt().
+   */
+  void backoff() throws InterruptedException {
+    synchronized (backoffLock) {
+      if (backoffMillis > 0 && !backoffInterrupted) {
+        backoffLock.wait(backoffMillis);
+      }
+      backoffInterrupted = false;
+    }
+  }
+
+  void interrupt() {
+    synchronized (backoffLock) {
+      backoffInterrupted = true;
+      backoffLock.notifyAll();
+    }
+    interruptIdle();
+  }
+
+  /**
+   * @return true if the loop is switched off or its idle is usually ended only by the regular interrupt.
+   */
+  synchronized boolean isRarelyActive() {
+    return !isEnabled() || (idleCount >= MIN_IDLE_SAMPLES && averageIdleMillis >= RARELY_ACTIVE_MILLIS);
+  }
+
+  @Override
+  public synchronized String toString() {
+    return name + ": " + performCount + " fetches, "
+        + (performCount > 0 ? totalPerformMillis / performCount : 0) + " ms average, " + lastPerformMillis + " ms last; "
+        + idleCount + " idles, " + averageIdleMillis / 1000 + " s average"
+        + (wakeLock != null ? "; wake lock held " + wakeLock.getTotalHoldMillis() / 1000 + " s" : "");
+  }
+}
@@ -0,0 +1,201 @@
+package org.thoughtcrime.securesms.connect;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the mailbox loops of the core in worker threads.
+ *
+ * Each loop gets its own thread, except for the two watcher loops (mvbox and sentbox):
+ * if both are rarely active, they share a single thread that idles in one of them
+ * and fetches the other one whenever the idle ends, at least every 5 minutes by the TimerReceiver.
+ * As soon as the watcher the shared thread idles in becomes active again,
+ * the watchers get their own threads back.
+ */
+public class MailboxScheduler {
+
+  private static final String TAG = MailboxScheduler.class.getSimpleName();
+
+  private final @NonNull List<MailboxLoop> loops;
+  private final @NonNull MailboxLoop       firstWatcher;
+  private final @NonNull MailboxLoop       secondWatcher;
+
+  private final List<Worker> workers = new ArrayList<>();
+  private boolean            watchersShared;
+
+  /**
+   * @param loops         loops that always get their own thread
+   * @param firstWatcher  loop that may share a thread with secondWatcher
+   */
+  public MailboxScheduler(@NonNull List<MailboxLoop> loops, @NonNull MailboxLoop firstWatcher, @NonNull MailboxLoop secondWatcher) {
+    this.loops         = loops;
+    this.firstWatcher  = firstWatcher;
+    this.secondWatcher = secondWatcher;
+  }
+
+  /**
+   * Start the threads that are not running, eg. because they were killed by the os.
+   *
+   * @param interruptIdle interrupt the idle of running threads
+   */
+  public synchronized void start(boolean interruptIdle) {
+    boolean shareWatchers = firstWatcher.isRarelyActive() && secondWatcher.isRarelyActive();
+    if (shareWatchers != watchersShared) {
+      Log.i(TAG, shareWatchers ? "watchers are rarely active, sharing a thread" : "watchers are active, using separate threads");
+      for (Worker worker : workers) {
+        if (worker.runs(firstWatcher) || worker.runs(secondWatcher)) {
+          worker.retire();
+        }
+      }
+      watchersShared = shareWatchers;
+    }
+
+    List<Worker> running = new ArrayList<>();
+    for (Worker worker : workers) {
+      if (worker.isAlive() && !worker.isRetired()) {
+        running.add(worker);
+        if (interruptIdle) {
+          worker.interruptIdle();
+        }
+      }
+    }
+    workers.clear();
+    workers.addAll(running);
+
+    for (MailboxLoop loop : loops) {
+      startIfNotRunning(loop);
+    }
+    if (watchersShared) {
+      // idle in a watcher that is switched on, if any
+      boolean swap = !firstWatcher.isEnabled() && secondWatcher.isEnabled();
+      startIfNotRunning(swap ? secondWatcher : firstWatcher, swap ? firstWatcher : secondWatcher);
+    } else {
+      startIfNotRunning(firstWatcher);
+      startIfNotRunning(secondWatcher);
+    }
+  }
+
+  private void startIfNotRunning(MailboxLoop... workerLoops) {
+    for (Worker worker : workers) {
+      if (worker.runs(workerLoops[0])) {
+        return;
+      }
+    }
+
+    Worker worker = new Worker(workerLoops);
+    workers.add(worker);
+    worker.start();
+  }
+
+  /**
+   * Wait until all threads have been started and hold their wake lock.
+   */
+  public void waitForRunning() {
+    List<Worker> current;
+    synchronized (this) {
+      current = new ArrayList<>(workers);
+    }
+
+    try {
+      for (Worker worker : current) {
+        worker.waitForStarted();
+      }
+    } catch (InterruptedException e) {
+      Log.w(TAG, e);
+    }
+  }
+
+  public void logMetrics() {
+    for (MailboxLoop loop : loops) {
+      Log.i(TAG, loop.toString());
+    }
+    Log.i(TAG, firstWatcher.toString() + (watchersShared ? " (shared thread)" : ""));
+    Log.i(TAG, secondWatcher.toString() + (watchersShared ? " (shared thread)" : ""));
+  }
+
+  private static class Worker extends Thread {
+
+    private final MailboxLoop[] loops; // the thread idles in the first loop
+    private final Object        startedLock = new Object();
+    private boolean             started;
+    private volatile boolean    retired;
+
+    Worker(MailboxLoop[] loops) {
+      super(loops[0].getName() + (loops.length > 1 ? "+" + loops[1].getName() : "") + "Thread");
+      this.loops = loops;
+
+      int priority = Thread.MIN_PRIORITY;
+      for (MailboxLoop loop : loops) {
+        priority = Math.max(priority, loop.getPriority());
+      }
+      setPriority(priority);
+    }
+
+    boolean runs(MailboxLoop loop) {
+      return Arrays.asList(loops).contains(loop);
+    }
+
+    @Override
+    public void run() {
+      // raise the starting condition after acquiring a wakelock so that the process is not terminated.
+      loops[0].acquireWakeLock();
+      synchronized (startedLock) {
+        started = true;
+        startedLock.notifyAll();
+      }
+
+      List<MailboxLoop> owned = new ArrayList<>();
+      try {
+        for (MailboxLoop loop : loops) {
+          loop.ownership.lockInterruptibly();
+          owned.add(loop);
+        }
+
+        Log.i(TAG, "###################### " + getName() + " started. ######################");
+
+        while (!retired) {
+          for (MailboxLoop loop : loops) {
+            loop.runPerform();
+          }
+          if (retired) {
+            break;
+          }
+          loops[0].runIdle();
+          loops[0].backoff();
+        }
+      } catch (InterruptedException e) {
+        Log.w(TAG, e);
+      } finally {
+        for (MailboxLoop loop : owned) {
+          loop.ownership.unlock();
+        }
+        Log.i(TAG, getName() + " stopped.");
+      }
+    }
+
+    void waitForStarted() throws InterruptedException {
+      synchronized (startedLock) {
+        while (!started) {
+          startedLock.wait();
+        }
+      }
+    }
+
+    void interruptIdle() {
+      loops[0].interrupt();
+    }
+
+    void retire() {
+      retired = true;
+      interruptIdle();
+    }
+
+    boolean isRetired() {
+      return retired;
+    }
+  }
+}
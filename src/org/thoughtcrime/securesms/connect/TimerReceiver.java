@@ -14,6 +14,7 @@ import android.util.Log;
 
 import org.thoughtcrime.securesms.connect.ApplicationDcContext;
 import org.thoughtcrime.securesms.connect.DcHelper;
+import org.thoughtcrime.securesms.util.WakeLockRegistry;
 
 public class TimerReceiver extends BroadcastReceiver {
 
@@ -32,6 +33,8 @@ public class TimerReceiver extends BroadcastReceiver {
 
         dcContext.startThreads(ApplicationDcContext.INTERRUPT_IDLE);
         dcContext.waitForThreadsRunning();
+        dcContext.logThreadMetrics();
+        WakeLockRegistry.logSummary();
     }
 
     public static void scheduleNextAlarm(Context context)
@@ -25,8 +25,13 @@ public class ModernDecryptingPartInputStream {
   public static InputStream createFor(@NonNull AttachmentSecret attachmentSecret, @NonNull File file, long offset)
       throws IOException
   {
-    FileInputStream inputStream = new FileInputStream(file);
-    byte[]          random      = new byte[32];
+    return createFor(attachmentSecret, new FileInputStream(file), offset);
+  }
+
+  public static InputStream createFor(@NonNull AttachmentSecret attachmentSecret, @NonNull InputStream inputStream, long offset)
+      throws IOException
+  {
+    byte[] random = new byte[32];
 
     readFully(inputStream, random);
 
@@ -4,22 +4,24 @@ package org.thoughtcrime.securesms.database.loaders;
 import android.content.Context;
 import android.support.annotation.NonNull;
 import android.support.v4.content.AsyncTaskLoader;
+import android.support.v4.os.OperationCanceledException;
 
-import com.annimon.stream.Stream;
 import com.b44t.messenger.DcContext;
 import com.b44t.messenger.DcMsg;
 
 import org.thoughtcrime.securesms.R;
 import org.thoughtcrime.securesms.connect.DcHelper;
 import org.thoughtcrime.securesms.database.Address;
+import org.thoughtcrime.securesms.util.LRUCache;
+import org.thoughtcrime.securesms.util.Util;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -29,6 +31,9 @@ public class BucketedThreadMediaLoader extends AsyncTaskLoader<BucketedThreadMed
   @SuppressWarnings("unused")
   private static final String TAG = BucketedThreadMediaLoader.class.getSimpleName();
 
+  // timestamps are loaded in chunks, newest first, so that the first sections can be shown early
+  private static final int CHUNK_SIZE = 500;
+
   private final Address         address;
 
   public BucketedThreadMediaLoader(@NonNull Context context, @NonNull Address address) {
@@ -56,18 +61,60 @@ public class BucketedThreadMediaLoader extends AsyncTaskLoader<BucketedThreadMed
 
   @Override
   public BucketedThreadMedia loadInBackground() {
-    BucketedThreadMedia result   = new BucketedThreadMedia(getContext());
     DcContext context = DcHelper.getContext(getContext());
-    int[] messages = context.getChatMedia(address.getDcChatId(), DcMsg.DC_MSG_IMAGE, DcMsg.DC_MSG_GIF, DcMsg.DC_MSG_VIDEO);
-    for(int nextId : messages) {
-      result.add(context.getMsg(nextId));
+    int[]  messages   = context.getChatMedia(address.getDcChatId(), DcMsg.DC_MSG_IMAGE, DcMsg.DC_MSG_GIF, DcMsg.DC_MSG_VIDEO);
+    long[] timestamps = new long[messages.length];
+
+    int loaded = messages.length; // timestamps are loaded for messages[loaded...]
+    while (loaded > 0) {
+      if (isLoadInBackgroundCanceled()) {
+        throw new OperationCanceledException();
+      }
+
+      int from = Math.max(0, loaded - CHUNK_SIZE);
+      long[] chunk = context.getMsgTimestamps(Arrays.copyOfRange(messages, from, loaded));
+      System.arraycopy(chunk, 0, timestamps, from, chunk.length);
+
+      if (loaded == messages.length && from > 0) {
+        deliverPartialResult(createMedia(messages, timestamps, from));
+      }
+      loaded = from;
     }
 
+    return createMedia(messages, timestamps, 0);
+  }
+
+  private BucketedThreadMedia createMedia(int[] messages, long[] timestamps, int from) {
+    BucketedThreadMedia result = new BucketedThreadMedia(getContext());
+    for (int i = from; i < messages.length; i++) {
+      result.add(messages[i], timestamps[i]);
+    }
+    result.getSections(); // build the section index in the background
     return result;
   }
 
+  private void deliverPartialResult(BucketedThreadMedia partial) {
+    // posted before the complete result, so it cannot overwrite it
+    Util.runOnMain(() -> {
+      if (isStarted() && !isAbandoned() && !isLoadInBackgroundCanceled()) {
+        deliverResult(partial);
+      }
+    });
+  }
+
+  /**
+   * The media of a chat, bucketed by time.
+   *
+   * Only the message ids are kept; the DcMsg objects are loaded when a cell is bound and cached for the visible cells.
+   */
   public static class BucketedThreadMedia {
 
+    private static final int MSG_CACHE_SIZE = 200;
+
+    private final DcContext                  dcContext;
+    private final LRUCache<Integer, DcMsg>   msgCache = new LRUCache<>(MSG_CACHE_SIZE);
+    private       List<Bucket>               sections;   // non-empty buckets, created on first use
+
     private final TimeBucket   TODAY;
     private final TimeBucket   YESTERDAY;
     private final TimeBucket   THIS_WEEK;
@@ -79,6 +126,7 @@ public class BucketedThreadMediaLoader extends AsyncTaskLoader<BucketedThreadMed
     private final TimeBucket[] TIME_SECTIONS;
 
     public BucketedThreadMedia(@NonNull Context context) {
+      this.dcContext = DcHelper.getContext(context);
       // from today midnight until the end of human time
       this.TODAY         = new TimeBucket(context.getString(R.string.today),
           addToCalendarFromTodayMidnight(Calendar.DAY_OF_YEAR, 0), Long.MAX_VALUE);
@@ -101,42 +149,50 @@ public class BucketedThreadMediaLoader extends AsyncTaskLoader<BucketedThreadMed
       this.OLDER         = new MonthBuckets();
     }
 
-    public void add(DcMsg imageMessage) {
+    public void add(int msgId, long timestamp) {
+      sections = null;
       for (TimeBucket timeSection : TIME_SECTIONS) {
-        if (timeSection.inRange(imageMessage.getTimestamp())) {
-          timeSection.add(imageMessage);
+        if (timeSection.inRange(timestamp)) {
+          timeSection.add(msgId);
           return;
         }
       }
-      OLDER.add(imageMessage);
+      OLDER.add(msgId, timestamp);
+    }
+
+    private List<Bucket> getSections() {
+      if (sections == null) {
+        sections = new ArrayList<>();
+        for (TimeBucket timeSection : TIME_SECTIONS) {
+          if (!timeSection.isEmpty()) {
+            sections.add(timeSection);
+          }
+        }
+        OLDER.addSections(sections);
+      }
+      return sections;
     }
 
     public int getSectionCount() {
-      return (int)Stream.of(TIME_SECTIONS)
-                        .filter(timeBucket -> !timeBucket.isEmpty())
-                        .count() +
-             OLDER.getSectionCount();
+      return getSections().size();
     }
 
     public int getSectionItemCount(int section) {
-      List<TimeBucket> activeTimeBuckets = Stream.of(TIME_SECTIONS).filter(timeBucket -> !timeBucket.isEmpty()).toList();
-
-      if (section < activeTimeBuckets.size()) return activeTimeBuckets.get(section).getItemCount();
-      else                                    return OLDER.getSectionItemCount(section - activeTimeBuckets.size());
+      return getSections().get(section).getItemCount();
     }
 
     public DcMsg get(int section, int item) {
-      List<TimeBucket> activeTimeBuckets = Stream.of(TIME_SECTIONS).filter(timeBucket -> !timeBucket.isEmpty()).toList();
-
-      if (section < activeTimeBuckets.size()) return activeTimeBuckets.get(section).getItem(item);
-      else                                    return OLDER.getItem(section - activeTimeBuckets.size(), item);
+      int   msgId = getSections().get(section).getItem(item);
+      DcMsg msg   = msgCache.get(msgId);
+      if (msg == null) {
+        msg = dcContext.getMsg(msgId);
+        msgCache.put(msgId, msg);
+      }
+      return msg;
     }
 
     public String getName(int section, Locale locale) {
-      List<TimeBucket> activeTimeBuckets = Stream.of(TIME_SECTIONS).filter(timeBucket -> !timeBucket.isEmpty()).toList();
-
-      if (section < activeTimeBuckets.size()) return activeTimeBuckets.get(section).getName();
-      else                                    return OLDER.getName(section - activeTimeBuckets.size(), locale);
+      return getSections().get(section).getName(locale);
     }
 
     // tests should override this function to deliver a preset calendar.
@@ -172,89 +228,102 @@ public class BucketedThreadMediaLoader extends AsyncTaskLoader<BucketedThreadMed
       calendar.set(Calendar.MILLISECOND, 0);
     }
 
-    private static class TimeBucket {
+    private static abstract class Bucket {
+
+      private int[] msgIds = new int[16];
+      private int   count;
 
-      private final List<DcMsg> records = new LinkedList<>();
+      void add(int msgId) {
+        if (count == msgIds.length) {
+          msgIds = Arrays.copyOf(msgIds, count * 2);
+        }
+        msgIds[count++] = msgId;
+      }
+
+      boolean isEmpty() {
+        return count == 0;
+      }
+
+      int getItemCount() {
+        return count;
+      }
+
+      int getItem(int position) {
+        return msgIds[position];
+      }
+
+      abstract String getName(Locale locale);
+    }
+
+    private static class TimeBucket extends Bucket {
 
       private final long   startTime;
-      private final long endTime;
+      private final long   endTime;
       private final String name;
 
       TimeBucket(String name, long startTime, long endTime) {
         this.name      = name;
         this.startTime = startTime;
-        this.endTime = endTime;
-      }
-
-      void add(DcMsg record) {
-        this.records.add(record);
+        this.endTime   = endTime;
       }
 
       boolean inRange(long timestamp) {
         return timestamp >= startTime && timestamp < endTime;
       }
 
-      boolean isEmpty() {
-        return records.isEmpty();
+      @Override
+      String getName(Locale locale) {
+        return name;
       }
+    }
 
-      int getItemCount() {
-        return records.size();
-      }
+    private static class MonthBucket extends Bucket {
+
+      private final Date date;
+      private String     name;
+      private Locale     nameLocale;
 
-      DcMsg getItem(int position) {
-        return records.get(position);
+      MonthBucket(Date date) {
+        this.date = date;
       }
 
-      String getName() {
+      @Override
+      String getName(Locale locale) {
+        if (name == null || !locale.equals(nameLocale)) {
+          name       = new SimpleDateFormat("MMMM yyyy", locale).format(date);
+          nameLocale = locale;
+        }
         return name;
       }
     }
 
     private static class MonthBuckets {
 
-      private final Map<Date, List<DcMsg>> months = new HashMap<>();
+      private final Map<Date, MonthBucket> months   = new HashMap<>();
+      private final Calendar               calendar = Calendar.getInstance();
 
-      void add(DcMsg record) {
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTimeInMillis(record.getTimestamp());
+      void add(int msgId, long timestamp) {
+        calendar.setTimeInMillis(timestamp);
 
         int  year  = calendar.get(Calendar.YEAR) - 1900;
         int  month = calendar.get(Calendar.MONTH);
         Date date  = new Date(year, month, 1);
 
-        if (months.containsKey(date)) {
-          months.get(date).add(record);
-        } else {
-          List<DcMsg> list = new LinkedList<>();
-          list.add(record);
-          months.put(date, list);
+        MonthBucket bucket = months.get(date);
+        if (bucket == null) {
+          bucket = new MonthBucket(date);
+          months.put(date, bucket);
         }
+        bucket.add(msgId);
       }
 
-      int getSectionCount() {
-        return months.size();
-      }
-
-      int getSectionItemCount(int section) {
-        return months.get(getSection(section)).size();
-      }
-
-      DcMsg getItem(int section, int position) {
-        return months.get(getSection(section)).get(position);
-      }
-
-      Date getSection(int section) {
+      void addSections(List<Bucket> sections) {
         ArrayList<Date> keys = new ArrayList<>(months.keySet());
         Collections.sort(keys, Collections.reverseOrder());
 
-        return keys.get(section);
-      }
-
-      String getName(int section, Locale locale) {
-        Date sectionDate = getSection(section);
-
-        return new SimpleDateFormat("MMMM yyyy", locale).format(sectionDate);
+        for (Date key : keys) {
+          sections.add(months.get(key));
+        }
       }
     }
   }
@@ -40,30 +40,46 @@ public class ThreadRecord {
   protected final Context context;
 
   private final Recipient  recipient;
+  private final Recipient  avatarRecipient;
   private final long       dateReceived;
   private final long       threadId;
   private final String     body;
 
-  private           final int     unreadCount;
-  private           final boolean archived;
-  private           final boolean verified;
-  private @Nullable final DcLot   dcSummary;
-
-  public ThreadRecord(@NonNull Context context, @NonNull String body,
-                      @NonNull Recipient recipient, long dateReceived, int unreadCount,
+  private final String  text1;
+  private final int     text1Meaning;
+  private final String  text2;
+  private final int     summaryState;
+  private final int     unreadCount;
+  private final boolean archived;
+  private final boolean verified;
+  private final boolean muted;
+
+  /**
+   * @param avatarRecipient recipient whose avatar is shown for the thread, eg. the sender of a contact request;
+   *                        if null, the avatar of the recipient is shown.
+   */
+  public ThreadRecord(@NonNull Context context,
+                      @NonNull String text1, int text1Meaning, @NonNull String text2, int summaryState,
+                      @NonNull Recipient recipient, @Nullable Recipient avatarRecipient,
+                      long dateReceived, int unreadCount,
                       long threadId,
                       boolean archived,
-                      boolean verified, @Nullable DcLot dcSummary)
+                      boolean verified, boolean muted)
   {
     this.context              = context.getApplicationContext();
     this.threadId             = threadId;
     this.recipient            = recipient;
+    this.avatarRecipient      = avatarRecipient;
     this.dateReceived         = dateReceived;
-    this.body                 = body;
+    this.body                 = text1.isEmpty()? text2 : text1 + ": " + text2;
+    this.text1            = text1;
+    this.text1Meaning     = text1Meaning;
+    this.text2            = text2;
+    this.summaryState     = summaryState;
     this.unreadCount      = unreadCount;
     this.archived         = archived;
     this.verified         = verified;
-    this.dcSummary        = dcSummary;
+    this.muted            = muted;
   }
 
   public @NonNull String getBody() {
@@ -74,6 +90,14 @@ public class ThreadRecord {
     return recipient;
   }
 
+  public Recipient getAvatarRecipient() {
+    return avatarRecipient != null ? avatarRecipient : recipient;
+  }
+
+  public boolean hasAvatarRecipient() {
+    return avatarRecipient != null;
+  }
+
   public long getDateReceived() {
     return dateReceived;
   }
@@ -83,14 +107,21 @@ public class ThreadRecord {
   }
 
   public SpannableString getDisplayBody() {
-    if(dcSummary!=null && dcSummary.getText1Meaning()==DcLot.DC_TEXT1_DRAFT) {
-      String draftText = dcSummary.getText1() + ":";
-      return emphasisAdded(draftText + " " + dcSummary.getText2(), 0, draftText.length());
+    if(text1Meaning==DcLot.DC_TEXT1_DRAFT) {
+      String draftText = text1 + ":";
+      return emphasisAdded(draftText + " " + text2, 0, draftText.length());
     } else {
       return new SpannableString(getBody());
     }
   }
 
+  /**
+   * @return the state of the last message of the thread, one of DcMsg.DC_STATE_*
+   */
+  public int getSummaryState() {
+    return summaryState;
+  }
+
   private SpannableString emphasisAdded(String sequence, int start, int end) {
     SpannableString spannable = new SpannableString(sequence);
     spannable.setSpan(new StyleSpan(android.graphics.Typeface.ITALIC),
@@ -113,4 +144,8 @@ public class ThreadRecord {
   public boolean isVerified() {
     return verified;
   }
+
+  public boolean isMuted() {
+    return muted;
+  }
 }
@@ -11,6 +11,7 @@ import java.util.Observable;
 
 public class DcLocation extends Observable {
     private Location lastLocation;
+    private int sharingDuration;
     private static DcLocation instance;
 
     private DcLocation() {
@@ -29,6 +30,17 @@ public class DcLocation extends Observable {
     }
 
 
+    /**
+     * @return the duration in seconds the location was shared for last, 0 if unknown
+     */
+    int getSharingDuration() {
+        return sharingDuration;
+    }
+
+    void setSharingDuration(int sharingDuration) {
+        this.sharingDuration = sharingDuration;
+    }
+
     public boolean isValid() {
         return !lastLocation.getProvider().equals("?");
     }
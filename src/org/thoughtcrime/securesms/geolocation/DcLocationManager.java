@@ -78,6 +78,7 @@ public class DcLocationManager implements Observer {
     }
 
     public void shareLocation(int duration, int chatId) {
+        DcLocation.getInstance().setSharingDuration(duration);
         startLocationEngine();
         Log.d(TAG, String.format("Share location in chat %d for %d seconds", chatId, duration));
         DcHelper.getContext(context).sendLocationsToChat(chatId, duration);
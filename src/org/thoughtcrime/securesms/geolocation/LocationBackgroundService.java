@@ -9,6 +9,7 @@ import android.location.LocationListener;
 import android.location.LocationManager;
 import android.os.Binder;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
 import android.util.Log;
 
@@ -18,13 +19,18 @@ import android.util.Log;
 
 public class LocationBackgroundService extends Service {
 
-    private static final int TIMEOUT = 1000 * 15;
     private static final String TAG = LocationBackgroundService.class.getSimpleName();
     private LocationManager locationManager = null;
-    private static final int LOCATION_INTERVAL = 1000;
-    private static final float LOCATION_DISTANCE = 25F;
+    private static final float LOCATION_DISTANCE = (float) LocationBatcher.MOVEMENT_THRESHOLD;
     ServiceLocationListener locationListener;
 
+    // fixes are passed on to DcLocation and so to the core in batches, see LocationBatcher
+    private final LocationBatcher batcher = new LocationBatcher();
+    private final Handler handler = new Handler();
+    private final Runnable flushRunnable = this::flushPendingLocation;
+    private Location pendingLocation;
+    private long samplingInterval;
+
     private final IBinder mBinder = new LocationBackgroundServiceBinder();
 
     @Override
@@ -46,8 +52,8 @@ public class LocationBackgroundService extends Service {
         }
 
         locationListener = new ServiceLocationListener();
-        requestLocationUpdate(LocationManager.NETWORK_PROVIDER);
-        requestLocationUpdate(LocationManager.GPS_PROVIDER);
+        batcher.setSharingDuration(DcLocation.getInstance().getSharingDuration());
+        requestLocationUpdates();
         initialLocationUpdate();
     }
 
@@ -60,6 +66,7 @@ public class LocationBackgroundService extends Service {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        handler.removeCallbacks(flushRunnable);
 
         if (locationManager == null) {
             return;
@@ -72,10 +79,16 @@ public class LocationBackgroundService extends Service {
         }
     }
 
+    private void requestLocationUpdates() {
+        samplingInterval = batcher.getSamplingInterval();
+        requestLocationUpdate(LocationManager.NETWORK_PROVIDER);
+        requestLocationUpdate(LocationManager.GPS_PROVIDER);
+    }
+
     private void requestLocationUpdate(String provider) {
         try {
             locationManager.requestLocationUpdates(
-                    provider, LOCATION_INTERVAL, LOCATION_DISTANCE,
+                    provider, samplingInterval, LOCATION_DISTANCE,
                     locationListener);
         } catch (SecurityException | IllegalArgumentException  ex) {
             Log.e(TAG, String.format("Unable to request %s provider based location updates.", provider), ex);
@@ -94,19 +107,51 @@ public class LocationBackgroundService extends Service {
         }
     }
 
+    private void addLocation(Location location) {
+        batcher.setSharingDuration(DcLocation.getInstance().getSharingDuration());
+        if (batcher.addFix(location.getLatitude(), location.getLongitude(), location.getAccuracy(), location.getTime())) {
+            pendingLocation = location;
+        }
+
+        handler.removeCallbacks(flushRunnable);
+        long now = System.currentTimeMillis();
+        if (batcher.shouldFlush(now)) {
+            flushPendingLocation();
+        } else if (batcher.hasPending()) {
+            handler.postDelayed(flushRunnable, batcher.getNextFlushTime() - now);
+        }
+
+        // the providers are asked for fixes more or less often depending on the speed
+        if (batcher.getSamplingInterval() != samplingInterval) {
+            Log.d(TAG, "sampling interval: " + batcher.getSamplingInterval() + " ms");
+            requestLocationUpdates();
+        }
+    }
+
+    private void flushPendingLocation() {
+        if (!batcher.hasPending() || pendingLocation == null) {
+            return;
+        }
+        batcher.flush(System.currentTimeMillis());
+        DcLocation.getInstance().updateLocation(pendingLocation);
+        pendingLocation = null;
+    }
+
     class LocationBackgroundServiceBinder extends Binder {
         LocationBackgroundServiceBinder getService() {
             return LocationBackgroundServiceBinder.this;
         }
 
         void stop() {
+            handler.removeCallbacks(flushRunnable);
+            batcher.reset();
+            pendingLocation = null;
             DcLocation.getInstance().reset();
             stopSelf();
         }
     }
 
     private class ServiceLocationListener implements LocationListener {
-        private static final int EARTH_RADIUS = 6371;
 
         @Override
         public void onLocationChanged(Location location) {
@@ -114,9 +159,7 @@ public class LocationBackgroundService extends Service {
             if (location == null) {
                 return;
             }
-            if (isBetterLocation(location, DcLocation.getInstance().getLastLocation())) {
-                DcLocation.getInstance().updateLocation(location);
-            }
+            addLocation(location);
         }
 
         @Override
@@ -133,84 +176,6 @@ public class LocationBackgroundService extends Service {
         public void onStatusChanged(String provider, int status, Bundle extras) {
             Log.e(TAG, "onStatusChanged: " + provider + " status: " + status);
         }
-
-
-        /** https://developer.android.com/guide/topics/location/strategies
-         * Determines whether one Location reading is better than the current Location fix
-         * @param location  The new Location that you want to evaluate
-         * @param currentBestLocation  The current Location fix, to which you want to compare the new one
-         */
-        private boolean isBetterLocation(Location location, Location currentBestLocation) {
-            if (currentBestLocation == null) {
-                // A new location is always better than no location
-                return true;
-            }
-
-            // Check whether the new location fix is newer or older
-            long timeDelta = location.getTime() - currentBestLocation.getTime();
-            boolean isSignificantlyOlder = timeDelta < -TIMEOUT;
-
-            if (isSignificantlyOlder) {
-                return false;
-            }
-
-            // Check whether the new location fix is more or less accurate
-            int accuracyDelta = (int) (location.getAccuracy() - currentBestLocation.getAccuracy());
-            Log.d(TAG, "accuracyDelta: " + accuracyDelta);
-            boolean isSignificantlyMoreAccurate = accuracyDelta > 50;
-            boolean isSameProvider = isSameProvider(location.getProvider(), currentBestLocation.getProvider());
-
-            if (isSignificantlyMoreAccurate && isSameProvider) {
-                return true;
-            }
-
-            boolean isMoreAccurate = accuracyDelta > 0;
-            double distance = distance(location, currentBestLocation);
-            return hasLocationChanged(distance) && isMoreAccurate ||
-                    hasLocationSignificantlyChanged(distance);
-
-        }
-
-        private boolean hasLocationSignificantlyChanged(double distance) {
-            return distance > 30D;
-        }
-
-        private boolean hasLocationChanged(double distance) {
-            return distance > 10D;
-        }
-
-        private double distance(Location location, Location currentBestLocation) {
-
-            double startLat = location.getLatitude();
-            double startLong = location.getLongitude();
-            double endLat = currentBestLocation.getLatitude();
-            double endLong = currentBestLocation.getLongitude();
-
-            double dLat  = Math.toRadians(endLat - startLat);
-            double dLong = Math.toRadians(endLong - startLong);
-
-            startLat = Math.toRadians(startLat);
-            endLat   = Math.toRadians(endLat);
-
-            double a = haversin(dLat) + Math.cos(startLat) * Math.cos(endLat) * haversin(dLong);
-            double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-
-            double distance = EARTH_RADIUS * c * 1000;
-            Log.d(TAG, "Distance between location updates: " + distance);
-            return distance;
-        }
-
-        private double haversin(double val) {
-            return Math.pow(Math.sin(val / 2), 2);
-        }
-
-        /** Checks whether two providers are the same */
-        private boolean isSameProvider(String provider1, String provider2) {
-            if (provider1 == null) {
-                return provider2 == null;
-            }
-            return provider1.equals(provider2);
-        }
     }
 
 }
@@ -0,0 +1,182 @@
+package org.thoughtcrime.securesms.geolocation;
+
+/**
+ * Collects the location fixes of the location providers and decides when one is passed on to the core.
+ *
+ * The core stores a location with the time it is set, so buffered fixes cannot be handed over as a batch;
+ * instead, the best fix of a flush interval is kept and passed on when the interval is over.
+ * Fixes that moved less than the movement threshold and are not much more accurate are dropped.
+ * The flush interval grows when standing still and shrinks when moving fast;
+ * for short sharing durations it is limited so that the track still has enough points.
+ */
+public class LocationBatcher {
+
+    private static final int EARTH_RADIUS = 6371;
+
+    static final double MOVEMENT_THRESHOLD = 10D;          // meters
+    static final long   MIN_FLUSH_INTERVAL = 5 * 1000;
+    static final long   MAX_FLUSH_INTERVAL = 60 * 1000;
+    static final int    MIN_POINTS_PER_SHARING = 20;
+    static final long   MAX_FIX_AGE = 15 * 1000;       // fixes that much older than the last one are dropped
+
+    private static final double WALKING_SPEED = 1D;        // meters per second
+    private static final double DRIVING_SPEED = 5D;
+
+    private long sharingDuration;                          // milliseconds, 0 if unknown
+
+    // the fix that is passed on with the next flush
+    private boolean hasPending;
+    private double  pendingLatitude;
+    private double  pendingLongitude;
+    private float   pendingAccuracy;
+    private long    pendingTime;
+
+    // the fix that was passed on last
+    private boolean hasFlushed;
+    private double  flushedLatitude;
+    private double  flushedLongitude;
+    private float   flushedAccuracy;
+    private long    lastFlushTime;
+
+    // the last fix added, used to estimate the speed
+    private boolean hasLast;
+    private double  lastLatitude;
+    private double  lastLongitude;
+    private long    lastTime;
+    private double  speed;
+
+    /**
+     * @param seconds the duration of the location sharing, as given to sendLocationsToChat()
+     */
+    public void setSharingDuration(int seconds) {
+        sharingDuration = seconds * 1000L;
+    }
+
+    /**
+     * @return false if the fix was dropped as redundant
+     */
+    public boolean addFix(double latitude, double longitude, float accuracy, long time) {
+        if (hasLast && time < lastTime - MAX_FIX_AGE) {
+            return false;
+        }
+        updateSpeed(latitude, longitude, time);
+
+        if (hasFlushed && !hasPending
+                && distance(latitude, longitude, flushedLatitude, flushedLongitude) < Math.max(MOVEMENT_THRESHOLD, accuracy)
+                && accuracy * 2 >= flushedAccuracy) {
+            return false;
+        }
+
+        // a newer fix replaces the pending one unless it is much less accurate
+        if (hasPending && pendingAccuracy > 0 && accuracy > pendingAccuracy * 2 && time - pendingTime < getFlushInterval()) {
+            return false;
+        }
+
+        hasPending       = true;
+        pendingLatitude  = latitude;
+        pendingLongitude = longitude;
+        pendingAccuracy  = accuracy;
+        pendingTime      = time;
+        return true;
+    }
+
+    private void updateSpeed(double latitude, double longitude, long time) {
+        if (hasLast && time > lastTime) {
+            double current = distance(latitude, longitude, lastLatitude, lastLongitude) / ((time - lastTime) / 1000D);
+            speed = (speed * 3 + current) / 4;
+        }
+        hasLast       = true;
+        lastLatitude  = latitude;
+        lastLongitude = longitude;
+        lastTime      = time;
+    }
+
+    public long getFlushInterval() {
+        long interval;
+        if (speed < WALKING_SPEED) {
+            interval = MAX_FLUSH_INTERVAL;
+        } else if (speed < DRIVING_SPEED) {
+            interval = MAX_FLUSH_INTERVAL / 3;
+        } else {
+            interval = MAX_FLUSH_INTERVAL / 6;
+        }
+
+        if (sharingDuration > 0) {
+            interval = Math.min(interval, sharingDuration / MIN_POINTS_PER_SHARING);
+        }
+        return Math.max(MIN_FLUSH_INTERVAL, interval);
+    }
+
+    /**
+     * @return the interval in which the location providers should deliver fixes
+     */
+    public long getSamplingInterval() {
+        return getFlushInterval() / 2;
+    }
+
+    public boolean hasPending() {
+        return hasPending;
+    }
+
+    /**
+     * @return the time at which the pending fix is to be flushed
+     */
+    public long getNextFlushTime() {
+        return hasFlushed ? lastFlushTime + getFlushInterval() : 0;
+    }
+
+    public boolean shouldFlush(long now) {
+        return hasPending && now >= getNextFlushTime();
+    }
+
+    /**
+     * Marks the pending fix as passed on; get it before by getPendingLatitude() etc.
+     */
+    public void flush(long now) {
+        hasPending       = false;
+        hasFlushed       = true;
+        flushedLatitude  = pendingLatitude;
+        flushedLongitude = pendingLongitude;
+        flushedAccuracy  = pendingAccuracy;
+        lastFlushTime    = now;
+    }
+
+    public double getPendingLatitude() {
+        return pendingLatitude;
+    }
+
+    public double getPendingLongitude() {
+        return pendingLongitude;
+    }
+
+    public float getPendingAccuracy() {
+        return pendingAccuracy;
+    }
+
+    public void reset() {
+        hasPending = false;
+        hasFlushed = false;
+        hasLast    = false;
+        speed      = 0;
+    }
+
+    /**
+     * @return the distance in meters
+     */
+    static double distance(double startLat, double startLong, double endLat, double endLong) {
+        double dLat  = Math.toRadians(endLat - startLat);
+        double dLong = Math.toRadians(endLong - startLong);
+
+        startLat = Math.toRadians(startLat);
+        endLat   = Math.toRadians(endLat);
+
+        double a = haversin(dLat) + Math.cos(startLat) * Math.cos(endLat) * haversin(dLong);
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+
+        return EARTH_RADIUS * c * 1000;
+    }
+
+    private static double haversin(double val) {
+        return Math.pow(Math.sin(val / 2), 2);
+    }
+}
@@ -16,9 +16,8 @@
  */
 package org.thoughtcrime.securesms.jobmanager;
 
-import android.os.PowerManager;
-
 import org.thoughtcrime.securesms.jobmanager.requirements.Requirement;
+import org.thoughtcrime.securesms.util.WakeLockRegistry.TrackedWakeLock;
 
 import java.io.Serializable;
 import java.util.List;
@@ -34,7 +33,7 @@ public abstract class Job implements Serializable {
   private transient long                  persistentId;
   private transient int                   runIteration;
   private transient long                  lastRunTime;
-  private transient PowerManager.WakeLock wakeLock;
+  private transient TrackedWakeLock wakeLock;
 
   public Job(JobParameters parameters) {
     this.parameters = parameters;
@@ -56,6 +55,10 @@ public abstract class Job implements Serializable {
     return parameters.getGroupId();
   }
 
+  public int getPriority() {
+    return parameters.getPriority();
+  }
+
   public boolean isPersistent() {
     return parameters.isPersistent();
   }
@@ -97,11 +100,11 @@ public abstract class Job implements Serializable {
     return parameters.getWakeLockTimeout();
   }
 
-  public void setWakeLock(PowerManager.WakeLock wakeLock) {
+  public void setWakeLock(TrackedWakeLock wakeLock) {
     this.wakeLock = wakeLock;
   }
 
-  public PowerManager.WakeLock getWakeLock() {
+  public TrackedWakeLock getWakeLock() {
     return this.wakeLock;
   }
 
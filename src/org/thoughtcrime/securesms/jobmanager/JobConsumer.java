@@ -17,8 +17,13 @@
 package org.thoughtcrime.securesms.jobmanager;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
+import org.thoughtcrime.securesms.jobmanager.persistence.JobJournal;
+
+import java.io.IOException;
+
 class JobConsumer extends Thread {
 
   private static final String TAG = JobConsumer.class.getSimpleName();
@@ -30,10 +35,12 @@ class JobConsumer extends Thread {
   }
 
   private final JobQueue          jobQueue;
+  private final JobJournal        jobJournal;
 
-  public JobConsumer(String name, JobQueue jobQueue) {
+  public JobConsumer(String name, JobQueue jobQueue, @Nullable JobJournal jobJournal) {
     super(name);
     this.jobQueue          = jobQueue;
+    this.jobJournal        = jobJournal;
   }
 
   @Override
@@ -49,6 +56,14 @@ class JobConsumer extends Thread {
           job.onCanceled();
         }
 
+        if (job.isPersistent() && jobJournal != null) {
+          try {
+            jobJournal.remove(job);
+          } catch (IOException e) {
+            Log.w(TAG, "cannot remove job from journal", e);
+          }
+        }
+
         if (job.getWakeLock() != null && job.getWakeLockTimeout() == 0) {
           job.getWakeLock().release();
         }
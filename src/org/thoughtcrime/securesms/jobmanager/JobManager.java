@@ -17,12 +17,18 @@
 package org.thoughtcrime.securesms.jobmanager;
 
 import android.content.Context;
-import android.os.PowerManager;
+import android.util.Log;
 
+import org.thoughtcrime.securesms.jobmanager.persistence.JobJournal;
 import org.thoughtcrime.securesms.jobmanager.persistence.JobSerializer;
 import org.thoughtcrime.securesms.jobmanager.requirements.RequirementListener;
 import org.thoughtcrime.securesms.jobmanager.requirements.RequirementProvider;
+import org.thoughtcrime.securesms.util.WakeLockRegistry;
+import org.thoughtcrime.securesms.util.WakeLockRegistry.TrackedWakeLock;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.Executor;
@@ -35,11 +41,20 @@ import java.util.concurrent.Executors;
  */
 public class JobManager implements RequirementListener {
 
+  private static final String TAG = JobManager.class.getSimpleName();
+
+  // jobs waiting for the network should not keep the device awake for longer
+  private static final long MAX_WAKE_LOCK_HOLD_MILLIS = 10 * 60 * 1000;
+
   private final JobQueue      jobQueue           = new JobQueue();
   private final Executor      eventExecutor      = Executors.newSingleThreadExecutor();
 
   private final Context                     context;
   private final List<RequirementProvider>   requirementProviders;
+  private final JobJournal                  jobJournal;
+
+  // jobs added but not yet handled by the eventExecutor; persistent jobs are written to the journal in batches
+  private final List<Job>                   pendingAdditions = new ArrayList<>();
 
   private JobManager(Context context, String name,
                      List<RequirementProvider> requirementProviders,
@@ -54,11 +69,34 @@ public class JobManager implements RequirementListener {
       }
     }
 
+    if (jobSerializer != null) {
+      this.jobJournal = new JobJournal(new File(context.getFilesDir(), name + ".jobs"), jobSerializer);
+      eventExecutor.execute(this::replayJournal);
+    } else {
+      this.jobJournal = null;
+    }
+
     for (int i=0;i<consumers;i++) {
-      new JobConsumer("JobConsumer-" + i, jobQueue).start();
+      new JobConsumer("JobConsumer-" + i, jobQueue, jobJournal).start();
     }
   }
 
+  private void replayJournal() {
+    long      startTime  = System.currentTimeMillis();
+    List<Job> jobs       = jobJournal.replay();
+    long      replayTime = System.currentTimeMillis() - startTime;
+
+    if (replayTime > JobJournal.REPLAY_TARGET_MILLIS) {
+      Log.w(TAG, "replaying " + jobs.size() + " jobs took " + replayTime + " ms");
+    } else {
+      Log.i(TAG, "replaying " + jobs.size() + " jobs took " + replayTime + " ms");
+    }
+    if (jobJournal.getDroppedRecordCount() > 0) {
+      Log.w(TAG, "dropped " + jobJournal.getDroppedRecordCount() + " unreadable records of the job journal");
+    }
+    jobQueue.addAll(jobs);
+  }
+
   /**
    * @param context An Android {@link android.content.Context}.
    * @return a {@link org.thoughtcrime.securesms.jobmanager.JobManager.Builder} used to construct a JobManager.
@@ -74,18 +112,54 @@ public class JobManager implements RequirementListener {
    */
   public void add(final Job job) {
     if (job.needsWakeLock()) {
-      job.setWakeLock(acquireWakeLock(context, job.toString(), job.getWakeLockTimeout()));
+      job.setWakeLock(acquireWakeLock(context, job.getClass().getSimpleName(), job.getWakeLockTimeout()));
+    }
+
+    synchronized (pendingAdditions) {
+      pendingAdditions.add(job);
     }
 
     eventExecutor.execute(new Runnable() {
       @Override
       public void run() {
-        job.onAdded();
-        jobQueue.add(job);
+        processPendingAdditions();
       }
     });
   }
 
+  private void processPendingAdditions() {
+    List<Job> jobs;
+    synchronized (pendingAdditions) {
+      if (pendingAdditions.isEmpty()) {
+        return; // already handled by a previous run
+      }
+      jobs = new ArrayList<>(pendingAdditions);
+      pendingAdditions.clear();
+    }
+
+    if (jobJournal != null) {
+      try {
+        boolean hasPersistentJobs = false;
+        for (Job job : jobs) {
+          if (job.isPersistent()) {
+            jobJournal.append(job);
+            hasPersistentJobs = true;
+          }
+        }
+        if (hasPersistentJobs) {
+          jobJournal.sync();
+        }
+      } catch (IOException e) {
+        Log.w(TAG, "cannot persist jobs", e);
+      }
+    }
+
+    for (Job job : jobs) {
+      job.onAdded();
+    }
+    jobQueue.addAll(jobs);
+  }
+
   @Override
   public void onRequirementStatusChanged() {
     eventExecutor.execute(new Runnable() {
@@ -96,9 +170,8 @@ public class JobManager implements RequirementListener {
     });
   }
 
-  private PowerManager.WakeLock acquireWakeLock(Context context, String name, long timeout) {
-    PowerManager          powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
-    PowerManager.WakeLock wakeLock     = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, name);
+  private TrackedWakeLock acquireWakeLock(Context context, String name, long timeout) {
+    TrackedWakeLock wakeLock = WakeLockRegistry.newWakeLock(context, name, MAX_WAKE_LOCK_HOLD_MILLIS);
 
     if (timeout == 0) wakeLock.acquire();
     else              wakeLock.acquire(timeout);
@@ -30,17 +30,23 @@ public class JobParameters implements Serializable {
 
   private static final long serialVersionUID = 4880456378402584584L;
 
+  public static final int PRIORITY_LOW     = -1;
+  public static final int PRIORITY_DEFAULT = 0;
+  public static final int PRIORITY_HIGH    = 1;
+
   private final List<Requirement> requirements;
   private final int               retryCount;
   private final long              retryUntil;
   private final String            groupId;
   private final boolean           wakeLock;
   private final long              wakeLockTimeout;
+  private final int               priority;
+  private final boolean           persistent;
 
   private JobParameters(List<Requirement> requirements,
                         String groupId,
                         int retryCount, long retryUntil, boolean wakeLock,
-                        long wakeLockTimeout)
+                        long wakeLockTimeout, int priority, boolean persistent)
   {
     this.requirements    = requirements;
     this.groupId         = groupId;
@@ -48,6 +54,8 @@ public class JobParameters implements Serializable {
     this.retryUntil      = retryUntil;
     this.wakeLock        = wakeLock;
     this.wakeLockTimeout = wakeLockTimeout;
+    this.priority        = priority;
+    this.persistent      = persistent;
   }
 
   public List<Requirement> getRequirements() {
@@ -55,7 +63,7 @@ public class JobParameters implements Serializable {
   }
 
   public boolean isPersistent() {
-    return false;
+    return persistent;
   }
 
   public int getRetryCount() {
@@ -77,6 +85,10 @@ public class JobParameters implements Serializable {
     return groupId;
   }
 
+  public int getPriority() {
+    return priority;
+  }
+
   public boolean needsWakeLock() {
     return wakeLock;
   }
@@ -92,6 +104,8 @@ public class JobParameters implements Serializable {
     private String            groupId         = null;
     private boolean           wakeLock        = false;
     private long              wakeLockTimeout = 0;
+    private int               priority        = PRIORITY_DEFAULT;
+    private boolean           persistent      = false;
 
     /**
      * Specify a {@link org.thoughtcrime.securesms.jobmanager.requirements.Requirement }that must be met
@@ -135,6 +149,30 @@ public class JobParameters implements Serializable {
       return this;
     }
 
+    /**
+     * Mark the job as persistent.  Persistent jobs are written to the JobManager's journal
+     * before onAdded() is called and are restored if the process is killed before they finished.
+     * Requires a JobSerializer to be set for the JobManager.
+     *
+     * @return the builder.
+     */
+    public Builder withPersistence() {
+      this.persistent = true;
+      return this;
+    }
+
+    /**
+     * Specify the priority of the job. Jobs with a higher priority are executed first,
+     * jobs with the same priority are executed in the order they were added.
+     *
+     * @param priority The job's priority, eg. PRIORITY_HIGH.
+     * @return the builder.
+     */
+    public Builder withPriority(int priority) {
+      this.priority = priority;
+      return this;
+    }
+
     /**
      * Specify whether this job should hold a wake lock.
      *
@@ -164,7 +202,7 @@ public class JobParameters implements Serializable {
      * @return the JobParameters instance that describes a Job.
      */
     public JobParameters create() {
-      return new JobParameters(requirements, groupId, retryCount, System.currentTimeMillis() + retryDuration, wakeLock, wakeLockTimeout);
+      return new JobParameters(requirements, groupId, retryCount, System.currentTimeMillis() + retryDuration, wakeLock, wakeLockTimeout, priority, persistent);
     }
   }
 }
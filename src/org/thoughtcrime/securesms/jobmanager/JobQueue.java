@@ -18,48 +18,81 @@ package org.thoughtcrime.securesms.jobmanager;
 
 import android.support.annotation.NonNull;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
+import java.util.PriorityQueue;
 
+/**
+ * Jobs of the same group are kept in a FIFO queue per group; only the first job of a group
+ * is a candidate for execution. Candidates whose requirements are met are kept in a ready queue
+ * ordered by priority, so getNext() does not need to scan all jobs.
+ * Every job that becomes ready wakes exactly one waiting consumer.
+ */
 class JobQueue {
 
-  private final Map<String, Job> activeGroupIds = new HashMap<>();
-  private final LinkedList<Job>  jobQueue       = new LinkedList<>();
+  private final Map<String, Job>             activeGroupIds = new HashMap<>();
+  private final Map<String, ArrayDeque<Job>> groupQueues    = new HashMap<>();
+  private final PriorityQueue<Entry>         readyJobs      = new PriorityQueue<>(16, new EntryComparator());
+  private final List<Entry>                  waitingJobs    = new ArrayList<>();
+
+  private long nextSequence  = 0;
+  private long frontSequence = 0;
 
   synchronized void onRequirementStatusChanged() {
-    notifyAll();
+    Iterator<Entry> iterator = waitingJobs.iterator();
+    while (iterator.hasNext()) {
+      Entry entry = iterator.next();
+      if (entry.job.isRequirementsMet()) {
+        iterator.remove();
+        readyJobs.add(entry);
+        notify();
+      }
+    }
   }
 
   synchronized void add(Job job) {
-    jobQueue.add(job);
     processJobAddition(job);
-    notifyAll();
   }
 
   synchronized void addAll(List<Job> jobs) {
-    jobQueue.addAll(jobs);
-
     for (Job job : jobs) {
       processJobAddition(job);
     }
-
-    notifyAll();
   }
 
   private void processJobAddition(@NonNull Job job) {
-    if (isJobActive(job) && isGroupIdAvailable(job)) {
-      setGroupIdUnavailable(job);
-    } else if (!isGroupIdAvailable(job)) {
-      Job blockingJob = activeGroupIds.get(job.getGroupId());
+    String groupId = job.getGroupId();
+    if (groupId == null) {
+      addCandidate(new Entry(job, nextSequence++));
+      return;
+    }
+
+    Job blockingJob = activeGroupIds.get(groupId);
+    if (blockingJob == null) {
+      activeGroupIds.put(groupId, job);
+      addCandidate(new Entry(job, nextSequence++));
+    } else {
       blockingJob.resetRunStats();
+
+      ArrayDeque<Job> groupQueue = groupQueues.get(groupId);
+      if (groupQueue == null) {
+        groupQueues.put(groupId, (groupQueue = new ArrayDeque<>()));
+      }
+      groupQueue.add(job);
     }
   }
 
+  /**
+   * Re-queue a deferred job in front of the jobs with the same priority;
+   * the job still blocks its group.
+   */
   synchronized void push(Job job) {
-    jobQueue.addFirst(job);
+    addCandidate(new Entry(job, --frontSequence));
   }
 
   synchronized Job getNext() {
@@ -79,40 +112,62 @@ class JobQueue {
   synchronized void setGroupIdAvailable(String groupId) {
     if (groupId != null) {
       activeGroupIds.remove(groupId);
-      notifyAll();
+
+      ArrayDeque<Job> groupQueue = groupQueues.get(groupId);
+      if (groupQueue != null) {
+        Job next = groupQueue.poll();
+        if (groupQueue.isEmpty()) {
+          groupQueues.remove(groupId);
+        }
+        if (next != null) {
+          activeGroupIds.put(groupId, next);
+          addCandidate(new Entry(next, nextSequence++));
+        }
+      }
     }
   }
 
-  private Job getNextAvailableJob() {
-    if (jobQueue.isEmpty()) return null;
-
-    ListIterator<Job> iterator = jobQueue.listIterator();
-    while (iterator.hasNext()) {
-      Job job = iterator.next();
+  private void addCandidate(@NonNull Entry entry) {
+    if (entry.job.isRequirementsMet()) {
+      readyJobs.add(entry);
+      notify();
+    } else {
+      waitingJobs.add(entry);
+    }
+  }
 
-      if (job.isRequirementsMet() && isGroupIdAvailable(job)) {
-        iterator.remove();
-        setGroupIdUnavailable(job);
-        return job;
+  private Job getNextAvailableJob() {
+    Entry entry;
+    while ((entry = readyJobs.poll()) != null) {
+      // requirements may have changed since the job was marked as ready
+      if (entry.job.isRequirementsMet()) {
+        return entry.job;
       }
+      waitingJobs.add(entry);
     }
 
     return null;
   }
 
-  private boolean isJobActive(@NonNull Job job) {
-    return job.getRetryUntil() > 0 && job.getRunIteration() > 0;
-  }
+  private static class Entry {
+    final Job  job;
+    final int  priority;
+    final long sequence;
 
-  private boolean isGroupIdAvailable(@NonNull Job requester) {
-    String groupId = requester.getGroupId();
-    return groupId == null || !activeGroupIds.containsKey(groupId) || activeGroupIds.get(groupId).equals(requester);
+    Entry(Job job, long sequence) {
+      this.job      = job;
+      this.priority = job.getPriority();
+      this.sequence = sequence;
+    }
   }
 
-  private void setGroupIdUnavailable(@NonNull Job job) {
-    String groupId = job.getGroupId();
-    if (groupId != null) {
-      activeGroupIds.put(groupId, job);
+  private static class EntryComparator implements Comparator<Entry> {
+    @Override
+    public int compare(Entry lhs, Entry rhs) {
+      if (lhs.priority != rhs.priority) {
+        return lhs.priority > rhs.priority ? -1 : 1;
+      }
+      return lhs.sequence < rhs.sequence ? -1 : (lhs.sequence == rhs.sequence ? 0 : 1);
     }
   }
 }
@@ -0,0 +1,221 @@
+package org.thoughtcrime.securesms.jobmanager.persistence;
+
+import android.support.annotation.NonNull;
+
+import org.thoughtcrime.securesms.jobmanager.Job;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An append-only journal of persistent jobs.
+ *
+ * Each added job is written as a line "A id serialized-job", each finished job as "R id".
+ * Additions are made durable by sync(), which is called once for a batch of additions,
+ * removals are written lazily as losing them only results in the job being run again.
+ * When more records are dead than alive, the journal is rewritten containing only the pending jobs;
+ * so each record is rewritten a constant number of times on average, however many jobs are pending.
+ */
+public class JobJournal {
+
+  // replaying the journal of a few thousand jobs should not delay the start noticeably
+  public static final long REPLAY_TARGET_MILLIS = 200;
+
+  // small journals are not worth rewriting
+  private static final long COMPACTION_MIN_BYTES = 64 * 1024;
+
+  private static final char RECORD_ADD    = 'A';
+  private static final char RECORD_REMOVE = 'R';
+
+  private final File          file;
+  private final JobSerializer serializer;
+
+  // pending jobs in the order they were added, needed for compaction
+  private final Map<Long, String> pendingJobs = new LinkedHashMap<>();
+
+  private FileOutputStream outputStream;
+  private Writer           writer;
+  private long             fileSize;
+  private int              records;
+  private int              droppedRecords;
+  private long             nextId = 1;
+  private boolean          unsynced;
+
+  public JobJournal(@NonNull File file, @NonNull JobSerializer serializer) {
+    this.file       = file;
+    this.serializer = serializer;
+  }
+
+  /**
+   * Read all pending jobs from the journal. Must be called once before jobs are added.
+   *
+   * @return the jobs that were added but not removed, in the order they were added.
+   */
+  public synchronized @NonNull List<Job> replay() {
+    List<Job> jobs = new LinkedList<>();
+
+    if (file.exists()) {
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          records++;
+          parseRecord(line);
+        }
+      } catch (IOException e) {
+        // the jobs read so far are replayed, the rest is dropped by the compaction below
+        droppedRecords++;
+      }
+    }
+
+    Iterator<Map.Entry<Long, String>> iterator = pendingJobs.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<Long, String> entry = iterator.next();
+      try {
+        Job job = serializer.deserialize(null, false, entry.getValue());
+        job.setPersistentId(entry.getKey());
+        jobs.add(job);
+      } catch (IOException | RuntimeException e) {
+        // eg. the job's class was changed by an update, it cannot be run anymore
+        iterator.remove();
+        droppedRecords++;
+      }
+    }
+
+    try {
+      // start with a compacted journal, this also drops records that could not be read
+      if (records > pendingJobs.size()) {
+        compact();
+      } else {
+        openWriter(true);
+      }
+    } catch (IOException e) {
+      // write() tries again to open the journal, the error is reported to the first append()
+    }
+    return jobs;
+  }
+
+  private void parseRecord(String line) {
+    // a partly written last line, eg. if the process was killed, is ignored
+    try {
+      if (line.length() > 2 && line.charAt(0) == RECORD_ADD) {
+        int  separator = line.indexOf(' ', 2);
+        long id        = Long.parseLong(line.substring(2, separator));
+        pendingJobs.put(id, line.substring(separator + 1));
+        nextId = Math.max(nextId, id + 1);
+      } else if (line.length() > 2 && line.charAt(0) == RECORD_REMOVE) {
+        pendingJobs.remove(Long.parseLong(line.substring(2)));
+      }
+    } catch (RuntimeException e) {
+      // the record is dropped by the next compaction
+      droppedRecords++;
+    }
+  }
+
+  /**
+   * @return the number of records or jobs that replay() could not read and dropped;
+   *         a failed read of the rest of the journal counts as one
+   */
+  public synchronized int getDroppedRecordCount() {
+    return droppedRecords;
+  }
+
+  /**
+   * Append a job to the journal and assign its persistent id.
+   * The job is durable only after the next call to sync().
+   */
+  public synchronized void append(@NonNull Job job) throws IOException {
+    String serialized = serializer.serialize(job);
+    long   id         = nextId++;
+
+    job.setPersistentId(id);
+    pendingJobs.put(id, serialized);
+    write(RECORD_ADD + " " + id + " " + serialized + "\n");
+    unsynced = true;
+  }
+
+  /**
+   * Mark a job as finished, it won't be replayed on the next start.
+   */
+  public synchronized void remove(@NonNull Job job) throws IOException {
+    long id = job.getPersistentId();
+    if (id == 0 || pendingJobs.remove(id) == null) {
+      return;
+    }
+
+    write(RECORD_REMOVE + " " + id + "\n");
+    if (fileSize > COMPACTION_MIN_BYTES && records > 2 * pendingJobs.size()) {
+      compact();
+    }
+  }
+
+  /**
+   * Flush all appended records to the disk; a single fsync() is done for any number of appended jobs.
+   */
+  public synchronized void sync() throws IOException {
+    if (writer == null) {
+      return;
+    }
+    writer.flush();
+    if (unsynced) {
+      outputStream.getFD().sync();
+      unsynced = false;
+    }
+  }
+
+  private void write(String record) throws IOException {
+    if (writer == null) {
+      openWriter(true);
+    }
+    writer.write(record);
+    fileSize += record.length();
+    records++;
+  }
+
+  private void openWriter(boolean append) throws IOException {
+    closeWriter();
+    outputStream = new FileOutputStream(file, append);
+    writer       = new BufferedWriter(new OutputStreamWriter(outputStream, "UTF-8"));
+    fileSize     = append ? file.length() : 0;
+  }
+
+  private void closeWriter() throws IOException {
+    if (writer != null) {
+      writer.close();
+      writer       = null;
+      outputStream = null;
+    }
+  }
+
+  private void compact() throws IOException {
+    File tempFile = new File(file.getPath() + ".tmp");
+
+    try (FileOutputStream tempStream = new FileOutputStream(tempFile)) {
+      Writer tempWriter = new BufferedWriter(new OutputStreamWriter(tempStream, "UTF-8"));
+      for (Map.Entry<Long, String> entry : pendingJobs.entrySet()) {
+        tempWriter.write(RECORD_ADD + " " + entry.getKey() + " " + entry.getValue() + "\n");
+      }
+      tempWriter.flush();
+      tempStream.getFD().sync();
+    }
+
+    closeWriter();
+    if (!tempFile.renameTo(file)) {
+      throw new IOException("cannot replace job journal");
+    }
+    openWriter(true);
+    records  = pendingJobs.size();
+    unsynced = false;
+  }
+}
@@ -0,0 +1,42 @@
+package org.thoughtcrime.securesms.map;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import android.util.LruCache;
+
+import com.mapbox.mapboxsdk.maps.Style;
+
+/**
+ * Keeps track of the info window images added to the map style.
+ * <p>
+ * The style holds a copy of each image, so the cache only holds the size of the bitmaps it is bounded by.
+ * Images evicted from the cache are removed from the style, they are rendered again when needed.
+ * </p>
+ */
+public class InfoWindowCache extends LruCache<String, Integer> {
+
+    private static final int MAX_SIZE_BYTES = 8 * 1024 * 1024;
+
+    private final Style mapboxStyle;
+
+    public InfoWindowCache(@NonNull Style mapboxStyle) {
+        super(MAX_SIZE_BYTES);
+        this.mapboxStyle = mapboxStyle;
+    }
+
+    @Override
+    protected int sizeOf(String infoWindowId, Integer byteCount) {
+        return byteCount;
+    }
+
+    public void put(String infoWindowId, Bitmap bitmap) {
+        put(infoWindowId, bitmap.getByteCount());
+    }
+
+    @Override
+    protected void entryRemoved(boolean evicted, String infoWindowId, Integer oldByteCount, Integer newByteCount) {
+        if (newByteCount == null) {
+            mapboxStyle.removeImage(infoWindowId);
+        }
+    }
+}
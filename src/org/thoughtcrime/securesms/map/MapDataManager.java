@@ -13,7 +13,6 @@ import android.support.annotation.NonNull;
 import android.support.v4.content.ContextCompat;
 import android.util.Log;
 
-import com.b44t.messenger.DcArray;
 import com.b44t.messenger.DcContact;
 import com.b44t.messenger.DcEventCenter;
 import com.google.gson.JsonObject;
@@ -35,24 +34,22 @@ import com.mapbox.mapboxsdk.style.sources.GeoJsonSource;
 import org.thoughtcrime.securesms.R;
 import org.thoughtcrime.securesms.connect.ApplicationDcContext;
 import org.thoughtcrime.securesms.connect.DcHelper;
-import org.thoughtcrime.securesms.map.model.FeatureTreeSet;
+import org.thoughtcrime.securesms.map.model.LocationTrack;
 import org.thoughtcrime.securesms.map.model.MapSource;
-import org.thoughtcrime.securesms.map.model.TimeComparableFeature;
+import org.thoughtcrime.securesms.util.Util;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 
 import static com.b44t.messenger.DcContext.DC_EVENT_LOCATION_CHANGED;
 import static com.b44t.messenger.DcContext.DC_GCL_ADD_SELF;
-import static com.mapbox.mapboxsdk.style.expressions.Expression.all;
 import static com.mapbox.mapboxsdk.style.expressions.Expression.eq;
 import static com.mapbox.mapboxsdk.style.expressions.Expression.get;
-import static com.mapbox.mapboxsdk.style.expressions.Expression.gt;
-import static com.mapbox.mapboxsdk.style.expressions.Expression.gte;
 import static com.mapbox.mapboxsdk.style.expressions.Expression.literal;
-import static com.mapbox.mapboxsdk.style.expressions.Expression.lte;
 import static com.mapbox.mapboxsdk.style.expressions.Expression.switchCase;
 import static com.mapbox.mapboxsdk.style.expressions.Expression.toBool;
 import static com.mapbox.mapboxsdk.style.layers.Property.ICON_ANCHOR_BOTTOM_LEFT;
@@ -78,12 +75,27 @@ public class MapDataManager implements DcEventCenter.DcEventDelegate, GenerateIn
     public static final long TIMESTAMP_NOW = 0L;
     public static final long TIMEOUT = 3 * 60 * 60 * 1000;
     private static final long DEFAULT_LAST_POSITION_DELTA = 1000*60*30; // 30 min
+    // time slider changes are applied at most once per frame
+    private static final long FILTER_DELAY_MS = 16;
 
     private static final String TAG = MapDataManager.class.getSimpleName();
     private Style mapboxStyle;
     private HashMap<Integer, MapSource> contactMapSources;
-    private HashMap<String, FeatureTreeSet> featureCollections;
-    private Feature selectedFeature;
+    private HashMap<Integer, LocationTrack> locationTracks;
+    private HashMap<Integer, ContactFeatures> contactFeatures;
+    private int selectedContactId;
+    private int selectedLocationId; // 0 if no marker is selected
+
+    // the time window shown on the map; it is applied by handing over only the features of the locations
+    // inside the window to the sources, so the layers never need new filter expressions.
+    private long filterStartTimestamp;
+    private long filterEndTimestamp = Long.MAX_VALUE;
+    private boolean filterLastPositionsOnly = true;
+    private HashMap<Integer, int[]> visibleRanges; // per contact: first and behind last visible index of the track
+    private boolean filterScheduled;
+
+    private InfoWindowCache infoWindowCache;
+    private HashSet<String> pendingInfoWindows;
     private int chatId;
     private Context context;
     private ApplicationDcContext dcContext;
@@ -99,16 +111,18 @@ public class MapDataManager implements DcEventCenter.DcEventDelegate, GenerateIn
         this.dcContext = DcHelper.getContext(context);
         this.chatId = chatId;
         contactMapSources = new HashMap<>();
-        featureCollections = new HashMap<>();
+        locationTracks = new HashMap<>();
+        contactFeatures = new HashMap<>();
+        visibleRanges = new HashMap<>();
+        infoWindowCache = new InfoWindowCache(mapboxMapStyle);
+        pendingInfoWindows = new HashSet<>();
+        filterStartTimestamp = System.currentTimeMillis() - DEFAULT_LAST_POSITION_DELTA;
         LatLngBounds.Builder boundingBuilder = new LatLngBounds.Builder();
 
         int[] contactIds = getContactIds(chatId);
 
-        long now = System.currentTimeMillis();
         for (int contactId : contactIds) {
             updateSource(chatId, contactId, boundingBuilder);
-            generateInfoWindows(contactId);
-            filterLastPosition(contactId, now - DEFAULT_LAST_POSITION_DELTA);
         }
 
         dcContext.eventCenter.addObserver(DC_EVENT_LOCATION_CHANGED, this);
@@ -144,6 +158,10 @@ public class MapDataManager implements DcEventCenter.DcEventDelegate, GenerateIn
     public void setInfoWindowResults(HashMap<String, Bitmap> results) {
         Log.d(TAG, "setInfoWindowResults start");
         mapboxStyle.addImages(results);
+        for (Map.Entry<String, Bitmap> entry : results.entrySet()) {
+            pendingInfoWindows.remove(entry.getKey());
+            infoWindowCache.put(entry.getKey(), entry.getValue());
+        }
         Log.d(TAG, "setInfoWindowResults finished");
     }
 
@@ -151,9 +169,9 @@ public class MapDataManager implements DcEventCenter.DcEventDelegate, GenerateIn
     public void refreshSource(int contactId) {
         Log.d(TAG, "refreshSource start");
         MapSource source = contactMapSources.get(contactId);
-        FeatureTreeSet collection = featureCollections.get(source.getMarkerFeatureCollection());
+        int[] range = getVisibleRange(locationTracks.get(contactId));
         GeoJsonSource pointSource = (GeoJsonSource) mapboxStyle.getSource(source.getMarkerSource());
-        pointSource.setGeoJson(FeatureCollection.fromFeatures(collection.getFeatureList()));
+        pointSource.setGeoJson(FeatureCollection.fromFeatures(contactFeatures.get(contactId).getPoints(range[0], range[1])));
         Log.d(TAG, "refreshSource finished");
     }
 
@@ -195,154 +213,276 @@ public class MapDataManager implements DcEventCenter.DcEventDelegate, GenerateIn
     }
 
     public void unselectMarker() {
-        if (selectedFeature != null) {
-            selectedFeature.addBooleanProperty(MARKER_SELECTED, false);
-            refreshSource(selectedFeature.getNumberProperty(CONTACT_ID).intValue());
-            selectedFeature = null;
+        if (selectedLocationId != 0) {
+            contactFeatures.get(selectedContactId).setSelected(selectedLocationId, false);
+            selectedLocationId = 0;
+            refreshSource(selectedContactId);
         }
     }
 
     public void setMarkerSelected(String featureId) {
-        if (selectedFeature == null) {
-            setNewMarkerSelected(featureId);
-        } else if (selectedFeature.id().equals(featureId)) {
-            updateSelectedMarker();
-        } else {
-            replaceSelectedMarker(featureId);
+        int locationId = Integer.parseInt(featureId);
+        if (locationId == selectedLocationId) {
+            // selecting the selected marker again hides the info window
+            unselectMarker();
+            return;
+        }
+
+        int contactId = getContactIdOfLocation(locationId);
+        if (contactId == 0) {
+            return;
+        }
+
+        int lastContactId = 0;
+        if (selectedLocationId != 0) {
+            lastContactId = selectedContactId;
+            contactFeatures.get(selectedContactId).setSelected(selectedLocationId, false);
+        }
+        selectedContactId = contactId;
+        selectedLocationId = locationId;
+        contactFeatures.get(contactId).setSelected(locationId, true);
+        generateInfoWindow(contactId, locationId);
+        refreshSource(contactId);
+        if (lastContactId != 0 && lastContactId != contactId) {
+            refreshSource(lastContactId);
         }
     }
 
 
+    /**
+     * Show the locations between the given timestamps, including lines.
+     */
     public void filter(long startTimestamp, long endTimestamp) {
-        int[] contactIds = getContactIds(chatId);
-        for (int contactId : contactIds) {
-            MapSource contactMapMetadata =  contactMapSources.get(contactId);
-            SymbolLayer markerLayer = (SymbolLayer) mapboxStyle.getLayer(contactMapMetadata.getMarkerLayer());
-            Expression filter = all(
-                    lte(get(TIMESTAMP), endTimestamp),
-                    gte(get(TIMESTAMP), startTimestamp));
-            markerLayer.withFilter(filter);
-            LineLayer lineLayer = (LineLayer) mapboxStyle.getLayer(contactMapMetadata.getLineLayer());
-            lineLayer.withFilter(filter);
-        }
+        filterStartTimestamp = startTimestamp;
+        filterEndTimestamp = endTimestamp;
+        filterLastPositionsOnly = false;
+        scheduleFilter();
     }
 
+    /**
+     * Show only the last location of each contact, if it is not older than the given timestamp.
+     */
     public void filterLastPositions(long startTimestamp) {
-        int[] contactIds = getContactIds(chatId);
-        for (int contactId : contactIds) {
-          filterLastPosition(contactId, startTimestamp);
+        filterStartTimestamp = startTimestamp;
+        filterEndTimestamp = Long.MAX_VALUE;
+        filterLastPositionsOnly = true;
+        scheduleFilter();
+    }
+
+    private void scheduleFilter() {
+        // while the slider is dragged, only the latest window is applied
+        if (!filterScheduled) {
+            filterScheduled = true;
+            Util.runOnMainDelayed(() -> {
+                filterScheduled = false;
+                for (Integer contactId : locationTracks.keySet()) {
+                    applyFilter(contactId, false);
+                }
+            }, FILTER_DELAY_MS);
+        }
+    }
+
+    /**
+     * @return the first and behind the last index of the track that are inside the time window
+     */
+    private int[] getVisibleRange(LocationTrack track) {
+        int from, to;
+        if (filterLastPositionsOnly) {
+            to = track.size();
+            from = to > 0 && track.getTimestamp(to - 1) >= filterStartTimestamp ? to - 1 : to;
+        } else {
+            from = track.lowerBound(filterStartTimestamp);
+            to = track.upperBound(filterEndTimestamp);
         }
+        return new int[] {from, to};
     }
 
-    private void filterLastPosition(int contactId, long startTimestamp) {
-        MapSource contactMapMetadata =  contactMapSources.get(contactId);
-        SymbolLayer markerLayer = (SymbolLayer) mapboxStyle.getLayer(contactMapMetadata.getMarkerLayer());
-        Expression filter = all(
-                eq((get(LAST_LOCATION)), literal(true)),
-                gte(get(TIMESTAMP), startTimestamp));
-        markerLayer.withFilter(filter);
-        LineLayer lineLayer = (LineLayer) mapboxStyle.getLayer(contactMapMetadata.getLineLayer());
-        lineLayer.withFilter(filter);
+    /**
+     * Hands the features of the locations inside the time window over to the sources of the contact.
+     *
+     * @param force if false, the sources are only updated if the visible locations have changed
+     */
+    private void applyFilter(int contactId, boolean force) {
+        MapSource contactMapMetadata = contactMapSources.get(contactId);
+        ContactFeatures features = contactFeatures.get(contactId);
+        int[] range = getVisibleRange(locationTracks.get(contactId));
+        int[] lastRange = visibleRanges.get(contactId);
+        if (!force && Arrays.equals(range, lastRange)) {
+            return;
+        }
+        visibleRanges.put(contactId, range);
+
+        // in the last positions view, there are no lines
+        GeoJsonSource lineSource = (GeoJsonSource) mapboxStyle.getSource(contactMapMetadata.getLineSource());
+        lineSource.setGeoJson(FeatureCollection.fromFeatures(filterLastPositionsOnly ?
+                new ArrayList<>() : features.getLines(range[0], range[1])));
+        GeoJsonSource pointSource = (GeoJsonSource) mapboxStyle.getSource(contactMapMetadata.getMarkerSource());
+        pointSource.setGeoJson(FeatureCollection.fromFeatures(features.getPoints(range[0], range[1])));
     }
 
     private void updateSource(int chatId, int contactId) {
         updateSource(chatId, contactId, null);
     }
 
+    /**
+     * Adds the locations reported since the last update to the track of the contact.
+     * Only the features of the new rows are created, the sources are not touched if there are none.
+     */
     private void updateSource(int chatId, int contactId, LatLngBounds.Builder boundingBuilder) {
-        updateSource(chatId, contactId, System.currentTimeMillis() - TIMEOUT, TIMESTAMP_NOW, boundingBuilder );
-    }
-
-    private void updateSource(int chatId, int contactId, long startTimestamp, long endTimestamp, LatLngBounds.Builder boundingBuilder) {
         //long start = System.currentTimeMillis();
-        DcArray locations = dcContext.getLocations(chatId, contactId, startTimestamp, endTimestamp);
         MapSource contactMapMetadata = contactMapSources.get(contactId);
         if (contactMapMetadata == null) {
             contactMapMetadata = addContactMapSource(contactId);
         }
 
-        FeatureTreeSet sortedPointFeatures = featureCollections.get(contactMapMetadata.getMarkerFeatureCollection());
-        if (sortedPointFeatures == null) {
-            sortedPointFeatures = new FeatureTreeSet();
+        LocationTrack track = locationTracks.get(contactId);
+        if (track == null) {
+            track = new LocationTrack();
+            locationTracks.put(contactId, track);
+            contactFeatures.put(contactId, new ContactFeatures(contactId, track));
         }
 
-        int count = locations.getCnt();
-        for (int i = 0; i < count; i++) {
-            Point p = Point.fromLngLat(locations.getLongitude(i), locations.getLatitude(i));
-            Feature pointFeature = Feature.fromGeometry(p, new JsonObject(), String.valueOf(locations.getLocationId(i)));
-            pointFeature.addBooleanProperty(MARKER_SELECTED, false);
-            pointFeature.addBooleanProperty(LAST_LOCATION, false);
-            pointFeature.addNumberProperty(CONTACT_ID, contactId);
-            pointFeature.addStringProperty(INFO_WINDOW_ID, locations.getLocationId(i) + "_info_" + locations.getMsgId(i));
-            pointFeature.addNumberProperty(TIMESTAMP, locations.getTimestamp(i));
-            pointFeature.addNumberProperty(MESSAGE_ID, locations.getMsgId(i));
-            pointFeature.addNumberProperty(ACCURACY, locations.getAccuracy(i));
-            sortedPointFeatures.add(new TimeComparableFeature(pointFeature));
+        // the whole window is fetched, as a location may be reported late with an older timestamp;
+        // the track skips the locations it already contains by their id and inserts the late ones in order.
+        long startTimestamp = System.currentTimeMillis() - TIMEOUT;
+        if (track.addAll(dcContext.getLocations(chatId, contactId, startTimestamp, TIMESTAMP_NOW), contactFeatures.get(contactId)) == 0) {
+            return;
+        }
 
-            if (boundingBuilder != null) {
-                boundingBuilder.include(new LatLng(locations.getLatitude(i), locations.getLongitude(i)));
+        if (boundingBuilder != null) {
+            for (int i = 0; i < track.size(); i++) {
+                boundingBuilder.include(new LatLng(track.getLatitude(i), track.getLongitude(i)));
             }
         }
 
-        if (sortedPointFeatures.size() > 0) {
-            sortedPointFeatures.first().getFeature().addBooleanProperty(LAST_LOCATION, true);
-        }
+        applyFilter(contactId, true);
 
-        ArrayList<Point> sortedPointList = sortedPointFeatures.getPointList();
-        ArrayList<Feature> sortedFeatureList = sortedPointFeatures.getFeatureList();
-        FeatureCollection pointFeatureCollection = FeatureCollection.fromFeatures(sortedFeatureList);
-        ArrayList<Feature> lineFeatures = new ArrayList<>();
+        //Log.d(TAG, "update Source took " + (System.currentTimeMillis() - start) + " ms");
+    }
 
-        for (int i = 0; i < sortedPointFeatures.size() - 1; i++) {
-            Feature f = sortedFeatureList.get(i);
-            Number numberProperty = f.getNumberProperty(TIMESTAMP);
-            LineString l = LineString.fromLngLats(sortedPointList.subList(i, i+2));
-            Feature lineFeature = Feature.fromGeometry(l, new JsonObject(), "l_" + f.id());
-            lineFeature.addNumberProperty(TIMESTAMP, numberProperty);
-            lineFeatures.add(lineFeature);
+    /**
+     * The point and line features of the locations of a contact, kept in sync with the track,
+     * so only the features of new locations are created and the sources get views of the lists.
+     * Both lists are ordered newest first, the features of a time window are a sublist of them.
+     */
+    private class ContactFeatures implements LocationTrack.Listener {
+        private final int contactId;
+        private final LocationTrack track;
+        private final ArrayList<Feature> points = new ArrayList<>();
+        // the segment of a location leads to the location before, so the oldest location has none
+        private final ArrayList<Feature> lines = new ArrayList<>();
+
+        ContactFeatures(int contactId, LocationTrack track) {
+            this.contactId = contactId;
+            this.track = track;
         }
 
-        FeatureCollection lineFeatureCollection = FeatureCollection.fromFeatures(lineFeatures);
+        @Override
+        public void onLocationAdded(int index) {
+            int size = track.size();
+            if (index == size - 1 && size > 1) {
+                points.get(0).addBooleanProperty(LAST_LOCATION, false);
+            }
+            points.add(size - 1 - index, createPointFeature(contactId, track, index));
+
+            if (size > 1) {
+                // a new segment from the location, or from the location after it if the location is the oldest one,
+                // the segment of the location after it then leads to the new location
+                int lineIndex = Math.max(index, 1);
+                lines.add(size - 1 - lineIndex, createLineFeature(track, lineIndex));
+                if (index > 0 && index + 1 < size) {
+                    lines.set(size - 2 - index, createLineFeature(track, index + 1));
+                }
+            }
+        }
 
-        GeoJsonSource lineSource = (GeoJsonSource) mapboxStyle.getSource(contactMapMetadata.getLineSource());
-        lineSource.setGeoJson(lineFeatureCollection);
-        GeoJsonSource pointSource = (GeoJsonSource) mapboxStyle.getSource(contactMapMetadata.getMarkerSource());
-        pointSource.setGeoJson(pointFeatureCollection);
-        featureCollections.put(contactMapMetadata.getMarkerFeatureCollection(), sortedPointFeatures);
+        @Override
+        public void onLocationReplaced(int index) {
+            int size = track.size();
+            points.set(size - 1 - index, createPointFeature(contactId, track, index));
+            if (index > 0) {
+                lines.set(size - 1 - index, createLineFeature(track, index));
+            }
+            if (index + 1 < size) {
+                lines.set(size - 2 - index, createLineFeature(track, index + 1));
+            }
+        }
 
-        generateMissingInfoWindows(contactId);
+        void setSelected(int locationId, boolean selected) {
+            int index = track.indexOf(locationId);
+            if (index != -1) {
+                points.get(track.size() - 1 - index).addBooleanProperty(MARKER_SELECTED, selected);
+            }
+        }
 
-        //Log.d(TAG, "update Source took " + (System.currentTimeMillis() - start) + " ms");
-    }
+        /**
+         * @return the point features of the locations from index from to behind index to, newest first
+         */
+        List<Feature> getPoints(int from, int to) {
+            return points.subList(track.size() - to, track.size() - from);
+        }
 
-    private void generateMissingInfoWindows(int contactId) {
-        MapSource contactMapMetadata = contactMapSources.get(contactId);
-        FeatureTreeSet featureList = featureCollections.get(contactMapMetadata.getMarkerFeatureCollection());
-
-        ArrayList<Feature> missingWindows = new ArrayList<>();
-        for (TimeComparableFeature tcf : featureList) {
-            String infoWindowId = tcf.getFeature().getStringProperty(INFO_WINDOW_ID);
-            if (mapboxStyle.getImage(infoWindowId) == null) {
-                Log.d(TAG, "create new infoWindow for " + infoWindowId);
-                missingWindows.add(tcf.getFeature());
-            } else {
-                // the list is ordered and thus, all older features should already have an info window
-                break;
+        /**
+         * @return the segments of the locations from index from to behind index to, newest first
+         */
+        List<Feature> getLines(int from, int to) {
+            int first = Math.max(from, 1);
+            if (to <= first) {
+                return new ArrayList<>();
             }
+            return lines.subList(track.size() - to, track.size() - first);
         }
+    }
 
-        if (missingWindows.size() > 0) {
-            new GenerateInfoWindowTask(this, contactId).execute(missingWindows);
-        }
+    private Feature createPointFeature(int contactId, LocationTrack track, int index) {
+        Point p = Point.fromLngLat(track.getLongitude(index), track.getLatitude(index));
+        Feature pointFeature = Feature.fromGeometry(p, new JsonObject(), String.valueOf(track.getLocationId(index)));
+        pointFeature.addBooleanProperty(MARKER_SELECTED, contactId == selectedContactId && track.getLocationId(index) == selectedLocationId);
+        pointFeature.addBooleanProperty(LAST_LOCATION, index == track.size() - 1);
+        pointFeature.addNumberProperty(CONTACT_ID, contactId);
+        pointFeature.addStringProperty(INFO_WINDOW_ID, getInfoWindowId(track, index));
+        pointFeature.addNumberProperty(TIMESTAMP, track.getTimestamp(index));
+        pointFeature.addNumberProperty(MESSAGE_ID, track.getMsgId(index));
+        pointFeature.addNumberProperty(ACCURACY, track.getAccuracy(index));
+        return pointFeature;
     }
 
+    /**
+     * @return the segment from the location at the index to the location before,
+     * it uses the id and the timestamp of the newer location.
+     */
+    private static Feature createLineFeature(LocationTrack track, int index) {
+        LineString l = LineString.fromLngLats(Arrays.asList(
+                Point.fromLngLat(track.getLongitude(index), track.getLatitude(index)),
+                Point.fromLngLat(track.getLongitude(index - 1), track.getLatitude(index - 1))));
+        Feature lineFeature = Feature.fromGeometry(l, new JsonObject(), "l_" + track.getLocationId(index));
+        lineFeature.addNumberProperty(TIMESTAMP, track.getTimestamp(index));
+        return lineFeature;
+    }
 
-    private void generateInfoWindows(int contactId) {
-        MapSource contactMapMetadata = contactMapSources.get(contactId);
-        FeatureTreeSet collection = featureCollections.get(contactMapMetadata.getMarkerFeatureCollection());
-        if (collection.size() > 0) {
-            new GenerateInfoWindowTask(this, contactId).execute(collection.getFeatureList());
+    private static String getInfoWindowId(LocationTrack track, int index) {
+        return track.getLocationId(index) + "_info_" + track.getMsgId(index);
+    }
+
+    /**
+     * Info windows are rendered only for selected markers, as they are only shown for those.
+     */
+    private void generateInfoWindow(int contactId, int locationId) {
+        LocationTrack track = locationTracks.get(contactId);
+        int index = track.indexOf(locationId);
+        if (index == -1) {
+            return;
+        }
+
+        String infoWindowId = getInfoWindowId(track, index);
+        if (infoWindowCache.get(infoWindowId) != null || !pendingInfoWindows.add(infoWindowId)) {
+            return;
         }
+
+        Log.d(TAG, "create new infoWindow for " + infoWindowId);
+        ArrayList<Feature> features = new ArrayList<>();
+        features.add(createPointFeature(contactId, track, index));
+        new GenerateInfoWindowTask(this, contactId).execute(features);
     }
 
     private void initGeoJsonSources(MapSource source) {
@@ -379,10 +519,15 @@ public class MapDataManager implements DcEventCenter.DcEventDelegate, GenerateIn
     }
 
     private void initLayers(MapSource source) {
-        mapboxStyle.addImage(source.getMarkerLastPositon(),
-                generateColoredLastPositionIcon(source.getColorArgb()));
-        mapboxStyle.addImage(source.getMarkerIcon(),
-                generateColoredLocationIcon(source.getColorArgb()));
+        // the icons are named by color and shared by all contacts with the same color
+        if (mapboxStyle.getImage(source.getMarkerLastPositon()) == null) {
+            mapboxStyle.addImage(source.getMarkerLastPositon(),
+                    generateColoredLastPositionIcon(source.getColorArgb()));
+        }
+        if (mapboxStyle.getImage(source.getMarkerIcon()) == null) {
+            mapboxStyle.addImage(source.getMarkerIcon(),
+                    generateColoredLocationIcon(source.getColorArgb()));
+        }
 
         Expression markerSize =
                 switchCase(toBool(get(MARKER_SELECTED)), literal(1.5f),
@@ -467,51 +612,23 @@ public class MapDataManager implements DcEventCenter.DcEventDelegate, GenerateIn
     private void resetSource(int contactId) {
         MapSource contactMapMetadata = contactMapSources.get(contactId);
         if (contactMapMetadata != null) {
-            featureCollections.put(contactMapMetadata.getMarkerFeatureCollection(), new FeatureTreeSet());
+            locationTracks.remove(contactId);
+            contactFeatures.remove(contactId);
+            visibleRanges.remove(contactId);
             GeoJsonSource pointSource = (GeoJsonSource) mapboxStyle.getSource(contactMapMetadata.getMarkerSource());
             pointSource.setGeoJson(FeatureCollection.fromFeatures(new ArrayList<>()));
+            GeoJsonSource lineSource = (GeoJsonSource) mapboxStyle.getSource(contactMapMetadata.getLineSource());
+            lineSource.setGeoJson(FeatureCollection.fromFeatures(new ArrayList<>()));
         }
     }
 
-    private void replaceSelectedMarker(String featureId) {
-        Feature feature = getFeatureWithId(featureId);
-        feature.addBooleanProperty(MARKER_SELECTED, true);
-        selectedFeature.addBooleanProperty(MARKER_SELECTED, false);
-
-        int lastContactId = selectedFeature.getNumberProperty(CONTACT_ID).intValue();
-        int currentContactId = feature.getNumberProperty(CONTACT_ID).intValue();
-
-        selectedFeature = feature;
-        refreshSource(currentContactId);
-        if (lastContactId != currentContactId) {
-            refreshSource(lastContactId);
-        }
-
-    }
-
-    private void updateSelectedMarker() {
-        boolean isSelected = selectedFeature.getBooleanProperty(MARKER_SELECTED);
-        selectedFeature.addBooleanProperty(MARKER_SELECTED, !isSelected);
-        refreshSource(selectedFeature.getNumberProperty(CONTACT_ID).intValue());
-    }
-
-    private void setNewMarkerSelected(String featureId) {
-        Feature feature = getFeatureWithId(featureId);
-        feature.addBooleanProperty(MARKER_SELECTED, true);
-        selectedFeature = feature;
-        refreshSource(selectedFeature.getNumberProperty(CONTACT_ID).intValue());
-    }
-
-    private Feature getFeatureWithId(String id) {
-        for (String key : featureCollections.keySet()) {
-            ArrayList<Feature> featureCollection = featureCollections.get(key).getFeatureList();
-            for (Feature f : featureCollection) {
-                if (f.id().equals(id)) {
-                    return f;
-                }
+    private int getContactIdOfLocation(int locationId) {
+        for (Map.Entry<Integer, LocationTrack> entry : locationTracks.entrySet()) {
+            if (entry.getValue().indexOf(locationId) != -1) {
+                return entry.getKey();
             }
         }
-        return null;
+        return 0;
     }
 
 }
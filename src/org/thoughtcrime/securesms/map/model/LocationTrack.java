@@ -0,0 +1,245 @@
+package org.thoughtcrime.securesms.map.model;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.b44t.messenger.DcArray;
+
+import java.util.Arrays;
+
+/**
+ * The locations of a single contact, ordered by timestamp, oldest first.
+ * <p>
+ * The rows are kept in parallel primitive arrays, about 28 bytes per location,
+ * so the track can grow by the few locations of each DC_EVENT_LOCATION_CHANGED without rebuilding anything.
+ * A listener is told about each added or replaced row, so data derived from the track can be updated the same way.
+ * </p>
+ */
+public class LocationTrack {
+
+    public interface Listener {
+        /**
+         * The location was inserted at the index, the rows from there on moved up by one.
+         */
+        void onLocationAdded(int index);
+
+        /**
+         * The location at the index was replaced by a newer version of it.
+         */
+        void onLocationReplaced(int index);
+    }
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int[] locationIds = new int[INITIAL_CAPACITY];
+    private int[] msgIds = new int[INITIAL_CAPACITY];
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private float[] latitudes = new float[INITIAL_CAPACITY];
+    private float[] longitudes = new float[INITIAL_CAPACITY];
+    private float[] accuracies = new float[INITIAL_CAPACITY];
+    private int size;
+    private int maxLocationId;
+
+    /**
+     * Adds all locations of the array, reading them with a single JNI call.
+     *
+     * @return the number of locations that were not yet part of the track
+     */
+    public int addAll(@NonNull DcArray locations) {
+        return addAll(locations, null);
+    }
+
+    /**
+     * Adds all locations of the array and tells the listener about each changed row, in the order of the changes.
+     * <p>
+     * The core numbers the locations in the order they are stored, so the locations with an id up to the
+     * largest one of the track are skipped; fetching an overlapping time window again only adds the new rows,
+     * including those reported late with a timestamp before the newest location.
+     * </p>
+     *
+     * @return the number of locations that were not yet part of the track
+     */
+    public int addAll(@NonNull DcArray locations, @Nullable Listener listener) {
+        int count = locations.getCnt();
+        if (count == 0) {
+            return 0;
+        }
+
+        float[] newLatitudes = new float[count];
+        float[] newLongitudes = new float[count];
+        float[] newAccuracies = new float[count];
+        long[] newTimestamps = new long[count];
+        int[] newMsgIds = new int[count];
+        int[] newLocationIds = new int[count];
+        locations.getLocations(newLatitudes, newLongitudes, newAccuracies, newTimestamps, newMsgIds, newLocationIds);
+
+        int knownLocationId = maxLocationId;
+        int newCount = 0;
+        for (int locationId : newLocationIds) {
+            if (locationId > knownLocationId) newCount++;
+        }
+        ensureCapacity(size + newCount);
+        int added = 0;
+        // the core returns the newest location first, adding the oldest first appends to the end of the track
+        for (int i = count - 1; i >= 0; i--) {
+            if (newLocationIds[i] <= knownLocationId) {
+                continue;
+            }
+            int index = put(newLocationIds[i], newMsgIds[i], newTimestamps[i], newLatitudes[i], newLongitudes[i], newAccuracies[i]);
+            if (index >= 0) {
+                added++;
+                if (listener != null) listener.onLocationAdded(index);
+            } else if (listener != null) {
+                listener.onLocationReplaced(-index - 2);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Adds a location at the position given by its timestamp.
+     * A location that is already part of the track is replaced.
+     *
+     * @return the index the location was added at or -1 if the location was already part of the track
+     */
+    public int add(int locationId, int msgId, long timestamp, float latitude, float longitude, float accuracy) {
+        int index = put(locationId, msgId, timestamp, latitude, longitude, accuracy);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * @return the index the location was added at or, if it was already part of the track, -2 - the index it was replaced at
+     */
+    private int put(int locationId, int msgId, long timestamp, float latitude, float longitude, float accuracy) {
+        // locations mostly arrive in order, so search backwards from the end
+        int index = size;
+        while (index > 0 && timestamps[index - 1] > timestamp) {
+            index--;
+        }
+        // a known location can only be among the rows with the same timestamp, directly before the index
+        for (int i = index - 1; i >= 0 && timestamps[i] == timestamp; i--) {
+            if (locationIds[i] == locationId) {
+                set(i, locationId, msgId, timestamp, latitude, longitude, accuracy);
+                return -2 - i;
+            }
+        }
+
+        ensureCapacity(size + 1);
+        if (index < size) {
+            int count = size - index;
+            System.arraycopy(locationIds, index, locationIds, index + 1, count);
+            System.arraycopy(msgIds, index, msgIds, index + 1, count);
+            System.arraycopy(timestamps, index, timestamps, index + 1, count);
+            System.arraycopy(latitudes, index, latitudes, index + 1, count);
+            System.arraycopy(longitudes, index, longitudes, index + 1, count);
+            System.arraycopy(accuracies, index, accuracies, index + 1, count);
+        }
+        set(index, locationId, msgId, timestamp, latitude, longitude, accuracy);
+        size++;
+        maxLocationId = Math.max(maxLocationId, locationId);
+        return index;
+    }
+
+    private void set(int index, int locationId, int msgId, long timestamp, float latitude, float longitude, float accuracy) {
+        locationIds[index] = locationId;
+        msgIds[index] = msgId;
+        timestamps[index] = timestamp;
+        latitudes[index] = latitude;
+        longitudes[index] = longitude;
+        accuracies[index] = accuracy;
+    }
+
+    public void clear() {
+        size = 0;
+        maxLocationId = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getLocationId(int index) {
+        return locationIds[index];
+    }
+
+    public int getMsgId(int index) {
+        return msgIds[index];
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    public float getLatitude(int index) {
+        return latitudes[index];
+    }
+
+    public float getLongitude(int index) {
+        return longitudes[index];
+    }
+
+    public float getAccuracy(int index) {
+        return accuracies[index];
+    }
+
+    /**
+     * @return the timestamp of the newest location or 0 if the track is empty
+     */
+    public long getLastTimestamp() {
+        return size > 0 ? timestamps[size - 1] : 0;
+    }
+
+    /**
+     * @return the index of the location with the given id or -1
+     */
+    public int indexOf(int locationId) {
+        // recent locations are looked up more often, so search backwards
+        for (int i = size - 1; i >= 0; i--) {
+            if (locationIds[i] == locationId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the first location with a timestamp of at least the given one,
+     * size() if there is no such location
+     */
+    public int lowerBound(long timestamp) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timestamps[mid] < timestamp) lo = mid + 1;
+            else                             hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * @return the index of the first location with a timestamp greater than the given one,
+     * size() if there is no such location
+     */
+    public int upperBound(long timestamp) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timestamps[mid] <= timestamp) lo = mid + 1;
+            else                              hi = mid;
+        }
+        return lo;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= locationIds.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, locationIds.length * 2);
+        locationIds = Arrays.copyOf(locationIds, newCapacity);
+        msgIds = Arrays.copyOf(msgIds, newCapacity);
+        timestamps = Arrays.copyOf(timestamps, newCapacity);
+        latitudes = Arrays.copyOf(latitudes, newCapacity);
+        longitudes = Arrays.copyOf(longitudes, newCapacity);
+        accuracies = Arrays.copyOf(accuracies, newCapacity);
+    }
+}
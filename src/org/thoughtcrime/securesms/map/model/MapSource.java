@@ -24,8 +24,6 @@ public class MapSource {
     private final String lineLayer;
     private final String infoWindowLayer;
 
-    private final String markerIcon;
-    private final String markerLastPositon;
     private final String markerInfoWindow;
     private final String markerFeatureCollection;
 
@@ -39,8 +37,6 @@ public class MapSource {
         markerLayer = MARKER_LAYER + "_" + chatId;
         lineLayer = LINE_LAYER + "_" + chatId;
         infoWindowLayer = INFO_WINDOW_LAYER + "_" + chatId;
-        markerIcon = MARKER_ICON + "_" + chatId;
-        markerLastPositon = MARKER_LAST_POSITON + "_" + chatId;
         markerFeatureCollection = MARKER_FEATURE_LIST + "_" + chatId;
         markerInfoWindow = MARKER_INFO_WINDOW + "_" + chatId;
     }
@@ -76,12 +72,15 @@ public class MapSource {
 
     public String getInfoWindowLayer() { return infoWindowLayer; }
 
+    /**
+     * Marker icons only depend on the color, so they are named by color and can be shared.
+     */
     public String getMarkerIcon() {
-        return markerIcon;
+        return MARKER_ICON + "_" + colorArgb;
     }
 
     public String getMarkerLastPositon() {
-        return markerLastPositon;
+        return MARKER_LAST_POSITON + "_" + colorArgb;
     }
 
     public String getMarkerFeatureCollection() { return markerFeatureCollection; }
@@ -10,6 +10,7 @@ import android.support.annotation.Nullable;
 import org.thoughtcrime.securesms.attachments.AttachmentId;
 import org.thoughtcrime.securesms.providers.PersistentBlobProvider;
 import org.thoughtcrime.securesms.providers.SingleUseBlobProvider;
+import org.thoughtcrime.securesms.util.Util;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -48,6 +49,25 @@ public class PartAuthority {
     }
   }
 
+  /**
+   * Opens the attachment at the given offset; persistent blobs are not decrypted from the start for this.
+   */
+  public static InputStream getAttachmentStream(@NonNull Context context, @NonNull Uri uri, long offset)
+      throws IOException
+  {
+    if (uriMatcher.match(uri) == PERSISTENT_ROW) {
+      try {
+        return PersistentBlobProvider.getInstance(context).getStream(context, ContentUris.parseId(uri), offset);
+      } catch (SecurityException se) {
+        throw new IOException(se);
+      }
+    }
+
+    InputStream inputStream = getAttachmentStream(context, uri);
+    Util.skipFully(inputStream, offset);
+    return inputStream;
+  }
+
   public static @Nullable String getAttachmentFileName(@NonNull Context context, @NonNull Uri uri) {
     int match = uriMatcher.match(uri);
 
@@ -33,28 +33,24 @@ import android.os.Build;
 import android.service.notification.StatusBarNotification;
 import android.support.annotation.NonNull;
 import android.support.v4.app.NotificationManagerCompat;
-import android.text.TextUtils;
 import android.util.Log;
 
-import com.b44t.messenger.DcMsg;
-
-import org.thoughtcrime.securesms.R;
 import org.thoughtcrime.securesms.connect.ApplicationDcContext;
 import org.thoughtcrime.securesms.connect.DcHelper;
 import org.thoughtcrime.securesms.connect.KeepAliveService;
-import org.thoughtcrime.securesms.database.Address;
-import org.thoughtcrime.securesms.mms.SlideDeck;
 import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.util.Pair;
 import org.thoughtcrime.securesms.util.ServiceUtil;
-import org.thoughtcrime.securesms.util.SpanUtil;
 import org.thoughtcrime.securesms.util.Prefs;
 import org.thoughtcrime.securesms.util.Util;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
@@ -83,11 +79,20 @@ public class MessageNotifier {
   private static final String NOTIFICATION_GROUP        = "messages";
   private static final long   MIN_AUDIBLE_PERIOD_MILLIS = TimeUnit.SECONDS.toMillis(20);
   private static final long   DESKTOP_ACTIVITY_PERIOD   = TimeUnit.MINUTES.toMillis(1);
+  private static final long   COALESCING_WINDOW_MILLIS  = 500;
+
+  private volatile static       long                  visibleChatId                = NO_VISIBLE_CHAT_ID;
+  private volatile static       long                  lastDesktopActivityTimestamp = -1;
+  private volatile static       long                  lastAudibleNotification      = -1;
+  private          static final CancelableExecutor    executor                     = new CancelableExecutor();
+  private          static final NotificationItemCache itemCache                    = new NotificationItemCache();
+  private          static final UpdateCoalescer       coalescer                    = new UpdateCoalescer(COALESCING_WINDOW_MILLIS);
 
-  private volatile static       long               visibleChatId                = NO_VISIBLE_CHAT_ID;
-  private volatile static       long               lastDesktopActivityTimestamp = -1;
-  private volatile static       long               lastAudibleNotification      = -1;
-  private          static final CancelableExecutor executor                     = new CancelableExecutor();
+  // content hashes of the posted notifications by notification id, used to skip unchanged notifications and to find orphans;
+  // a null hash forces the notification to be posted again. only accessed while holding the MessageNotifier lock.
+  private static final HashMap<Integer, Integer> postedNotifications = new HashMap<>();
+  private static int requestedPosts = 0;
+  private static int skippedPosts   = 0;
 
   private static LinkedList<Pair<Integer, Boolean>> pendingNotifications = new LinkedList<>();
 
@@ -109,6 +114,8 @@ public class MessageNotifier {
   }
 
   private static void cancelActiveNotifications(@NonNull Context context) {
+    postedNotifications.clear();
+
     NotificationManager notifications = ServiceUtil.getNotificationManager(context);
     notifications.cancel(SUMMARY_NOTIFICATION_ID);
 
@@ -128,28 +135,24 @@ public class MessageNotifier {
   }
 
   private static void cancelOrphanedNotifications(@NonNull Context context, NotificationState notificationState) {
+    Set<Integer> validIds = new HashSet<>();
+    validIds.add(SUMMARY_NOTIFICATION_ID);
+    for (int chatId : notificationState.getChats()) {
+      validIds.add(SUMMARY_NOTIFICATION_ID + chatId);
+    }
+    postedNotifications.keySet().retainAll(validIds);
+
     if (Build.VERSION.SDK_INT >= 23) {
       try {
         NotificationManager     notifications       = ServiceUtil.getNotificationManager(context);
         StatusBarNotification[] activeNotifications = notifications.getActiveNotifications();
 
         for (StatusBarNotification notification : activeNotifications) {
-          boolean validNotification = false;
-
-          if (notification.getId() != SUMMARY_NOTIFICATION_ID &&
-              notification.getId() != KeepAliveService.FG_NOTIFICATION_ID           &&
-              notification.getId() != PENDING_MESSAGES_ID)
+          if (notification.getId() != KeepAliveService.FG_NOTIFICATION_ID &&
+              notification.getId() != PENDING_MESSAGES_ID                 &&
+              !validIds.contains(notification.getId()))
           {
-            for (NotificationItem item : notificationState.getNotifications()) {
-              if (notification.getId() == (SUMMARY_NOTIFICATION_ID + item.getChatId())) {
-                validNotification = true;
-                break;
-              }
-            }
-
-            if (!validNotification) {
-              notifications.cancel(notification.getId());
-            }
+            notifications.cancel(notification.getId());
           }
         }
       } catch (Throwable e) {
@@ -164,22 +167,46 @@ public class MessageNotifier {
       return;
     }
 
+    // an explicit update, eg. after changing the settings, posts all notifications again
+    synchronized (MessageNotifier.class) {
+      for (Map.Entry<Integer, Integer> entry : postedNotifications.entrySet()) {
+        entry.setValue(null);
+      }
+    }
+
     updateNotification(context, true, 0);
   }
 
+  /**
+   * Called for incoming messages; the updates for messages arriving within a short window are coalesced.
+   */
   public static void updateNotification(@NonNull Context context, int chatId)
   {
     if (System.currentTimeMillis() - lastDesktopActivityTimestamp < DESKTOP_ACTIVITY_PERIOD) {
       Log.w(TAG, "Scheduling delayed notification...");
       executor.execute(new DelayedNotification(context, chatId));
     } else {
-      updateNotification(context, chatId, true);
+      coalescer.schedule(context, chatId);
     }
   }
 
   public static void updateNotification(@NonNull  Context context,
                                         int       chatId,
                                         boolean   signal)
+  {
+    if (prepareNotification(context, chatId, signal)) {
+      updateNotification(context, signal, 0);
+    }
+  }
+
+  /**
+   * Handles the new message in the visible chat or remembers it until no chat is visible.
+   *
+   * @return true if the notifications have to be updated
+   */
+  private static boolean prepareNotification(@NonNull  Context context,
+                                             int       chatId,
+                                             boolean   signal)
   {
     boolean    isVisible  = visibleChatId == chatId;
     ApplicationDcContext dcContext = DcHelper.getContext(context);
@@ -191,7 +218,7 @@ public class MessageNotifier {
     if (!Prefs.isNotificationsEnabled(context) ||
         Prefs.isChatMuted(context, chatId))
     {
-      return;
+      return false;
     }
 
     if (isVisible && signal) {
@@ -199,12 +226,13 @@ public class MessageNotifier {
     } else if (visibleChatId != NO_VISIBLE_CHAT_ID) {
       pendingNotifications.push(new Pair<>(chatId, signal));
     } else {
-      updateNotification(context, signal, 0);
+      return true;
     }
+    return false;
   }
 
   // @param signal: true to beep, false to stay silent.
-  private static void updateNotification(@NonNull Context context,
+  private static synchronized void updateNotification(@NonNull Context context,
                                          boolean signal,
                                          int     reminderCount)
   {
@@ -213,13 +241,14 @@ public class MessageNotifier {
 
     if (freshMessages.length == 0)
     {
+      itemCache.clear();
       cancelActiveNotifications(context);
       updateBadge(context, 0);
       clearReminder(context);
       return;
     }
 
-    NotificationState notificationState = constructNotificationState(dcContext, freshMessages);
+    NotificationState notificationState = itemCache.getNotificationState(dcContext, freshMessages);
 
     if (signal && (System.currentTimeMillis() - lastAudibleNotification) < MIN_AUDIBLE_PERIOD_MILLIS) {
       signal = false;
@@ -230,7 +259,8 @@ public class MessageNotifier {
     if (notificationState.hasMultipleChats()) {
       if (Build.VERSION.SDK_INT >= 23) {
         for (int chatId : notificationState.getChats()) {
-          sendSingleChatNotification(context, new NotificationState(notificationState.getNotificationsForChat(chatId)), false, true);
+          sendSingleChatNotification(context, new NotificationState(notificationState.getNotificationsForChat(chatId),
+                                                                     notificationState.getMessageCount(chatId)), false, true);
         }
       }
 
@@ -245,6 +275,25 @@ public class MessageNotifier {
     if (signal) {
       scheduleReminder(context, reminderCount);
     }
+
+    Log.i(TAG, "posted " + (requestedPosts - skippedPosts) + " of " + requestedPosts + " notifications, "
+             + coalescer.getCoalescedCount() + " of " + coalescer.getRequestedCount() + " updates coalesced");
+  }
+
+  /**
+   * @return true if the notification has to be posted, false if the same content was posted before
+   */
+  private static boolean needsPost(int notificationId, @NonNull NotificationState notificationState, boolean signal) {
+    int     contentHash = notificationState.getContentHash();
+    Integer postedHash  = postedNotifications.get(notificationId);
+
+    requestedPosts++;
+    if (!signal && postedHash != null && postedHash == contentHash) {
+      skippedPosts++;
+      return false;
+    }
+    postedNotifications.put(notificationId, contentHash);
+    return true;
   }
 
   private static void sendSingleChatNotification(@NonNull  Context context,
@@ -261,6 +310,10 @@ public class MessageNotifier {
     Recipient                          recipient      = notifications.get(0).getRecipient();
     int                                notificationId = (SUMMARY_NOTIFICATION_ID + (bundled ? notifications.get(0).getChatId() : 0));
 
+    if (!needsPost(notificationId, notificationState, signal)) {
+      return;
+    }
+
     builder.setChat(notifications.get(0).getRecipient());
     builder.setMessageCount(notificationState.getMessageCount());
     builder.setPrimaryMessageBody(recipient, notifications.get(0).getIndividualRecipient(),
@@ -310,6 +363,10 @@ public class MessageNotifier {
                                                    @NonNull  NotificationState notificationState,
                                                    boolean signal)
   {
+    if (!needsPost(SUMMARY_NOTIFICATION_ID, notificationState, signal)) {
+      return;
+    }
+
     MultipleRecipientNotificationBuilder builder       = new MultipleRecipientNotificationBuilder(context, Prefs.getNotificationPrivacy(context));
     List<NotificationItem>               notifications = notificationState.getNotifications();
 
@@ -379,44 +436,6 @@ public class MessageNotifier {
     ringtone.play();
   }
 
-  private static NotificationState constructNotificationState(@NonNull ApplicationDcContext dcContext,
-                                                              @NonNull  int[] freshMessages)
-  {
-    NotificationState     notificationState = new NotificationState();
-    Context context = dcContext.context;
-
-    for(int msgId : freshMessages) {
-      DcMsg record = dcContext.getMsg(msgId);
-      int          id                    = record.getId();
-      boolean      mms                   = record.isMms() || record.isMediaPending();
-      int          chatId                = record.getChatId();
-      CharSequence body                  = record.getDisplayBody();
-      DcMsg        dcMsg                 = dcContext.getMsg(msgId);
-      Recipient    chatRecipient         = new Recipient(context, dcContext.getChat(dcMsg.getChatId()), null);
-      Recipient    individualRecipient   = new Recipient(context, null, dcContext.getContact(dcMsg.getFromId()));
-      SlideDeck    slideDeck             = new SlideDeck(dcContext.context, record);
-      long         timestamp             = record.getTimestamp();
-
-      if(slideDeck.getSlides().isEmpty())
-        slideDeck = null;
-
-      // TODO: if message content should be hidden on screen lock, do it here.
-      if (record.isMms() && TextUtils.isEmpty(body)) {
-        body = SpanUtil.italic(context.getString(R.string.notify_media_message));
-      } else if (record.isMms() && !record.isMediaPending()) {
-        String message      = context.getString(R.string.notify_media_message_with_text, body);
-        int    italicLength = message.length() - body.length();
-        body = SpanUtil.italic(message, italicLength);
-      }
-
-      if (!Prefs.isChatMuted(context, chatId)) {
-        notificationState.addNotification(new NotificationItem(id, mms, chatRecipient, individualRecipient, chatId, body, timestamp, slideDeck));
-      }
-    }
-
-    return notificationState;
-  }
-
   private static void updateBadge(Context context, int count) {
     try {
       if (count == 0) ShortcutBadger.removeCount(context);
@@ -512,6 +531,66 @@ public class MessageNotifier {
     }
   }
 
+  /**
+   * Collects the chats of incoming messages and updates the notifications once per window,
+   * so that fetching many messages at once does not update the notifications for every single message.
+   */
+  private static class UpdateCoalescer {
+
+    private final long                   windowMillis;
+    private final LinkedHashSet<Integer> pendingChatIds = new LinkedHashSet<>();
+
+    private boolean scheduled;
+    private int     pendingCount;
+    private int     requestedCount;
+    private int     coalescedCount;
+
+    UpdateCoalescer(long windowMillis) {
+      this.windowMillis = windowMillis;
+    }
+
+    void schedule(final Context context, int chatId) {
+      synchronized (this) {
+        requestedCount++;
+        pendingCount++;
+        pendingChatIds.add(chatId);
+        if (scheduled) {
+          return;
+        }
+        scheduled = true;
+      }
+
+      Util.runOnBackgroundDelayed(() -> flush(context), windowMillis);
+    }
+
+    private void flush(Context context) {
+      Integer[] chatIds;
+      synchronized (this) {
+        chatIds = pendingChatIds.toArray(new Integer[pendingChatIds.size()]);
+        pendingChatIds.clear();
+        scheduled = false;
+        coalescedCount += pendingCount - 1;
+        pendingCount = 0;
+      }
+
+      boolean update = false;
+      for (int chatId : chatIds) {
+        update |= prepareNotification(context, chatId, true);
+      }
+      if (update) {
+        updateNotification(context, true, 0);
+      }
+    }
+
+    synchronized int getRequestedCount() {
+      return requestedCount;
+    }
+
+    synchronized int getCoalescedCount() {
+      return coalescedCount;
+    }
+  }
+
   private static class CancelableExecutor {
 
     private final Executor                 executor = Executors.newSingleThreadExecutor();
@@ -0,0 +1,150 @@
+package org.thoughtcrime.securesms.notifications;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.text.TextUtils;
+
+import com.b44t.messenger.DcMsg;
+
+import org.thoughtcrime.securesms.R;
+import org.thoughtcrime.securesms.connect.ApplicationDcContext;
+import org.thoughtcrime.securesms.mms.SlideDeck;
+import org.thoughtcrime.securesms.recipients.Recipient;
+import org.thoughtcrime.securesms.util.Prefs;
+import org.thoughtcrime.securesms.util.SpanUtil;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Keeps the notification items of the fresh messages between updates of the notifications.
+ *
+ * The ids returned by getFreshMsgs() are compared to the ids known from the last update:
+ * noticed messages are dropped and only messages that were not seen before are loaded.
+ * For each chat, items are created only for the newest messages that can be shown,
+ * older fresh messages are just counted.
+ */
+class NotificationItemCache {
+
+  // a BigTextStyle shows at most 9 lines, more items per chat would never be visible
+  static final int MAX_ITEMS_PER_CHAT = 9;
+
+  private final HashMap<Integer, Integer>          chatIds = new HashMap<>(); // chat id of each fresh message
+  private final HashMap<Integer, NotificationItem> items   = new HashMap<>(); // only for messages that are shown
+
+  synchronized @NonNull NotificationState getNotificationState(@NonNull ApplicationDcContext dcContext, @NonNull int[] freshMsgIds) {
+    HashSet<Integer> fresh = new HashSet<>(freshMsgIds.length * 2);
+    for (int msgId : freshMsgIds) {
+      fresh.add(msgId);
+    }
+    chatIds.keySet().retainAll(fresh);
+    items.keySet().retainAll(fresh);
+
+    // the chat id of a message never changes, so each message is loaded only once for that
+    HashMap<Integer, DcMsg> loadedMsgs = new HashMap<>();
+    for (int msgId : freshMsgIds) {
+      if (!chatIds.containsKey(msgId)) {
+        DcMsg msg = dcContext.getMsg(msgId);
+        chatIds.put(msgId, msg.getChatId());
+        loadedMsgs.put(msgId, msg);
+      }
+    }
+
+    HashMap<Integer, Integer> minShownMsgIds = getMinShownMsgIds(freshMsgIds);
+    HashMap<Integer, Boolean> mutedChats     = new HashMap<>();
+    NotificationState         state          = new NotificationState();
+    for (int msgId : freshMsgIds) {
+      int     chatId = chatIds.get(msgId);
+      Boolean muted  = mutedChats.get(chatId);
+      if (muted == null) {
+        muted = Prefs.isChatMuted(dcContext.context, chatId);
+        mutedChats.put(chatId, muted);
+      }
+      if (muted) {
+        continue;
+      }
+
+      if (msgId >= minShownMsgIds.get(chatId)) {
+        NotificationItem item = items.get(msgId);
+        if (item == null) {
+          DcMsg msg = loadedMsgs.get(msgId);
+          item = createNotificationItem(dcContext, msg != null ? msg : dcContext.getMsg(msgId));
+          items.put(msgId, item);
+        }
+        state.addNotification(item);
+      } else {
+        items.remove(msgId);
+        state.addUnshownMessage(chatId);
+      }
+    }
+    return state;
+  }
+
+  synchronized void clear() {
+    chatIds.clear();
+    items.clear();
+  }
+
+  /**
+   * @return for each chat, the smallest message id that is among the newest MAX_ITEMS_PER_CHAT fresh messages;
+   * message ids are increasing, so newer messages have larger ids.
+   */
+  private HashMap<Integer, Integer> getMinShownMsgIds(int[] freshMsgIds) {
+    HashMap<Integer, int[]> msgIdsByChat = new HashMap<>();
+    HashMap<Integer, Integer> counts     = new HashMap<>();
+    for (int msgId : freshMsgIds) {
+      int     chatId = chatIds.get(msgId);
+      int[]   ids    = msgIdsByChat.get(chatId);
+      Integer count  = counts.get(chatId);
+      if (ids == null) {
+        ids   = new int[8];
+        count = 0;
+      } else if (count == ids.length) {
+        ids = Arrays.copyOf(ids, ids.length * 2);
+      }
+      ids[count] = msgId;
+      msgIdsByChat.put(chatId, ids);
+      counts.put(chatId, count + 1);
+    }
+
+    HashMap<Integer, Integer> ret = new HashMap<>();
+    for (Integer chatId : msgIdsByChat.keySet()) {
+      int[] ids   = msgIdsByChat.get(chatId);
+      int   count = counts.get(chatId);
+      if (count <= MAX_ITEMS_PER_CHAT) {
+        ret.put(chatId, 0);
+      } else {
+        Arrays.sort(ids, 0, count);
+        ret.put(chatId, ids[count - MAX_ITEMS_PER_CHAT]);
+      }
+    }
+    return ret;
+  }
+
+  private static @NonNull NotificationItem createNotificationItem(@NonNull ApplicationDcContext dcContext, @NonNull DcMsg record) {
+    Context      context             = dcContext.context;
+    int          id                  = record.getId();
+    boolean      mms                 = record.isMms() || record.isMediaPending();
+    int          chatId              = record.getChatId();
+    CharSequence body                = record.getDisplayBody();
+    Recipient    chatRecipient       = dcContext.getRecipient(ApplicationDcContext.RECIPIENT_TYPE_CHAT, chatId);
+    Recipient    individualRecipient = dcContext.getRecipient(ApplicationDcContext.RECIPIENT_TYPE_CONTACT, record.getFromId());
+    SlideDeck    slideDeck           = new SlideDeck(context, record);
+    long         timestamp           = record.getTimestamp();
+
+    if(slideDeck.getSlides().isEmpty())
+      slideDeck = null;
+
+    // TODO: if message content should be hidden on screen lock, do it here.
+    if (record.isMms() && TextUtils.isEmpty(body)) {
+      body = SpanUtil.italic(context.getString(R.string.notify_media_message));
+    } else if (record.isMms() && !record.isMediaPending()) {
+      String message      = context.getString(R.string.notify_media_message_with_text, body);
+      int    italicLength = message.length() - body.length();
+      body = SpanUtil.italic(message, italicLength);
+    }
+
+    return new NotificationItem(id, mms, chatRecipient, individualRecipient, chatId, body, timestamp, slideDeck);
+  }
+}
@@ -14,6 +14,7 @@ import org.thoughtcrime.securesms.util.Prefs;
 import org.thoughtcrime.securesms.util.Prefs.VibrateState;
 import org.thoughtcrime.securesms.recipients.Recipient;
 
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -22,6 +23,7 @@ public class NotificationState {
 
   private final LinkedList<NotificationItem> notifications = new LinkedList<>();
   private final LinkedHashSet<Integer>       chats         = new LinkedHashSet<>();
+  private final HashMap<Integer, Integer>    chatCounts    = new HashMap<>();
 
   private int notificationCount = 0;
 
@@ -33,6 +35,14 @@ public class NotificationState {
     }
   }
 
+  /**
+   * @param messageCount number of messages, including the ones that have no item
+   */
+  public NotificationState(@NonNull List<NotificationItem> items, int messageCount) {
+    this(items);
+    notificationCount = messageCount;
+  }
+
   public void addNotification(NotificationItem item) {
     notifications.addFirst(item);
 
@@ -41,6 +51,19 @@ public class NotificationState {
     }
 
     chats.add(item.getChatId());
+    incrementCount(item.getChatId());
+  }
+
+  /**
+   * Count a message that has no item as it would not be shown anyway.
+   */
+  public void addUnshownMessage(int chatId) {
+    incrementCount(chatId);
+  }
+
+  private void incrementCount(int chatId) {
+    Integer chatCount = chatCounts.get(chatId);
+    chatCounts.put(chatId, chatCount == null ? 1 : chatCount + 1);
     notificationCount++;
   }
 
@@ -84,6 +107,24 @@ public class NotificationState {
     return notificationCount;
   }
 
+  /**
+   * @return a hash over the shown messages and the counts;
+   * as long as it does not change, the notification does not need to be posted again.
+   */
+  public int getContentHash() {
+    int hash = notificationCount;
+    hash = 31 * hash + chats.size();
+    for (NotificationItem item : notifications) {
+      hash = 31 * hash + item.getId();
+    }
+    return hash;
+  }
+
+  public int getMessageCount(int chatId) {
+    Integer chatCount = chatCounts.get(chatId);
+    return chatCount == null ? 0 : chatCount;
+  }
+
   public List<NotificationItem> getNotifications() {
     return notifications;
   }
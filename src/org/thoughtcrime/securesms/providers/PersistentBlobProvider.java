@@ -21,12 +21,15 @@ import org.thoughtcrime.securesms.util.Util;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -45,6 +48,8 @@ public class PersistentBlobProvider {
   private static final int        FILESIZE_PATH_SEGMENT = 3;
 
   private static final String     BLOB_EXTENSION        = "blob";
+  private static final int        WRITER_THREADS        = 2;
+  private static final long       MAX_PENDING_BYTES     = 16 * 1024 * 1024;
   private static final int        MATCH_OLD             = 1;
   private static final int        MATCH_NEW             = 2;
 
@@ -67,8 +72,12 @@ public class PersistentBlobProvider {
   }
 
   @SuppressLint("UseSparseArrays")
-  private final Map<Long, byte[]> cache    = Collections.synchronizedMap(new HashMap<Long, byte[]>());
-  private final ExecutorService   executor = Executors.newCachedThreadPool();
+  private final Map<Long, byte[]>       cache          = Collections.synchronizedMap(new HashMap<Long, byte[]>());
+  private final Map<Long, PendingWrite> pendingWrites  = new ConcurrentHashMap<>();
+  private final ExecutorService         executor       = Executors.newFixedThreadPool(WRITER_THREADS);
+  private final ExecutorService         streamExecutor = Executors.newCachedThreadPool();
+
+  private long pendingBytes; // bytes of the cached blobs waiting for the writer threads, guarded by this
 
   private final AttachmentSecret  attachmentSecret;
 
@@ -82,8 +91,7 @@ public class PersistentBlobProvider {
                     @Nullable String fileName)
   {
     final long id = System.currentTimeMillis();
-    cache.put(id, blobBytes);
-    return create(context, attachmentSecret, new ByteArrayInputStream(blobBytes), id, mimeType, fileName, (long) blobBytes.length);
+    return create(context, attachmentSecret, new ByteArrayInputStream(blobBytes), blobBytes, id, mimeType, fileName, (long) blobBytes.length);
   }
 
   public Uri create(@NonNull Context context,
@@ -92,18 +100,19 @@ public class PersistentBlobProvider {
                     @Nullable String fileName,
                     @Nullable Long   fileSize)
   {
-    return create(context, attachmentSecret, input, System.currentTimeMillis(), mimeType, fileName, fileSize);
+    return create(context, attachmentSecret, input, null, System.currentTimeMillis(), mimeType, fileName, fileSize);
   }
 
   private Uri create(@NonNull Context context,
                      @NonNull  AttachmentSecret attachmentSecret,
                      @NonNull  InputStream input,
+                     @Nullable byte[] blobBytes,
                                long id,
                      @NonNull  String mimeType,
                      @Nullable String fileName,
                      @Nullable Long fileSize)
   {
-    persistToDisk(context, attachmentSecret, id, input);
+    persistToDisk(context, attachmentSecret, id, input, blobBytes, fileSize);
     final Uri uniqueUri = CONTENT_URI.buildUpon()
                                      .appendPath(mimeType)
                                      .appendPath(fileName)
@@ -113,20 +122,89 @@ public class PersistentBlobProvider {
     return ContentUris.withAppendedId(uniqueUri, id);
   }
 
+  /**
+   * Writes the blob using a small pool of writer threads.
+   * The bytes of the blobs waiting for a writer are limited; if a blob does not fit, it is written to its file
+   * by the calling thread instead of being held on the heap. This only happens while the writers are
+   * behind by the whole limit, so the calling thread rarely pays for the write.
+   * Streams of unknown size, eg. a running audio recording, may block a writer for a long time
+   * and get their own thread.
+   */
   private void persistToDisk(@NonNull Context context,
                              @NonNull AttachmentSecret attachmentSecret,
-                             final long id, final InputStream input)
+                             final long id, final InputStream input,
+                             @Nullable byte[] blobBytes, @Nullable Long size)
   {
-    executor.submit(() -> {
+    final File file = getFile(context, id).file;
+
+    if (blobBytes != null && !reserve(blobBytes.length)) {
       try {
-        Pair<byte[], OutputStream> output = ModernEncryptingPartOutputStream.createFor(attachmentSecret, getFile(context, id).file, true);
-        Util.copy(input, output.second);
+        write(attachmentSecret, file, input, new PendingWrite());
       } catch (IOException e) {
         Log.w(TAG, e);
+        file.delete();
       }
+      return;
+    }
 
-      cache.remove(id);
-    });
+    final PendingWrite pendingWrite = new PendingWrite();
+    final long         reserved     = blobBytes != null ? blobBytes.length : 0; // streams are not held in memory
+
+    pendingWrites.put(id, pendingWrite);
+    if (blobBytes != null) {
+      cache.put(id, blobBytes);
+    }
+
+    Runnable write = () -> {
+      boolean success = false;
+      try {
+        write(attachmentSecret, file, input, pendingWrite);
+        success = true;
+      } catch (IOException e) {
+        Log.w(TAG, e);
+      } finally {
+        cache.remove(id);
+        pendingWrites.remove(id);
+        pendingWrite.finish(success);
+        release(reserved);
+      }
+    };
+
+    if (size == null) streamExecutor.execute(write);
+    else              executor.execute(write);
+  }
+
+  private synchronized boolean reserve(long size) {
+    // a single blob larger than the limit is queued if nothing else is pending
+    if (pendingBytes > 0 && pendingBytes + size > MAX_PENDING_BYTES) {
+      return false;
+    }
+    pendingBytes += size;
+    return true;
+  }
+
+  private synchronized void release(long size) {
+    pendingBytes -= size;
+  }
+
+  private static void write(AttachmentSecret attachmentSecret, File file, InputStream input, PendingWrite pendingWrite) throws IOException {
+    Pair<byte[], OutputStream> output = ModernEncryptingPartOutputStream.createFor(attachmentSecret, file, true);
+    copy(input, output.second, pendingWrite);
+  }
+
+  private static void copy(InputStream in, OutputStream out, PendingWrite pendingWrite) throws IOException {
+    byte[] buffer = new byte[8192];
+    int read;
+
+    try {
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+        pendingWrite.progress();
+      }
+    } finally {
+      in.close();
+      out.close();
+    }
   }
 
   public Uri createForExternal(@NonNull Context context, @NonNull String mimeType) throws IOException {
@@ -152,16 +230,36 @@ public class PersistentBlobProvider {
   }
 
   public @NonNull InputStream getStream(@NonNull Context context, long id) throws IOException {
+    return getStream(context, id, 0);
+  }
+
+  /**
+   * Modern files are decrypted from the given offset on, without decrypting what is before.
+   */
+  public @NonNull InputStream getStream(@NonNull Context context, long id, long offset) throws IOException {
     final byte[] cached = cache.get(id);
 
     if (cached != null) {
-      return new ByteArrayInputStream(cached);
+      InputStream inputStream = new ByteArrayInputStream(cached);
+      inputStream.skip(offset);
+      return inputStream;
+    }
+
+    FileData     fileData     = getFile(context, id);
+    PendingWrite pendingWrite = pendingWrites.get(id);
+
+    if (pendingWrite != null) {
+      // still being written, read along with the writer
+      return ModernDecryptingPartInputStream.createFor(attachmentSecret, new PendingFileInputStream(fileData.file, pendingWrite), offset);
     }
 
-    FileData fileData = getFile(context, id);
+    if (fileData.modern) {
+      return ModernDecryptingPartInputStream.createFor(attachmentSecret, fileData.file, offset);
+    }
 
-    if (fileData.modern) return ModernDecryptingPartInputStream.createFor(attachmentSecret, fileData.file, 0);
-    else                 return ClassicDecryptingPartInputStream.createFor(attachmentSecret, fileData.file);
+    InputStream inputStream = ClassicDecryptingPartInputStream.createFor(attachmentSecret, fileData.file);
+    Util.skipFully(inputStream, offset);
+    return inputStream;
   }
 
   private FileData getFile(@NonNull Context context, long id) {
@@ -244,6 +342,97 @@ public class PersistentBlobProvider {
     }
   }
 
+  /**
+   * State of a blob that is being written, readers wait for progress.
+   */
+  private static class PendingWrite {
+    private static final long WAIT_TIMEOUT_MS = 1000;
+
+    private boolean finished;
+    private boolean success;
+
+    synchronized void progress() {
+      notifyAll();
+    }
+
+    synchronized void finish(boolean success) {
+      this.finished = true;
+      this.success  = success;
+      notifyAll();
+    }
+
+    /**
+     * Waits until the file is longer than the given length or the write is finished.
+     *
+     * @return false if the write is finished and there is no more data
+     */
+    synchronized boolean awaitLength(File file, long length) throws IOException {
+      try {
+        while (!finished && file.length() <= length) {
+          wait(WAIT_TIMEOUT_MS);
+        }
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException();
+      }
+
+      if (finished && !success) {
+        throw new IOException("Writing blob failed");
+      }
+      return file.length() > length;
+    }
+  }
+
+  /**
+   * Reads a file that is still being written, blocking until more data is written.
+   */
+  private static class PendingFileInputStream extends InputStream {
+    private final File         file;
+    private final PendingWrite pendingWrite;
+
+    private FileInputStream inputStream;
+    private long            position;
+
+    private PendingFileInputStream(File file, PendingWrite pendingWrite) {
+      this.file         = file;
+      this.pendingWrite = pendingWrite;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] buffer = new byte[1];
+      int    read   = read(buffer, 0, 1);
+      return read == -1 ? -1 : buffer[0] & 0xff;
+    }
+
+    @Override
+    public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+      if (length == 0) {
+        return 0;
+      }
+
+      if (!pendingWrite.awaitLength(file, position)) {
+        return -1;
+      }
+
+      if (inputStream == null) {
+        inputStream = new FileInputStream(file);
+      }
+
+      int read = inputStream.read(buffer, offset, (int) Math.min(length, file.length() - position));
+      if (read > 0) {
+        position += read;
+      }
+      return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (inputStream != null) {
+        inputStream.close();
+      }
+    }
+  }
+
   private static class FileData {
     private final File    file;
     private final boolean modern;
@@ -107,8 +107,7 @@ public class Recipient {
 
     if(dcContact!=null) {
       this.address = Address.fromContact(dcContact.getId());
-      String identifier = Hash.sha256(dcContact.getDisplayName() + dcContact.getAddr());
-      Uri systemContactPhoto = Prefs.getSystemContactPhoto(context, identifier);
+      Uri systemContactPhoto = getSystemContactPhoto(context, dcContact.getDisplayName() + dcContact.getAddr());
       if (systemContactPhoto != null) {
         setSystemContactPhoto(systemContactPhoto);
       }
@@ -119,8 +118,7 @@ public class Recipient {
     else if(dcChat!=null) {
       this.address = Address.fromChat(dcChat.getId());
       if (!dcChat.isGroup()) {
-        String identifier = Hash.sha256(dcChat.getName() + dcChat.getSubtitle());
-        Uri systemContactPhoto = Prefs.getSystemContactPhoto(context, identifier);
+        Uri systemContactPhoto = getSystemContactPhoto(context, dcChat.getName() + dcChat.getSubtitle());
         if (systemContactPhoto != null) {
           setSystemContactPhoto(systemContactPhoto);
         }
@@ -132,6 +130,14 @@ public class Recipient {
     }
   }
 
+  private static @Nullable Uri getSystemContactPhoto(@NonNull Context context, @NonNull String identifier) {
+    // hashing is only needed if there are system contacts to compare with
+    if (!Prefs.hasSystemContactPhotos(context)) {
+      return null;
+    }
+    return Prefs.getSystemContactPhoto(context, Hash.sha256(identifier));
+  }
+
   public @Nullable Uri getContactUri() {
     return this.contactUri;
   }
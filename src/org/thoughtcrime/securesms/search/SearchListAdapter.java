@@ -194,7 +194,7 @@ class SearchListAdapter extends    RecyclerView.Adapter<SearchListAdapter.Search
     {
       ApplicationDcContext dcContext = DcHelper.getContext(context);
       ThreadRecord threadRecord = dcContext.getThreadRecord(chatlistItem.summary, dcContext.getChat(chatlistItem.chatId));
-      root.bind(threadRecord, chatlistItem.msgId, chatlistItem.summary, glideRequests, locale, Collections.emptySet(), false, query);
+      root.bind(threadRecord, chatlistItem.msgId, glideRequests, locale, Collections.emptySet(), false, query);
       root.setOnClickListener(view -> eventListener.onConversationClicked(chatlistItem));
     }
 
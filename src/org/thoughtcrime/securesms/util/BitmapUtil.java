@@ -389,6 +389,7 @@ public class BitmapUtil {
       desiredJpegQuality = 75;
     }
 
+    String outPath = null;
     try {
       String inPath = msg.getFile();
       if(inPath==null || !new File(inPath).exists()) {
@@ -438,9 +439,12 @@ public class BitmapUtil {
       Bitmap outBitmap = Bitmap.createBitmap(inBitmap, 0, 0, inBitmap.getWidth(), inBitmap.getHeight(), matrix, false);
       inBitmap.recycle();
 
-      String outPath = DcHelper.getContext(context).getBlobdirFile(inPath);
+      outPath = DcHelper.getContext(context).getBlobdirFile(inPath);
       FileOutputStream outStream = new FileOutputStream(outPath);
-      if(!outBitmap.compress(Bitmap.CompressFormat.JPEG, desiredJpegQuality, outStream)) {
+      boolean compressed = outBitmap.compress(Bitmap.CompressFormat.JPEG, desiredJpegQuality, outStream);
+      outStream.close();
+      if(!compressed) {
+        new File(outPath).delete(); // getBlobdirFile() has created the file
         return;
       }
 
@@ -452,6 +456,9 @@ public class BitmapUtil {
     }
     catch(Exception e) {
       e.printStackTrace();
+      if(outPath!=null && !outPath.equals(msg.getFile())) {
+        new File(outPath).delete();
+      }
     }
   }
 
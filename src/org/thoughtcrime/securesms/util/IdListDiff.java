@@ -0,0 +1,287 @@
+package org.thoughtcrime.securesms.util;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.util.ListUpdateCallback;
+
+import java.util.Arrays;
+
+/**
+ * Calculates the updates needed to turn one list of unique ids into another one,
+ * eg. the message ids of a chat or the chat ids of the chat list.
+ *
+ * As the ids are unique, this is done in linear time if no item is moved;
+ * moved items are detected using the longest increasing subsequence of the remaining items
+ * and their positions are tracked in a Fenwick tree, so moves add O(n log n).
+ * The calculation does not touch any view and can be done in a background thread,
+ * the result is then dispatched to the adapter in the main thread.
+ */
+public class IdListDiff {
+
+  public interface ChangeDetector {
+    /**
+     * @return true if the item with the given id, that is part of the old and the new list, has changed.
+     */
+    boolean isChanged(int id, int oldIndex, int newIndex);
+  }
+
+  private static final int OP_REMOVE = 0;
+  private static final int OP_INSERT = 1;
+  private static final int OP_MOVE   = 2;
+  private static final int OP_CHANGE = 3;
+
+  private int[] ops = new int[3*16]; // triples of operation, position and count or target position
+  private int   opsCount;
+
+  private IdListDiff() {
+  }
+
+  public static @NonNull IdListDiff calculate(@NonNull int[] oldIds, @NonNull int[] newIds, @Nullable ChangeDetector changeDetector) {
+    IdListDiff diff = new IdListDiff();
+
+    IntIndexMap newIndexes = new IntIndexMap(newIds);
+
+    // removals, from the end so that the positions of the following removals stay valid
+    int[] cur = new int[oldIds.length]; // the ids of the old list that are part of the new list, in old order
+    int curCount = 0;
+    boolean[] oldInNew = new boolean[oldIds.length];
+    for (int i = 0; i < oldIds.length; i++) {
+      oldInNew[i] = newIndexes.get(oldIds[i]) != -1;
+      if (oldInNew[i]) {
+        cur[curCount++] = oldIds[i];
+      }
+    }
+    for (int i = oldIds.length - 1; i >= 0; i--) {
+      if (!oldInNew[i]) {
+        int end = i;
+        while (i > 0 && !oldInNew[i - 1]) {
+          i--;
+        }
+        diff.add(OP_REMOVE, i, end - i + 1);
+      }
+    }
+
+    // the ids of the new list that are part of the old list, in new order
+    IntIndexMap oldIndexes = new IntIndexMap(oldIds);
+    int[] target = new int[curCount];
+    int targetCount = 0;
+    for (int newId : newIds) {
+      if (oldIndexes.get(newId) != -1) {
+        target[targetCount++] = newId;
+      }
+    }
+
+    // moves, only needed if the remaining items are in a different order
+    if (!arrayEquals(cur, target, curCount)) {
+      diff.addMoves(cur, target, curCount, newIndexes);
+    }
+
+    // insertions, from the start so that the insertion positions are the final positions
+    for (int i = 0; i < newIds.length; i++) {
+      if (oldIndexes.get(newIds[i]) == -1) {
+        int start = i;
+        while (i + 1 < newIds.length && oldIndexes.get(newIds[i + 1]) == -1) {
+          i++;
+        }
+        diff.add(OP_INSERT, start, i - start + 1);
+      }
+    }
+
+    // changes, using the final positions
+    if (changeDetector != null) {
+      for (int i = 0; i < newIds.length; i++) {
+        int oldIndex = oldIndexes.get(newIds[i]);
+        if (oldIndex != -1 && changeDetector.isChanged(newIds[i], oldIndex, i)) {
+          diff.addChange(i);
+        }
+      }
+    }
+
+    return diff;
+  }
+
+  private void addMoves(int[] cur, int[] target, int count, IntIndexMap newIndexes) {
+    // items that are part of the longest increasing subsequence (regarding their new position) stay,
+    // all other items are moved directly behind their predecessor in the new list.
+    int[] newPos = new int[count];
+    for (int i = 0; i < count; i++) {
+      newPos[i] = newIndexes.get(cur[i]);
+    }
+    boolean[] stayInNewPos = longestIncreasingSubsequence(newPos, count, newIndexes.size());
+
+    // each item has a slot at its current position and, if it is moved, one behind its predecessor.
+    // the moved items form chains behind the staying item before them in the new list,
+    // or at the start of the list; slot count+t is the moved slot of target[t].
+    IntIndexMap curIndexes = new IntIndexMap(cur, count);
+    int[] chainStart = new int[count + 1]; // first target index moved behind cur[i], index count for the start
+    Arrays.fill(chainStart, -1);
+    int[] chainNext = new int[count];
+    int lastStay = count; // the start of the list
+    int lastMoved = -1;
+    for (int t = 0; t < count; t++) {
+      if (stayInNewPos[newIndexes.get(target[t])]) {
+        lastStay  = curIndexes.get(target[t]);
+        lastMoved = -1;
+      } else {
+        chainNext[t] = -1;
+        if (lastMoved == -1) chainStart[lastStay] = t;
+        else                 chainNext[lastMoved] = t;
+        lastMoved = t;
+      }
+    }
+
+    int[] slotRank = new int[2 * count]; // position of each slot in list order
+    int rank = 0;
+    for (int t = chainStart[count]; t != -1; t = chainNext[t]) slotRank[count + t] = rank++;
+    for (int i = 0; i < count; i++) {
+      slotRank[i] = rank++;
+      if (stayInNewPos[newPos[i]]) {
+        for (int t = chainStart[i]; t != -1; t = chainNext[t]) slotRank[count + t] = rank++;
+      }
+    }
+
+    // the Fenwick tree counts the occupied slots before a rank, which is the current position
+    int[] occupied = new int[2 * count + 1];
+    for (int i = 0; i < count; i++) {
+      fenwickAdd(occupied, slotRank[i], 1);
+    }
+    for (int t = 0; t < count; t++) {
+      if (stayInNewPos[newIndexes.get(target[t])]) {
+        continue;
+      }
+      int fromRank = slotRank[curIndexes.get(target[t])];
+      int toRank   = slotRank[count + t];
+      int from = fenwickCount(occupied, fromRank);
+      fenwickAdd(occupied, fromRank, -1);
+      int to = fenwickCount(occupied, toRank);
+      fenwickAdd(occupied, toRank, 1);
+      if (from != to) {
+        add(OP_MOVE, from, to);
+      }
+    }
+  }
+
+  private static void fenwickAdd(int[] tree, int index, int delta) {
+    for (int i = index + 1; i < tree.length; i += i & -i) tree[i] += delta;
+  }
+
+  private static int fenwickCount(int[] tree, int index) {
+    // the sum of the entries before index
+    int sum = 0;
+    for (int i = index; i > 0; i -= i & -i) sum += tree[i];
+    return sum;
+  }
+
+  private static boolean[] longestIncreasingSubsequence(int[] values, int count, int maxValue) {
+    // patience sorting, O(n log n); returns a flag per value telling if it is part of the subsequence
+    int[] tailIndexes = new int[count];
+    int[] predecessors = new int[count];
+    int length = 0;
+    for (int i = 0; i < count; i++) {
+      int lo = 0, hi = length;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if (values[tailIndexes[mid]] < values[i]) lo = mid + 1;
+        else                                     hi = mid;
+      }
+      predecessors[i] = lo > 0 ? tailIndexes[lo - 1] : -1;
+      tailIndexes[lo] = i;
+      if (lo == length) length++;
+    }
+
+    boolean[] ret = new boolean[maxValue];
+    for (int i = length > 0 ? tailIndexes[length - 1] : -1; i >= 0; i = predecessors[i]) {
+      ret[values[i]] = true;
+    }
+    return ret;
+  }
+
+  private static boolean arrayEquals(int[] a, int[] b, int count) {
+    for (int i = 0; i < count; i++) {
+      if (a[i] != b[i]) return false;
+    }
+    return true;
+  }
+
+  private void addChange(int position) {
+    // merge with the previous change if adjacent
+    if (opsCount > 0 && ops[opsCount - 3] == OP_CHANGE && ops[opsCount - 2] + ops[opsCount - 1] == position) {
+      ops[opsCount - 1]++;
+    } else {
+      add(OP_CHANGE, position, 1);
+    }
+  }
+
+  private void add(int op, int a, int b) {
+    if (opsCount + 3 > ops.length) {
+      int[] grown = new int[ops.length * 2];
+      System.arraycopy(ops, 0, grown, 0, opsCount);
+      ops = grown;
+    }
+    ops[opsCount++] = op;
+    ops[opsCount++] = a;
+    ops[opsCount++] = b;
+  }
+
+  /**
+   * Maps unique ids to their index without boxing, open addressing with linear probing.
+   */
+  private static class IntIndexMap {
+    private final int[] keys;
+    private final int[] values; // index + 1, 0 for free entries
+    private final int   mask;
+    private final int   size;
+
+    IntIndexMap(int[] ids) {
+      this(ids, ids.length);
+    }
+
+    IntIndexMap(int[] ids, int count) {
+      int capacity = Integer.highestOneBit(Math.max(4, count * 2) - 1) << 1;
+      keys   = new int[capacity];
+      values = new int[capacity];
+      mask   = capacity - 1;
+      size   = count;
+      for (int i = 0; i < count; i++) {
+        int slot = hash(ids[i]) & mask;
+        while (values[slot] != 0) slot = (slot + 1) & mask;
+        keys[slot]   = ids[i];
+        values[slot] = i + 1;
+      }
+    }
+
+    /**
+     * @return the index of the id or -1 if the id is not in the map
+     */
+    int get(int id) {
+      for (int slot = hash(id) & mask; values[slot] != 0; slot = (slot + 1) & mask) {
+        if (keys[slot] == id) return values[slot] - 1;
+      }
+      return -1;
+    }
+
+    int size() {
+      return size;
+    }
+
+    private static int hash(int id) {
+      int h = id * 0x9e3779b9;
+      return h ^ (h >>> 16);
+    }
+  }
+
+  public boolean isEmpty() {
+    return opsCount == 0;
+  }
+
+  public void dispatchUpdatesTo(@NonNull ListUpdateCallback callback) {
+    for (int i = 0; i < opsCount; i += 3) {
+      switch (ops[i]) {
+        case OP_REMOVE: callback.onRemoved(ops[i + 1], ops[i + 2]);         break;
+        case OP_INSERT: callback.onInserted(ops[i + 1], ops[i + 2]);        break;
+        case OP_MOVE:   callback.onMoved(ops[i + 1], ops[i + 2]);           break;
+        case OP_CHANGE: callback.onChanged(ops[i + 1], ops[i + 2], null);   break;
+      }
+    }
+  }
+}
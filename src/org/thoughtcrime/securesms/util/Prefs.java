@@ -16,10 +16,10 @@ import android.util.Log;
 import org.thoughtcrime.securesms.preferences.widgets.NotificationPrivacyPreference;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class Prefs {
@@ -69,6 +69,11 @@ public class Prefs {
 
   private static final String PREF_CONTACT_PHOTO_IDENTIFIERS = "pref_contact_photo_identifiers";
 
+  private static final String LAST_BLOB_DEDUPLICATION_PREF = "pref_last_blob_deduplication";
+
+  // hashed identifier to system contact id, built from PREF_CONTACT_PHOTO_IDENTIFIERS on first use
+  private static volatile Map<String, Long> contactPhotoIndex;
+
   public enum VibrateState {
     DEFAULT(0), ENABLED(1), DISABLED(2);
     private final int id;
@@ -330,6 +335,14 @@ public class Prefs {
 
   // misc.
 
+  public static long getLastBlobDeduplication(Context context) {
+    return getLongPreference(context, LAST_BLOB_DEDUPLICATION_PREF, 0);
+  }
+
+  public static void setLastBlobDeduplication(Context context, long timestamp) {
+    setLongPreference(context, LAST_BLOB_DEDUPLICATION_PREF, timestamp);
+  }
+
   public static String getBackgroundImagePath(Context context) {
     return getStringPreference(context, BACKGROUND_PREF, "");
   }
@@ -395,18 +408,48 @@ public class Prefs {
 
   public static void setSystemContactPhotos(Context context, Set<String> contactPhotoIdentifiers) {
     PreferenceManager.getDefaultSharedPreferences(context).edit().putStringSet(PREF_CONTACT_PHOTO_IDENTIFIERS, contactPhotoIdentifiers).apply();
+    contactPhotoIndex = buildContactPhotoIndex(contactPhotoIdentifiers);
+  }
+
+  public static boolean hasSystemContactPhotos(Context context) {
+    return !getContactPhotoIndex(context).isEmpty();
   }
 
+  /**
+   * @param identifier sha256 of the name and the address of the contact
+   */
   public static Uri getSystemContactPhoto(Context context, String identifier) {
-    List<String> contactPhotoIdentifiers = new ArrayList<>(getStringSetPreference(context, PREF_CONTACT_PHOTO_IDENTIFIERS, new HashSet<>()));
-    for(String contactPhotoIdentifier : contactPhotoIdentifiers) {
-      if (contactPhotoIdentifier.contains(identifier)) {
-        String[] parts = contactPhotoIdentifier.split("\\|");
-        long contactId = Long.valueOf(parts[1]);
-        return ContentUris.withAppendedId(ContactsContract.Contacts.CONTENT_URI, contactId);
-      }
+    Long contactId = getContactPhotoIndex(context).get(identifier);
+    if (contactId != null) {
+      return ContentUris.withAppendedId(ContactsContract.Contacts.CONTENT_URI, contactId);
     }
     return null;
   }
 
+  private static Map<String, Long> getContactPhotoIndex(Context context) {
+    Map<String, Long> index = contactPhotoIndex;
+    if (index == null) {
+      index = buildContactPhotoIndex(getStringSetPreference(context, PREF_CONTACT_PHOTO_IDENTIFIERS, new HashSet<>()));
+      contactPhotoIndex = index;
+    }
+    return index;
+  }
+
+  private static Map<String, Long> buildContactPhotoIndex(Set<String> contactPhotoIdentifiers) {
+    // the identifiers have the form "hash|contactId"
+    Map<String, Long> index = new HashMap<>(contactPhotoIdentifiers.size() * 2);
+    for (String contactPhotoIdentifier : contactPhotoIdentifiers) {
+      int separator = contactPhotoIdentifier.indexOf('|');
+      if (separator == -1) {
+        continue;
+      }
+      try {
+        index.put(contactPhotoIdentifier.substring(0, separator), Long.valueOf(contactPhotoIdentifier.substring(separator + 1)));
+      } catch (NumberFormatException e) {
+        Log.w(TAG, e);
+      }
+    }
+    return index;
+  }
+
 }
@@ -43,6 +43,7 @@ import org.thoughtcrime.securesms.components.ComposeText;
 import org.thoughtcrime.securesms.database.Address;
 
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -180,6 +181,20 @@ public class Util {
     return total;
   }
 
+  public static void skipFully(InputStream in, long count) throws IOException {
+    while (count > 0) {
+      long skipped = in.skip(count);
+
+      if (skipped <= 0) {
+        // skip() may return 0 before the end, read() tells
+        if (in.read() == -1) throw new EOFException("Stream ended, " + count + " bytes not skipped");
+        skipped = 1;
+      }
+
+      count -= skipped;
+    }
+  }
+
   public static List<String> split(String source, String delimiter) {
     List<String> results = new LinkedList<>();
 
@@ -0,0 +1,224 @@
+package org.thoughtcrime.securesms.util;
+
+import android.content.Context;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Creates all partial wake locks of the app and keeps track of how long they are held.
+ *
+ * Every wake lock is acquired with a timeout, at most the maximum hold time given on creation,
+ * so that a hanging thread cannot drain the battery.
+ * For each name, the number of holds, a histogram of the hold times and the timeouts are counted;
+ * the last acquires and releases are kept in a ring buffer. dump() returns all of this, eg. for the debug log.
+ */
+public class WakeLockRegistry {
+
+  private static final String TAG = WakeLockRegistry.class.getSimpleName();
+
+  private static final int    EVENT_CAPACITY      = 256;
+  private static final long[] HISTOGRAM_BOUNDS    = { 100, 1000, 10*1000, 60*1000, 10*60*1000 };
+  private static final String[] HISTOGRAM_LABELS  = { "<100ms", "<1s", "<10s", "<1min", "<10min", ">=10min" };
+
+  private static final byte EVENT_ACQUIRE = 0;
+  private static final byte EVENT_RELEASE = 1;
+  private static final byte EVENT_TIMEOUT = 2;
+
+  // all fields guarded by the class lock
+  private static final Map<String, Stats> statsByName = new LinkedHashMap<>();
+
+  private static final long[]  eventTimes      = new long[EVENT_CAPACITY];
+  private static final byte[]  eventTypes      = new byte[EVENT_CAPACITY];
+  private static final long[]  eventHoldMillis = new long[EVENT_CAPACITY];
+  private static final Stats[] eventStats      = new Stats[EVENT_CAPACITY];
+  private static int           eventCount;
+
+  /**
+   * @param name          wake locks with the same name share their statistics
+   * @param maxHoldMillis the wake lock is released after this time even if release() is not called
+   */
+  public static @NonNull TrackedWakeLock newWakeLock(@NonNull Context context, @NonNull String name, long maxHoldMillis) {
+    PowerManager          powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+    PowerManager.WakeLock wakeLock     = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, name);
+    wakeLock.setReferenceCounted(false);
+
+    synchronized (WakeLockRegistry.class) {
+      Stats stats = statsByName.get(name);
+      if (stats == null) {
+        stats = new Stats(name);
+        statsByName.put(name, stats);
+      }
+      return new TrackedWakeLock(wakeLock, stats, maxHoldMillis);
+    }
+  }
+
+  private static void addEvent(Stats stats, byte type, long holdMillis) {
+    int index = eventCount++ % EVENT_CAPACITY;
+    eventTimes[index]      = System.currentTimeMillis();
+    eventTypes[index]      = type;
+    eventHoldMillis[index] = holdMillis;
+    eventStats[index]      = stats;
+  }
+
+  public static synchronized @NonNull String dump() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("wake locks:\n");
+    appendSummary(builder);
+
+    builder.append("recent wake lock events:\n");
+    SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS", Locale.US);
+    int first = Math.max(0, eventCount - EVENT_CAPACITY);
+    for (int i = first; i < eventCount; i++) {
+      int index = i % EVENT_CAPACITY;
+      builder.append(format.format(new Date(eventTimes[index]))).append(" ").append(eventStats[index].name);
+      switch (eventTypes[index]) {
+        case EVENT_ACQUIRE: builder.append(" acquired");                                                break;
+        case EVENT_RELEASE: builder.append(" released after ").append(eventHoldMillis[index]).append(" ms"); break;
+        case EVENT_TIMEOUT: builder.append(" timed out after ").append(eventHoldMillis[index]).append(" ms"); break;
+      }
+      builder.append("\n");
+    }
+    return builder.toString();
+  }
+
+  public static synchronized void logSummary() {
+    StringBuilder builder = new StringBuilder();
+    appendSummary(builder);
+    Log.i(TAG, builder.toString());
+  }
+
+  private static void appendSummary(StringBuilder builder) {
+    for (Stats stats : statsByName.values()) {
+      builder.append(stats.name).append(": ")
+             .append(stats.holdCount).append(" holds, ")
+             .append(stats.totalHoldMillis / 1000).append(" s total, ")
+             .append(stats.maxHoldMillis).append(" ms max, ")
+             .append(stats.timeoutCount).append(" timeouts");
+      if (stats.heldCount > 0) {
+        builder.append(", held ").append(stats.heldCount).append("x");
+      }
+      builder.append(";");
+      for (int i = 0; i < HISTOGRAM_LABELS.length; i++) {
+        builder.append(" ").append(HISTOGRAM_LABELS[i]).append(":").append(stats.histogram[i]);
+      }
+      builder.append("\n");
+    }
+  }
+
+  private static class Stats {
+    final String name;
+    final int[]  histogram = new int[HISTOGRAM_LABELS.length];
+    int          holdCount;
+    int          timeoutCount;
+    int          heldCount;
+    long         totalHoldMillis;
+    long         maxHoldMillis;
+
+    Stats(String name) {
+      this.name = name;
+    }
+
+    void addHold(long holdMillis) {
+      int bucket = 0;
+      while (bucket < HISTOGRAM_BOUNDS.length && holdMillis >= HISTOGRAM_BOUNDS[bucket]) {
+        bucket++;
+      }
+      histogram[bucket]++;
+      holdCount++;
+      totalHoldMillis += holdMillis;
+      maxHoldMillis    = Math.max(maxHoldMillis, holdMillis);
+    }
+  }
+
+  /**
+   * A non reference counted wake lock; acquiring a held lock only extends the timeout.
+   */
+  public static class TrackedWakeLock {
+
+    private final PowerManager.WakeLock wakeLock;
+    private final Stats                 stats;
+    private final long                  maxHoldMillis;
+
+    // guarded by WakeLockRegistry.class
+    private boolean held;
+    private long    acquiredAt;
+    private long    expiresAt;
+
+    private TrackedWakeLock(PowerManager.WakeLock wakeLock, Stats stats, long maxHoldMillis) {
+      this.wakeLock      = wakeLock;
+      this.stats         = stats;
+      this.maxHoldMillis = maxHoldMillis;
+    }
+
+    /**
+     * Acquire the wake lock for the maximum hold time.
+     */
+    public void acquire() {
+      acquire(maxHoldMillis);
+    }
+
+    public void acquire(long timeoutMillis) {
+      long timeout = Math.min(timeoutMillis, maxHoldMillis);
+      long now     = SystemClock.elapsedRealtime();
+      synchronized (WakeLockRegistry.class) {
+        checkExpired(now);
+        if (!held) {
+          held       = true;
+          acquiredAt = now;
+          stats.heldCount++;
+          addEvent(stats, EVENT_ACQUIRE, 0);
+        }
+        expiresAt = Math.max(expiresAt, now + timeout);
+      }
+      wakeLock.acquire(timeout);
+    }
+
+    public void release() {
+      long now = SystemClock.elapsedRealtime();
+      synchronized (WakeLockRegistry.class) {
+        checkExpired(now);
+        if (held) {
+          held = false;
+          stats.heldCount--;
+          stats.addHold(now - acquiredAt);
+          addEvent(stats, EVENT_RELEASE, now - acquiredAt);
+        }
+      }
+      if (wakeLock.isHeld()) {
+        wakeLock.release();
+      }
+    }
+
+    public boolean isHeld() {
+      synchronized (WakeLockRegistry.class) {
+        checkExpired(SystemClock.elapsedRealtime());
+        return held;
+      }
+    }
+
+    public long getTotalHoldMillis() {
+      synchronized (WakeLockRegistry.class) {
+        return stats.totalHoldMillis;
+      }
+    }
+
+    private void checkExpired(long now) {
+      // the system releases the wake lock on timeout without telling us
+      if (held && now >= expiresAt) {
+        held = false;
+        stats.heldCount--;
+        stats.timeoutCount++;
+        stats.addHold(expiresAt - acquiredAt);
+        addEvent(stats, EVENT_TIMEOUT, expiresAt - acquiredAt);
+      }
+    }
+  }
+}
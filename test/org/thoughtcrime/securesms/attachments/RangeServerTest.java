@@ -0,0 +1,252 @@
+package org.thoughtcrime.securesms.attachments;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RangeServerTest {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final String  AUTH  = "0123456789abcdef";
+    private static final int     SIZE  = 4 * 1024 * 1024 + 17;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private byte[]      data;
+    private File        file;
+    private RangeServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        data = new byte[SIZE];
+        new Random(1).nextBytes(data);
+        file = folder.newFile();
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (server != null) server.stop();
+    }
+
+    @Test
+    public void get_wholeFile() throws IOException {
+        startFileServer();
+        HttpURLConnection connection = open("/" + AUTH, null);
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("bytes", connection.getHeaderField("Accept-Ranges"));
+        assertArrayEquals(data, readAll(connection));
+    }
+
+    @Test
+    public void get_openEndedAndSuffixRanges() throws IOException {
+        startFileServer();
+        HttpURLConnection connection = open("/" + AUTH, "bytes=1000-");
+        assertEquals(206, connection.getResponseCode());
+        assertEquals("bytes 1000-" + (SIZE - 1) + "/" + SIZE, connection.getHeaderField("Content-Range"));
+        assertArrayEquals(Arrays.copyOfRange(data, 1000, SIZE), readAll(connection));
+
+        connection = open("/" + AUTH, "bytes=-500");
+        assertEquals(206, connection.getResponseCode());
+        assertArrayEquals(Arrays.copyOfRange(data, SIZE - 500, SIZE), readAll(connection));
+
+        connection = open("/" + AUTH, "bytes=10-" + (SIZE * 2));
+        assertEquals(206, connection.getResponseCode());
+        assertArrayEquals(Arrays.copyOfRange(data, 10, SIZE), readAll(connection));
+    }
+
+    @Test
+    public void get_multipleRanges() throws IOException {
+        startFileServer();
+        HttpURLConnection connection = open("/" + AUTH, "bytes=0-9, 100-109");
+        assertEquals(206, connection.getResponseCode());
+        assertTrue(connection.getContentType().startsWith("multipart/byteranges; boundary="));
+
+        String boundary = connection.getContentType().substring("multipart/byteranges; boundary=".length());
+        byte[] body     = readAll(connection);
+        String text     = new String(body, ASCII);
+        assertTrue(text.contains("Content-Range: bytes 0-9/" + SIZE));
+        assertTrue(text.contains("Content-Range: bytes 100-109/" + SIZE));
+        assertTrue(text.endsWith("\r\n--" + boundary + "--\r\n"));
+
+        int second = text.indexOf("Content-Range: bytes 100-109/" + SIZE);
+        int start  = text.indexOf("\r\n\r\n", second) + 4;
+        assertArrayEquals(Arrays.copyOfRange(data, 100, 110), Arrays.copyOfRange(body, start, start + 10));
+    }
+
+    @Test
+    public void get_unsatisfiableRange() throws IOException {
+        startFileServer();
+        HttpURLConnection connection = open("/" + AUTH, "bytes=" + SIZE + "-");
+        assertEquals(416, connection.getResponseCode());
+        assertEquals("bytes */" + SIZE, connection.getHeaderField("Content-Range"));
+    }
+
+    @Test
+    public void get_wrongAuth() throws IOException {
+        startFileServer();
+        assertEquals(404, open("/fedcba9876543210", null).getResponseCode());
+    }
+
+    @Test
+    public void parseRanges_invalidHeaderMeansWholeFile() {
+        assertNull(RangeServer.parseRanges("items=0-1", 100));
+        assertNull(RangeServer.parseRanges("bytes=5-1", 100));
+        assertNull(RangeServer.parseRanges("bytes=a-", 100));
+        assertEquals(0, RangeServer.parseRanges("bytes=-0", 100).size());
+    }
+
+    @Test
+    public void keepAlive_pipelinedRequests() throws IOException {
+        startFileServer();
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+            String request = "GET /" + AUTH + " HTTP/1.1\r\nHost: localhost\r\nRange: bytes=0-3\r\n\r\n";
+            socket.getOutputStream().write((request + request).getBytes(ASCII));
+
+            InputStream in = socket.getInputStream();
+            for (int i = 0; i < 2; i++) {
+                String headers = readHeaders(in);
+                assertTrue(headers, headers.startsWith("HTTP/1.1 206"));
+                byte[] body = new byte[4];
+                for (int read = 0; read < body.length; ) {
+                    read += in.read(body, read, body.length - read);
+                }
+                assertArrayEquals(Arrays.copyOf(data, 4), body);
+            }
+        }
+    }
+
+    @Test
+    public void load_parallelRangeRequests() throws Exception {
+        AtomicLong streamed = new AtomicLong();
+        RangeServer streamServer = new RangeServer(new RangeServer.StreamSource() {
+            @Override
+            public long getSize() {
+                return SIZE;
+            }
+
+            @Override
+            public String getContentType() {
+                return "video/mp4";
+            }
+
+            @Override
+            protected InputStream openStream(long offset) {
+                return new ByteArrayInputStream(data, (int) offset, SIZE - (int) offset) {
+                    @Override
+                    public synchronized int read(byte[] b, int off, int len) {
+                        int read = super.read(b, off, len);
+                        if (read > 0) streamed.addAndGet(read);
+                        return read;
+                    }
+                };
+            }
+        }, AUTH);
+        streamServer.start();
+        server = new RangeServer(new RangeServer.FileSource(file, "video/mp4"), AUTH);
+        server.start();
+
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        List<Future<Long>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < 8; i++) {
+                final int seed = i;
+                results.add(clients.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws IOException {
+                        Random random    = new Random(seed);
+                        long   requested = 0;
+                        for (int j = 0; j < 25; j++) {
+                            RangeServer target = j % 2 == 0 ? server : streamServer;
+                            int first = random.nextInt(SIZE);
+                            int last  = Math.min(SIZE - 1, first + random.nextInt(256 * 1024));
+                            HttpURLConnection connection = open(target, "/" + AUTH, "bytes=" + first + "-" + last);
+                            assertEquals(206, connection.getResponseCode());
+                            assertArrayEquals(Arrays.copyOfRange(data, first, last + 1), readAll(connection));
+                            if (target == streamServer) requested += last - first + 1;
+                        }
+                        return requested;
+                    }
+                }));
+            }
+
+            long requested = 0;
+            for (Future<Long> result : results) {
+                requested += result.get();
+            }
+            // the stream source is opened at the offsets, nothing before them is read
+            assertEquals(requested, streamed.get());
+        } finally {
+            clients.shutdownNow();
+            streamServer.stop();
+        }
+    }
+
+    private void startFileServer() throws IOException {
+        server = new RangeServer(new RangeServer.FileSource(file, "audio/mpeg"), AUTH);
+        server.start();
+    }
+
+    private HttpURLConnection open(String path, String range) throws IOException {
+        return open(server, path, range);
+    }
+
+    private static HttpURLConnection open(RangeServer server, String path, String range) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + path).openConnection();
+        if (range != null) connection.setRequestProperty("Range", range);
+        return connection;
+    }
+
+    private static byte[] readAll(HttpURLConnection connection) throws IOException {
+        try (InputStream in = connection.getInputStream()) {
+            ByteArrayOutputStream out    = new ByteArrayOutputStream();
+            byte[]                buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static String readHeaders(InputStream in) throws IOException {
+        StringBuilder headers = new StringBuilder();
+        while (!headers.toString().endsWith("\r\n\r\n")) {
+            int c = in.read();
+            if (c == -1) throw new IOException("Connection closed");
+            headers.append((char) c);
+        }
+        return headers.toString();
+    }
+}
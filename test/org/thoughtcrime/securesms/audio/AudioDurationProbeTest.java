@@ -0,0 +1,138 @@
+package org.thoughtcrime.securesms.audio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+
+public class AudioDurationProbeTest {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void adts_countsFrames() throws IOException {
+        // 44100 Hz, 430 frames of 1024 samples
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < 430; i++) {
+            byte[] frame = new byte[100 + i % 7];
+            int length = frame.length;
+            frame[0] = (byte) 0xff;
+            frame[1] = (byte) 0xf1;
+            frame[2] = (byte) (0x40 | (4 << 2));
+            frame[3] = (byte) (0x80 | ((length >> 11) & 0x03));
+            frame[4] = (byte) (length >> 3);
+            frame[5] = (byte) ((length & 0x07) << 5 | 0x1f);
+            frame[6] = (byte) 0xfc;
+            out.write(frame);
+        }
+        assertEquals(430L * 1024 * 1000 / 44100, probe(out.toByteArray()));
+    }
+
+    @Test
+    public void mp3_cbrWithId3Tag() throws IOException {
+        // MPEG 1 Layer III, 128 kbit/s, 44100 Hz: 417 bytes per frame without padding
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] id3 = new byte[10 + 200];
+        id3[0] = 'I'; id3[1] = 'D'; id3[2] = '3'; id3[3] = 3;
+        id3[9] = (byte) 200;
+        out.write(id3);
+        for (int i = 0; i < 383; i++) {
+            out.write(mp3Frame());
+        }
+        assertEquals(383L * 417 * 8 / 128, probe(out.toByteArray()));
+    }
+
+    @Test
+    public void mp3_xingHeader() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] first = mp3Frame();
+        ByteBuffer.wrap(first, 4 + 32, 12).put("Xing".getBytes(ASCII)).putInt(0x0f).putInt(1000);
+        out.write(first);
+        for (int i = 0; i < 10; i++) {
+            out.write(mp3Frame());
+        }
+        assertEquals(1000L * 1152 * 1000 / 44100, probe(out.toByteArray()));
+    }
+
+    @Test
+    public void opus_lastGranuleMinusPreSkip() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer head = ByteBuffer.allocate(19).order(ByteOrder.LITTLE_ENDIAN);
+        head.put("OpusHead".getBytes(ASCII)).put((byte) 1).put((byte) 1).putShort((short) 312).putInt(48000);
+        out.write(oggPage(0, 0, head.array()));
+        out.write(oggPage(1, 48000, new byte[3000]));
+        out.write(oggPage(2, 48000 * 3 + 312, new byte[3000]));
+        assertEquals(3000, probe(out.toByteArray()));
+    }
+
+    @Test
+    public void m4a_movieHeaderAfterData() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(box("ftyp", "M4A ".getBytes(ASCII)));
+        out.write(box("mdat", new byte[5000]));
+        ByteBuffer mvhd = ByteBuffer.allocate(100);
+        mvhd.putInt(0).putInt(0).putInt(0).putInt(44100).putInt(44100 * 7 / 2);
+        out.write(box("moov", box("mvhd", mvhd.array())));
+        assertEquals(3500, probe(out.toByteArray()));
+    }
+
+    @Test
+    public void wav_dataSizeByByteRate() throws IOException {
+        ByteBuffer wav = ByteBuffer.allocate(44 + 32000).order(ByteOrder.LITTLE_ENDIAN);
+        wav.put("RIFF".getBytes(ASCII)).putInt(36 + 32000).put("WAVE".getBytes(ASCII));
+        wav.put("fmt ".getBytes(ASCII)).putInt(16).putShort((short) 1).putShort((short) 1).putInt(8000).putInt(16000).putShort((short) 2).putShort((short) 16);
+        wav.put("data".getBytes(ASCII)).putInt(32000);
+        assertEquals(2000, probe(wav.array()));
+    }
+
+    @Test
+    public void unknownFormat() throws IOException {
+        assertEquals(0, probe("just some text, no audio at all".getBytes(ASCII)));
+    }
+
+    private static byte[] mp3Frame() {
+        byte[] frame = new byte[417];
+        frame[0] = (byte) 0xff;
+        frame[1] = (byte) 0xfb;
+        frame[2] = (byte) 0x90;
+        frame[3] = (byte) 0x44;
+        return frame;
+    }
+
+    private static byte[] oggPage(int sequence, long granule, byte[] data) {
+        int segments = data.length / 255 + 1;
+        ByteBuffer page = ByteBuffer.allocate(27 + segments + data.length).order(ByteOrder.LITTLE_ENDIAN);
+        page.put("OggS".getBytes(ASCII)).put((byte) 0).put((byte) (sequence == 0 ? 2 : 0));
+        page.putLong(granule).putInt(0x1234).putInt(sequence).putInt(0).put((byte) segments);
+        for (int i = 0; i < segments - 1; i++) {
+            page.put((byte) 255);
+        }
+        page.put((byte) (data.length % 255));
+        page.put(data);
+        return page.array();
+    }
+
+    private static byte[] box(String type, byte[] content) {
+        return ByteBuffer.allocate(8 + content.length).putInt(8 + content.length).put(type.getBytes(ASCII)).put(content).array();
+    }
+
+    private int probe(byte[] content) throws IOException {
+        File file = folder.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+        return AudioDurationProbe.getDuration(file);
+    }
+}
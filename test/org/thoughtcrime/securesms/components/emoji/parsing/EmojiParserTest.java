@@ -0,0 +1,99 @@
+package org.thoughtcrime.securesms.components.emoji.parsing;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EmojiParserTest {
+
+    private static final String HEART       = "\u2764";
+    private static final String HEART_VS16  = "\u2764\ufe0f";
+    private static final String THUMBS_UP   = "\ud83d\udc4d";
+    private static final String SKIN_TONE   = "\ud83c\udffd";
+    private static final String FAMILY      = "\ud83d\udc68\u200d\ud83d\udc69\u200d\ud83d\udc67";
+    private static final String MAN         = "\ud83d\udc68";
+
+    private EmojiTree     tree;
+    private EmojiDrawInfo heart;
+    private EmojiDrawInfo thumbsUp;
+    private EmojiDrawInfo family;
+    private EmojiDrawInfo man;
+
+    @Before
+    public void setUp() {
+        tree     = new EmojiTree();
+        heart    = new EmojiDrawInfo(null, 1);
+        thumbsUp = new EmojiDrawInfo(null, 2);
+        family   = new EmojiDrawInfo(null, 3);
+        man      = new EmojiDrawInfo(null, 4);
+        tree.add(HEART_VS16, heart);
+        tree.add(THUMBS_UP, thumbsUp);
+        tree.add(FAMILY, family);
+        tree.add(MAN, man);
+    }
+
+    @Test
+    public void findCandidates_plainText() {
+        EmojiParser.CandidateList candidates = new EmojiParser(tree).findCandidates("hello world");
+        assertEquals(0, candidates.size());
+        assertFalse(candidates.allEmojis);
+    }
+
+    @Test
+    public void findCandidates_terminatorIsPartOfEmoji() {
+        EmojiParser.CandidateList candidates = new EmojiParser(tree).findCandidates("a" + HEART_VS16 + "b");
+        assertEquals(1, candidates.size());
+        EmojiParser.Candidate candidate = candidates.list.get(0);
+        assertEquals(1, candidate.getStartIndex());
+        assertEquals(3, candidate.getEndIndex());
+        assertSame(heart, candidate.getDrawInfo());
+    }
+
+    @Test
+    public void findCandidates_terminatorIsOptional() {
+        EmojiParser.CandidateList candidates = new EmojiParser(tree).findCandidates(HEART + HEART);
+        assertEquals(2, candidates.size());
+        assertEquals(1, candidates.list.get(0).getEndIndex());
+        assertSame(heart, candidates.list.get(1).getDrawInfo());
+        assertTrue(candidates.allEmojis);
+    }
+
+    @Test
+    public void findCandidates_skinToneIsPartOfEmoji() {
+        EmojiParser.CandidateList candidates = new EmojiParser(tree).findCandidates(THUMBS_UP + SKIN_TONE);
+        assertEquals(1, candidates.size());
+        assertEquals(4, candidates.list.get(0).getEndIndex());
+        assertTrue(candidates.allEmojis);
+    }
+
+    @Test
+    public void findCandidates_longestMatchWins() {
+        EmojiParser.CandidateList candidates = new EmojiParser(tree).findCandidates(FAMILY + MAN + "\u200d");
+        assertEquals(2, candidates.size());
+        assertSame(family, candidates.list.get(0).getDrawInfo());
+        assertEquals(FAMILY.length(), candidates.list.get(0).getEndIndex());
+        assertSame(man, candidates.list.get(1).getDrawInfo());
+        assertFalse(candidates.allEmojis);
+    }
+
+    @Test
+    public void findCandidates_treeCanBeExtended() {
+        assertEquals(0, new EmojiParser(tree).findCandidates("\u2600").size());
+        EmojiDrawInfo sun = new EmojiDrawInfo(null, 5);
+        tree.add("\u2600", sun);
+        assertSame(sun, new EmojiParser(tree).findCandidates("\u2600").list.get(0).getDrawInfo());
+    }
+
+    @Test
+    public void addAlias_resolvesTheTerminatedEmoji() {
+        tree.addAlias("\u2665", HEART);
+        tree.addAlias("\u2661", "\u2600");
+        assertSame(heart, tree.getEmoji("\u2665", 0, 1));
+        assertNull(tree.getEmoji("\u2661", 0, 1));
+    }
+}
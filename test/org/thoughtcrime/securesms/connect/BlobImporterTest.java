@@ -0,0 +1,136 @@
+package org.thoughtcrime.securesms.connect;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BlobImporterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger open    = new AtomicInteger();
+    private final AtomicInteger maxOpen = new AtomicInteger();
+
+    private class TestSource implements BlobImporter.Source {
+        final String name;
+        final byte[] data;
+        final File   file;
+
+        TestSource(String name, byte[] data, File file) {
+            this.name = name;
+            this.data = data;
+            this.file = file;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getSize() {
+            return data.length;
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            int now = open.incrementAndGet();
+            maxOpen.accumulateAndGet(now, Math::max);
+            if (data.length == 0) {
+                open.decrementAndGet();
+                throw new IOException("not readable");
+            }
+            return file != null ? new FileInputStream(file) {
+                private boolean closed;
+
+                @Override
+                public void close() throws IOException {
+                    // also called again when the channel is closed
+                    if (!closed) open.decrementAndGet();
+                    closed = true;
+                    super.close();
+                }
+            } : new ByteArrayInputStream(data) {
+                @Override
+                public void close() {
+                    open.decrementAndGet();
+                }
+            };
+        }
+    }
+
+    @Test
+    public void importAll_copiesEachSourceOnce() throws Exception {
+        File blobdir = folder.newFolder("blobdir");
+        Random random = new Random(7);
+        List<TestSource> sources = new ArrayList<>();
+        long total = 0;
+        for (int i = 0; i < 12; i++) {
+            byte[] data = new byte[100 * 1024 + random.nextInt(3 * 1024 * 1024)];
+            random.nextBytes(data);
+            File file = null;
+            if (i % 2 == 0) {
+                file = folder.newFile();
+                try (OutputStream out = new FileOutputStream(file)) {
+                    out.write(data);
+                }
+            }
+            sources.add(new TestSource("video.mp4", data, file));
+            total += data.length;
+        }
+        sources.add(new TestSource("broken.jpg", new byte[0], null));
+
+        AtomicLong reported = new AtomicLong();
+        AtomicInteger files = new AtomicInteger();
+        File[] results = new BlobImporter(blobdir).importAll(sources, (filesDone, filesTotal, bytesDone, bytesTotal) -> {
+            reported.accumulateAndGet(bytesDone, Math::max);
+            files.accumulateAndGet(filesDone, Math::max);
+        });
+
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < 12; i++) {
+            assertEquals(blobdir, results[i].getParentFile());
+            assertTrue(results[i].getName(), results[i].getName().startsWith("video") && results[i].getName().endsWith(".mp4"));
+            assertArrayEquals(sources.get(i).data, Files.readAllBytes(results[i].toPath()));
+            names.add(results[i].getName());
+        }
+        assertEquals(12, names.size());
+        assertNull(results[12]);
+        assertEquals(12, blobdir.list().length);
+
+        assertEquals(total, reported.get());
+        assertEquals(13, files.get());
+        assertTrue("parallel: " + maxOpen.get(), maxOpen.get() <= BlobImporter.IO_PARALLELISM);
+        assertEquals(0, open.get());
+    }
+
+    @Test
+    public void createBlobFile_removesDirectories() throws IOException {
+        File blobdir = folder.newFolder("blobdir");
+        assertEquals(new File(blobdir, "passwd"), BlobImporter.createBlobFile(blobdir, "../../etc/passwd"));
+        assertEquals(new File(blobdir, "file"), BlobImporter.createBlobFile(blobdir, ".."));
+        assertEquals(new File(blobdir, ".profile"), BlobImporter.createBlobFile(blobdir, ".profile"));
+    }
+}
@@ -0,0 +1,175 @@
+package org.thoughtcrime.securesms.connect;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BlobIndexTest {
+
+    private static final BlobIndex.Linker LINKER = (existing, link) -> Files.createLink(link.toPath(), existing.toPath());
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File blobdir;
+    private File indexFile;
+
+    @Before
+    public void setUp() throws IOException {
+        blobdir   = folder.newFolder("blobdir");
+        indexFile = new File(folder.getRoot(), "blobdir.index");
+    }
+
+    @Test
+    public void add_linksDuplicates() throws IOException {
+        BlobIndex index = new BlobIndex(blobdir, indexFile, LINKER);
+        byte[] data = randomBytes(1, 100 * 1024);
+
+        File first  = write("first.jpg", data);
+        File second = write("second.jpg", data);
+        File other  = write("other.jpg", randomBytes(2, 100 * 1024));
+        assertFalse(index.add(first, digest(data)));
+        assertTrue(index.add(second, digest(data)));
+        assertFalse(index.add(other, digest(Files.readAllBytes(other.toPath()))));
+
+        assertTrue(isSameFile(first, second));
+        assertFalse(isSameFile(first, other));
+        assertArrayEquals(data, Files.readAllBytes(second.toPath()));
+        assertEquals(3, blobdir.list().length);
+
+        // the content stays as long as one of the paths is left
+        assertTrue(first.delete());
+        assertArrayEquals(data, Files.readAllBytes(second.toPath()));
+    }
+
+    @Test
+    public void add_replacesDeletedFile() throws IOException {
+        BlobIndex index = new BlobIndex(blobdir, indexFile, LINKER);
+        byte[] data = randomBytes(3, 10 * 1024);
+
+        File first = write("first.pdf", data);
+        assertFalse(index.add(first, digest(data)));
+        assertTrue(first.delete());
+
+        File second = write("second.pdf", data);
+        File third  = write("third.pdf", data);
+        assertFalse(index.add(second, digest(data)));
+        assertTrue(index.add(third, digest(data)));
+        assertTrue(isSameFile(second, third));
+    }
+
+    @Test
+    public void add_keepsSmallFiles() throws IOException {
+        BlobIndex index = new BlobIndex(blobdir, indexFile, LINKER);
+        byte[] data = randomBytes(4, 100);
+
+        File first  = write("a.txt", data);
+        File second = write("b.txt", data);
+        assertFalse(index.add(first, digest(data)));
+        assertFalse(index.add(second, digest(data)));
+        assertFalse(isSameFile(first, second));
+    }
+
+    @Test
+    public void deduplicateAll_linksExistingFilesAndPersists() throws IOException {
+        byte[] data = randomBytes(5, 50 * 1024);
+        List<File> copies = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            copies.add(write("copy" + i + ".mp4", data));
+        }
+        File recent = write("recent.mp4", data);
+        for (File copy : copies) {
+            assertTrue(copy.setLastModified(System.currentTimeMillis() - 2 * BlobIndex.MIN_AGE_MS));
+        }
+
+        assertEquals(3 * data.length, new BlobIndex(blobdir, indexFile, LINKER).deduplicateAll());
+        for (File copy : copies) {
+            assertTrue(isSameFile(copies.get(0), copy));
+        }
+        assertFalse(isSameFile(copies.get(0), recent));
+
+        // a new instance reads the index and does not hash the files again
+        BlobIndex index = new BlobIndex(blobdir, indexFile, (existing, link) -> {
+            throw new IOException("not expected");
+        });
+        assertEquals(0, index.deduplicateAll());
+
+        File added = write("added.mp4", data);
+        BlobIndex linking = new BlobIndex(blobdir, indexFile, LINKER);
+        assertTrue(linking.add(added, digest(data)));
+        assertTrue(isSameFile(copies.get(0), added));
+    }
+
+    @Test
+    public void importAll_hashesWhileCopying() throws Exception {
+        BlobIndex index = new BlobIndex(blobdir, indexFile, LINKER);
+        final byte[] data = randomBytes(6, 200 * 1024);
+
+        List<BlobImporter.Source> sources = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            sources.add(new BlobImporter.Source() {
+                @Override
+                public String getName() {
+                    return "shared.zip";
+                }
+
+                @Override
+                public long getSize() {
+                    return data.length;
+                }
+
+                @Override
+                public InputStream open() {
+                    return new ByteArrayInputStream(data);
+                }
+            });
+        }
+
+        File[] files = new BlobImporter(blobdir, index).importAll(sources, null);
+        assertTrue(isSameFile(files[0], files[1]));
+        assertTrue(isSameFile(files[0], files[2]));
+        assertArrayEquals(data, Files.readAllBytes(files[2].toPath()));
+    }
+
+    private File write(String name, byte[] data) throws IOException {
+        File file = new File(blobdir, name);
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+        return file;
+    }
+
+    private static byte[] randomBytes(long seed, int size) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static MessageDigest digest(byte[] data) {
+        MessageDigest digest = BlobIndex.newDigest();
+        digest.update(data);
+        return digest;
+    }
+
+    private static boolean isSameFile(File a, File b) throws IOException {
+        return Files.isSameFile(a.toPath(), b.toPath());
+    }
+}
@@ -0,0 +1,121 @@
+package org.thoughtcrime.securesms.connect;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class HttpBridgeTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer    server;
+    private String        baseUrl;
+    private AtomicInteger requests = new AtomicInteger();
+    private volatile byte[] postedBody;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/config.xml", exchange -> respond(exchange, 200, "text/xml", "<config>\r\n\u00e4</config>\n".getBytes(UTF8)));
+        server.createContext("/token", exchange -> {
+            postedBody = readAll(exchange.getRequestBody());
+            respond(exchange, 200, "application/json", "{\"access_token\":\"secret\"}".getBytes(UTF8));
+        });
+        server.createContext("/large", exchange -> respond(exchange, 200, "text/plain", new byte[2 * 1024 * 1024]));
+        server.createContext("/missing", exchange -> respond(exchange, 404, "text/plain", "not found".getBytes(UTF8)));
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void get_passesBodyUnchanged() throws IOException {
+        HttpBridge bridge = new HttpBridge(null);
+        assertArrayEquals("<config>\r\n\u00e4</config>\n".getBytes(UTF8), bridge.get(baseUrl + "/config.xml"));
+    }
+
+    @Test
+    public void get_xmlIsCachedInMemoryAndOnDisk() throws IOException {
+        String url = baseUrl + "/config.xml";
+        byte[] body = new HttpBridge(folder.getRoot()).get(url);
+
+        HttpBridge bridge = new HttpBridge(folder.getRoot());
+        assertArrayEquals(body, bridge.get(url));
+        assertArrayEquals(body, bridge.get(url));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void post_sendsParametersAsFormAndIsNotCached() throws IOException {
+        HttpBridge bridge = new HttpBridge(folder.getRoot());
+        byte[] body = bridge.post(baseUrl + "/token?code=abc&grant_type=authorization_code");
+        bridge.post(baseUrl + "/token?code=abc&grant_type=authorization_code");
+
+        assertArrayEquals("{\"access_token\":\"secret\"}".getBytes(UTF8), body);
+        assertArrayEquals("code=abc&grant_type=authorization_code".getBytes(UTF8), postedBody);
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void get_failsForLargeResponses() {
+        try {
+            new HttpBridge(null).get(baseUrl + "/large");
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void get_failsForErrors() {
+        try {
+            new HttpBridge(null).get(baseUrl + "/missing");
+            fail();
+        } catch (IOException e) {
+            assertEquals("HTTP 404: not found", e.getMessage());
+        }
+    }
+
+    private void respond(HttpExchange exchange, int code, String contentType, byte[] body) throws IOException {
+        requests.incrementAndGet();
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(code, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,116 @@
+package org.thoughtcrime.securesms.geolocation;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays GPS traces with one fix per second, as delivered before by the location providers,
+ * and counts how often a location is passed on to the core.
+ */
+public class LocationBatcherTest {
+
+    private static final double METERS_PER_DEGREE = 111320D;
+    private static final long   START = 1500000000000L;
+
+    private static class Fix {
+        final double latitude;
+        final double longitude;
+        final float  accuracy;
+        final long   time;
+
+        Fix(double latitude, double longitude, float accuracy, long time) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.accuracy = accuracy;
+            this.time = time;
+        }
+    }
+
+    private static class Replay {
+        int    coreCalls;
+        double maxLag;      // meters between the real position and the one the core knows
+    }
+
+    /**
+     * Moves north with the given speed, the fixes jitter by up to jitter meters.
+     */
+    private static void addTrace(List<Fix> trace, int seconds, double speed, double jitter, Random random) {
+        Fix last = trace.isEmpty() ? new Fix(52D, 10D, 10F, START) : trace.get(trace.size() - 1);
+        double latitude = last.latitude;
+        long time = last.time;
+        for (int i = 0; i < seconds; i++) {
+            latitude += speed / METERS_PER_DEGREE;
+            time += 1000;
+            double noise = (random.nextDouble() * 2 - 1) * jitter / METERS_PER_DEGREE;
+            trace.add(new Fix(latitude + noise, 10D, 10F, time));
+        }
+    }
+
+    private static Replay replay(LocationBatcher batcher, List<Fix> trace) {
+        Replay replay = new Replay();
+        double coreLatitude = 0;
+        for (Fix fix : trace) {
+            batcher.addFix(fix.latitude, fix.longitude, fix.accuracy, fix.time);
+            if (batcher.shouldFlush(fix.time)) {
+                coreLatitude = batcher.getPendingLatitude();
+                batcher.flush(fix.time);
+                replay.coreCalls++;
+            }
+            double lag = LocationBatcher.distance(fix.latitude, fix.longitude, coreLatitude, fix.longitude);
+            replay.maxLag = Math.max(replay.maxLag, lag);
+        }
+        return replay;
+    }
+
+    @Test
+    public void walkStandDrive_savesCoreCalls() {
+        List<Fix> trace = new ArrayList<>();
+        Random random = new Random(42);
+        addTrace(trace, 600, 1.4, 3, random);
+        addTrace(trace, 600, 0, 3, random);
+        addTrace(trace, 600, 15, 3, random);
+
+        Replay replay = replay(new LocationBatcher(), trace);
+        assertTrue("core calls: " + replay.coreCalls, replay.coreCalls * 10 < trace.size());
+    }
+
+    @Test
+    public void standing_dropsJitter() {
+        List<Fix> trace = new ArrayList<>();
+        addTrace(trace, 600, 0, 4, new Random(1));
+
+        Replay replay = replay(new LocationBatcher(), trace);
+        assertEquals(1, replay.coreCalls);
+    }
+
+    @Test
+    public void driving_lagIsBounded() {
+        List<Fix> trace = new ArrayList<>();
+        addTrace(trace, 60, 1.4, 0, new Random(2));
+        addTrace(trace, 600, 15, 0, new Random(2));
+
+        Replay replay = replay(new LocationBatcher(), trace);
+        // at most one flush interval for driving plus the time the speed estimate needs to follow
+        assertTrue("max lag: " + replay.maxLag, replay.maxLag < 15 * 40);
+        assertTrue("core calls: " + replay.coreCalls, replay.coreCalls >= 600 / 20);
+    }
+
+    @Test
+    public void shortSharing_keepsEnoughPoints() {
+        List<Fix> trace = new ArrayList<>();
+        addTrace(trace, 120, 4, 0, new Random(3));
+
+        LocationBatcher batcher = new LocationBatcher();
+        batcher.setSharingDuration(120);
+        Replay replay = replay(batcher, trace);
+        Replay unlimited = replay(new LocationBatcher(), trace);
+        assertTrue("core calls: " + replay.coreCalls, replay.coreCalls >= LocationBatcher.MIN_POINTS_PER_SHARING * 3 / 4);
+        assertTrue("core calls: " + replay.coreCalls + " vs " + unlimited.coreCalls, replay.coreCalls > unlimited.coreCalls * 2);
+    }
+}
@@ -0,0 +1,149 @@
+package org.thoughtcrime.securesms.jobmanager;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+import org.thoughtcrime.securesms.jobmanager.requirements.Requirement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class JobQueueTest {
+
+    private static class TestRequirement implements Requirement {
+        boolean present;
+
+        TestRequirement(boolean present) {
+            this.present = present;
+        }
+
+        @Override
+        public boolean isPresent(@NonNull Job job) {
+            return present;
+        }
+
+        @Override
+        public void onRetry(@NonNull Job job) {
+        }
+    }
+
+    private static class TestJob extends Job {
+        TestJob(JobParameters parameters) {
+            super(parameters);
+        }
+
+        @Override public void onAdded() {}
+        @Override protected void onRun() {}
+        @Override public boolean onShouldRetry(Exception exception) { return false; }
+        @Override public void onCanceled() {}
+    }
+
+    private static Job job(String groupId, int priority) {
+        return new TestJob(JobParameters.newBuilder().withGroupId(groupId).withPriority(priority).create());
+    }
+
+    @Test
+    public void getNext_sameGroup_fifoAndSerial() {
+        JobQueue jobQueue = new JobQueue();
+        Job first  = job("group", JobParameters.PRIORITY_DEFAULT);
+        Job second = job("group", JobParameters.PRIORITY_HIGH);
+        Job other  = job(null, JobParameters.PRIORITY_DEFAULT);
+        jobQueue.add(first);
+        jobQueue.add(second);
+        jobQueue.add(other);
+
+        assertSame(first, jobQueue.getNext());
+        assertSame(other, jobQueue.getNext());
+
+        jobQueue.setGroupIdAvailable("group");
+        assertSame(second, jobQueue.getNext());
+    }
+
+    @Test
+    public void getNext_higherPriorityFirst() {
+        JobQueue jobQueue = new JobQueue();
+        Job low  = job(null, JobParameters.PRIORITY_LOW);
+        Job def  = job(null, JobParameters.PRIORITY_DEFAULT);
+        Job high = job(null, JobParameters.PRIORITY_HIGH);
+        jobQueue.add(low);
+        jobQueue.add(def);
+        jobQueue.add(high);
+
+        assertSame(high, jobQueue.getNext());
+        assertSame(def, jobQueue.getNext());
+        assertSame(low, jobQueue.getNext());
+    }
+
+    @Test
+    public void getNext_requirementNotMet_waitsForStatusChange() {
+        JobQueue        jobQueue    = new JobQueue();
+        TestRequirement requirement = new TestRequirement(false);
+        Job blocked = new TestJob(JobParameters.newBuilder().withRequirement(requirement).create());
+        Job free    = job(null, JobParameters.PRIORITY_LOW);
+        jobQueue.add(blocked);
+        jobQueue.add(free);
+
+        assertSame(free, jobQueue.getNext());
+
+        requirement.present = true;
+        jobQueue.onRequirementStatusChanged();
+        assertSame(blocked, jobQueue.getNext());
+    }
+
+    @Test
+    public void push_deferredJob_runsBeforeOthers() {
+        JobQueue jobQueue = new JobQueue();
+        Job first  = job(null, JobParameters.PRIORITY_DEFAULT);
+        Job second = job(null, JobParameters.PRIORITY_DEFAULT);
+        jobQueue.add(first);
+        jobQueue.add(second);
+
+        Job deferred = jobQueue.getNext();
+        jobQueue.push(deferred);
+        assertSame(first, jobQueue.getNext());
+        assertSame(second, jobQueue.getNext());
+    }
+
+    @Test
+    public void getNext_manyJobs_allDispatchedInOrder() {
+        int[]     priorities = { JobParameters.PRIORITY_LOW, JobParameters.PRIORITY_DEFAULT, JobParameters.PRIORITY_HIGH };
+        JobQueue  jobQueue   = new JobQueue();
+        List<Job> jobs       = new ArrayList<>();
+        Map<Job, Integer> addedAt = new IdentityHashMap<>();
+        for (int i = 0; i < 10000; i++) {
+            Job job = job(i % 2 == 0 ? null : "group" + (i % 10), priorities[i % 3]);
+            jobs.add(job);
+            addedAt.put(job, i);
+        }
+        jobQueue.addAll(jobs);
+
+        // the last dispatched job per group and per priority of the ungrouped jobs
+        Map<String, Integer>  lastInGroup    = new HashMap<>();
+        Map<Integer, Integer> lastInPriority = new HashMap<>();
+        Set<Job>              dispatched     = Collections.newSetFromMap(new IdentityHashMap<Job, Boolean>());
+        for (int i = 0; i < 10000; i++) {
+            Job job   = jobQueue.getNext();
+            int index = addedAt.get(job);
+            assertTrue(dispatched.add(job));
+
+            if (job.getGroupId() != null) {
+                Integer last = lastInGroup.put(job.getGroupId(), index);
+                assertTrue("group " + job.getGroupId() + " out of order", last == null || last < index);
+            } else {
+                Integer last = lastInPriority.put(job.getPriority(), index);
+                assertTrue("priority " + job.getPriority() + " out of order", last == null || last < index);
+            }
+            jobQueue.setGroupIdAvailable(job.getGroupId());
+        }
+        assertEquals(10000, dispatched.size());
+    }
+}
@@ -0,0 +1,152 @@
+package org.thoughtcrime.securesms.jobmanager.persistence;
+
+import org.junit.Test;
+import org.thoughtcrime.securesms.jobmanager.Job;
+import org.thoughtcrime.securesms.jobmanager.JobParameters;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JobJournalTest {
+
+    private static class TestJob extends Job {
+        private final String name;
+
+        TestJob(String name) {
+            super(JobParameters.newBuilder().withPersistence().create());
+            this.name = name;
+        }
+
+        @Override public void onAdded() {}
+        @Override protected void onRun() {}
+        @Override public boolean onShouldRetry(Exception exception) { return false; }
+        @Override public void onCanceled() {}
+    }
+
+    private static File createJournalFile() throws IOException {
+        File file = File.createTempFile("jobs", ".journal");
+        file.delete();
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void replay_addedJobs_removedJobsAreSkipped() throws IOException {
+        File       file    = createJournalFile();
+        JobJournal journal = new JobJournal(file, new JavaJobSerializer());
+        journal.replay();
+
+        TestJob first  = new TestJob("first");
+        TestJob second = new TestJob("second");
+        TestJob third  = new TestJob("third");
+        journal.append(first);
+        journal.append(second);
+        journal.append(third);
+        journal.sync();
+        journal.remove(second);
+        journal.sync();
+
+        List<Job> jobs = new JobJournal(file, new JavaJobSerializer()).replay();
+        assertEquals(2, jobs.size());
+        assertEquals("first", ((TestJob) jobs.get(0)).name);
+        assertEquals("third", ((TestJob) jobs.get(1)).name);
+        assertEquals(first.getPersistentId(), jobs.get(0).getPersistentId());
+    }
+
+    @Test
+    public void replay_truncatedRecord_isIgnored() throws IOException {
+        File       file    = createJournalFile();
+        JobJournal journal = new JobJournal(file, new JavaJobSerializer());
+        journal.replay();
+        journal.append(new TestJob("complete"));
+        journal.sync();
+
+        try (FileOutputStream outputStream = new FileOutputStream(file, true)) {
+            outputStream.write("A 99 rO0AB".getBytes());
+        }
+
+        JobJournal replayed = new JobJournal(file, new JavaJobSerializer());
+        List<Job>  jobs     = replayed.replay();
+        assertEquals(1, jobs.size());
+        assertEquals(1, replayed.getDroppedRecordCount());
+    }
+
+    @Test
+    public void replay_thousandsOfJobs_withinTarget() throws IOException {
+        File       file    = createJournalFile();
+        JobJournal journal = new JobJournal(file, new JavaJobSerializer());
+        journal.replay();
+        for (int i = 0; i < 2000; i++) {
+            journal.append(new TestJob("job" + i));
+        }
+        journal.sync();
+
+        // the first replays also load and compile the classes
+        for (int i = 0; i < 2; i++) {
+            new JobJournal(file, new JavaJobSerializer()).replay();
+        }
+
+        long      start = System.currentTimeMillis();
+        List<Job> jobs  = new JobJournal(file, new JavaJobSerializer()).replay();
+        long      time  = System.currentTimeMillis() - start;
+
+        assertEquals(2000, jobs.size());
+        assertTrue("replay took " + time + " ms", time < JobJournal.REPLAY_TARGET_MILLIS);
+    }
+
+    @Test
+    public void remove_manyJobs_journalIsCompacted() throws IOException {
+        File       file    = createJournalFile();
+        JobJournal journal = new JobJournal(file, new JavaJobSerializer());
+        journal.replay();
+
+        for (int i = 0; i < 2000; i++) {
+            TestJob job = new TestJob("job" + i);
+            journal.append(job);
+            journal.sync();
+            if (i != 1999) {
+                journal.remove(job);
+            }
+        }
+        journal.sync();
+
+        assertTrue(file.length() < 256 * 1024);
+        List<Job> jobs = new JobJournal(file, new JavaJobSerializer()).replay();
+        assertEquals(1, jobs.size());
+        assertEquals("job1999", ((TestJob) jobs.get(0)).name);
+    }
+
+    @Test
+    public void remove_manyPendingJobs_journalIsNotRewrittenEachTime() throws IOException {
+        File       file    = createJournalFile();
+        JobJournal journal = new JobJournal(file, new JavaJobSerializer());
+        journal.replay();
+
+        List<TestJob> pending = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            TestJob job = new TestJob("job" + i);
+            journal.append(job);
+            pending.add(job);
+        }
+        journal.sync();
+
+        // with mostly live records, a removal is appended instead of compacting
+        long size = file.length();
+        journal.remove(pending.get(0));
+        journal.sync();
+        assertTrue(file.length() > size);
+
+        for (int i = 1; i < 1000; i++) {
+            journal.remove(pending.get(i));
+        }
+        journal.sync();
+        assertTrue(file.length() < size);
+        assertEquals(0, new JobJournal(file, new JavaJobSerializer()).replay().size());
+    }
+}
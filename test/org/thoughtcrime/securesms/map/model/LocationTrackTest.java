@@ -0,0 +1,110 @@
+package org.thoughtcrime.securesms.map.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LocationTrackTest {
+
+    private static final float LATITUDE = 52.00f;
+    private static final float LONGITUDE = 10.00f;
+
+    private static int add(LocationTrack track, int locationId, long timestamp) {
+        return add(track, locationId, timestamp, LATITUDE, LONGITUDE);
+    }
+
+    private static int add(LocationTrack track, int locationId, long timestamp, float latitude, float longitude) {
+        return track.add(locationId, 1, timestamp, latitude, longitude, 12);
+    }
+
+    @Test
+    public void add_differentIds_differentTimestamps_ascendingOrder() {
+        LocationTrack track = new LocationTrack();
+        add(track, 3, 2);
+        add(track, 2, 1);
+        add(track, 1, 123456789);
+
+        assertEquals(3, track.size());
+        assertEquals(1, track.getTimestamp(0));
+        assertEquals(2, track.getTimestamp(1));
+        assertEquals(123456789, track.getTimestamp(2));
+        assertEquals(123456789, track.getLastTimestamp());
+    }
+
+    @Test
+    public void add_sameIds_differentTimestamps_ascendingOrder() {
+        LocationTrack track = new LocationTrack();
+        add(track, 1, 2);
+        add(track, 1, 1);
+        add(track, 1, 123456789);
+
+        assertEquals(3, track.size());
+        assertEquals(1, track.getTimestamp(0));
+        assertEquals(2, track.getTimestamp(1));
+        assertEquals(123456789, track.getTimestamp(2));
+    }
+
+    @Test
+    public void add_sameIds_sameTimestamps_noDuplicatedEntries() {
+        LocationTrack track = new LocationTrack();
+        assertEquals(0, add(track, 1, 123456789));
+        assertEquals(-1, add(track, 1, 123456789));
+        assertEquals(1, track.size());
+    }
+
+    @Test
+    public void add_sameIds_sameTimestamps_elementReplaced() {
+        LocationTrack track = new LocationTrack();
+        add(track, 1, 123456789, 1.00f, 1.00f);
+        add(track, 1, 123456789, 2.00f, 2.00f);
+        assertEquals(2.00f, track.getLatitude(0), 0);
+    }
+
+    @Test
+    public void add_differentIds_sameTimestamps_bothAdded() {
+        LocationTrack track = new LocationTrack();
+        add(track, 1, 123456789);
+        add(track, 2, 123456789);
+        assertEquals(2, track.size());
+        assertEquals(1, track.indexOf(2));
+    }
+
+    @Test
+    public void add_manyLocations_growsAndKeepsOrder() {
+        LocationTrack track = new LocationTrack();
+        for (int i = 1000; i > 0; i--) {
+            add(track, i, i * 1000L);
+        }
+        assertEquals(1000, track.size());
+        for (int i = 0; i < track.size(); i++) {
+            assertEquals(i + 1, track.getLocationId(i));
+        }
+    }
+
+    @Test
+    public void getCoordinates_returnsOrderedCoordinates() {
+        LocationTrack track = new LocationTrack();
+        add(track, 2, 2, 1.00f, 1.00f);
+        add(track, 1, 1, 2.00f, 2.00f);
+        add(track, 3, 3, 3.00f, 3.00f);
+
+        assertEquals(2.00f, track.getLongitude(0), 0);
+        assertEquals(1.00f, track.getLongitude(1), 0);
+        assertEquals(3.00f, track.getLongitude(2), 0);
+    }
+
+    @Test
+    public void bounds_returnTimeRange() {
+        LocationTrack track = new LocationTrack();
+        add(track, 1, 10);
+        add(track, 2, 20);
+        add(track, 3, 20);
+        add(track, 4, 30);
+
+        assertEquals(0, track.lowerBound(5));
+        assertEquals(1, track.lowerBound(20));
+        assertEquals(3, track.upperBound(20));
+        assertEquals(4, track.upperBound(30));
+        assertEquals(4, track.lowerBound(31));
+    }
+}
@@ -0,0 +1,142 @@
+package org.thoughtcrime.securesms.util;
+
+import android.support.v7.util.ListUpdateCallback;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IdListDiffTest {
+
+    private static class RecordingCallback implements ListUpdateCallback {
+        final List<Integer> list = new ArrayList<>();
+        final int[] newIds;
+        int inserted, removed, moved, changed;
+
+        RecordingCallback(int[] oldIds, int[] newIds) {
+            for (int id : oldIds) list.add(id);
+            this.newIds = newIds;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            for (int i = 0; i < count; i++) list.add(position + i, newIds[position + i]);
+            inserted += count;
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            for (int i = 0; i < count; i++) list.remove(position);
+            removed += count;
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            list.add(toPosition, list.remove(fromPosition));
+            moved++;
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            changed += count;
+        }
+
+        int[] result() {
+            int[] ret = new int[list.size()];
+            for (int i = 0; i < ret.length; i++) ret[i] = list.get(i);
+            return ret;
+        }
+    }
+
+    private static RecordingCallback apply(int[] oldIds, int[] newIds, IdListDiff.ChangeDetector changeDetector) {
+        RecordingCallback callback = new RecordingCallback(oldIds, newIds);
+        IdListDiff.calculate(oldIds, newIds, changeDetector).dispatchUpdatesTo(callback);
+        assertArrayEquals(newIds, callback.result());
+        return callback;
+    }
+
+    @Test
+    public void calculate_sameList_isEmpty() {
+        assertTrue(IdListDiff.calculate(new int[]{1, 2, 3}, new int[]{1, 2, 3}, null).isEmpty());
+    }
+
+    @Test
+    public void calculate_appendedItem_singleInsert() {
+        RecordingCallback callback = apply(new int[]{1, 2, 3}, new int[]{1, 2, 3, 4}, null);
+        assertEquals(1, callback.inserted);
+        assertEquals(0, callback.removed);
+        assertEquals(0, callback.moved);
+    }
+
+    @Test
+    public void calculate_removedItems() {
+        RecordingCallback callback = apply(new int[]{1, 2, 3, 4, 5}, new int[]{1, 4}, null);
+        assertEquals(3, callback.removed);
+        assertEquals(0, callback.inserted);
+    }
+
+    @Test
+    public void calculate_itemJumpsToTop_singleMove() {
+        RecordingCallback callback = apply(new int[]{1, 2, 3, 4, 5}, new int[]{4, 1, 2, 3, 5}, null);
+        assertEquals(1, callback.moved);
+    }
+
+    @Test
+    public void calculate_itemDropsToBottom_singleMove() {
+        RecordingCallback callback = apply(new int[]{1, 2, 3, 4, 5}, new int[]{2, 3, 4, 5, 1}, null);
+        assertEquals(1, callback.moved);
+    }
+
+    @Test
+    public void calculate_mixedOperations() {
+        apply(new int[]{7, 1, 2, 3, 9, 4}, new int[]{4, 8, 1, 3, 2, 6}, null);
+        apply(new int[]{}, new int[]{1, 2}, null);
+        apply(new int[]{1, 2}, new int[]{}, null);
+    }
+
+    @Test
+    public void calculate_changedItems() {
+        RecordingCallback callback = apply(new int[]{1, 2, 3}, new int[]{0, 1, 2, 3}, (id, oldIndex, newIndex) -> id != 2);
+        assertEquals(2, callback.changed);
+    }
+
+    @Test
+    public void calculate_shuffledLists() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            List<Integer> ids = new ArrayList<>();
+            for (int id = 0; id < 2 + random.nextInt(60); id++) ids.add(id);
+            int[] oldIds = toArray(ids);
+
+            Collections.shuffle(ids, random);
+            ids.subList(0, random.nextInt(ids.size() / 2)).clear();
+            for (int i = 0; i < random.nextInt(5); i++) ids.add(random.nextInt(ids.size() + 1), 1000 + i);
+            apply(oldIds, toArray(ids), null);
+        }
+    }
+
+    @Test
+    public void calculate_reversedLongList() {
+        int[] oldIds = new int[20000];
+        int[] newIds = new int[oldIds.length];
+        for (int i = 0; i < oldIds.length; i++) {
+            oldIds[i] = i;
+            newIds[oldIds.length - 1 - i] = i;
+        }
+        RecordingCallback callback = apply(oldIds, newIds, null);
+        assertEquals(oldIds.length - 1, callback.moved);
+    }
+
+    private static int[] toArray(List<Integer> ids) {
+        int[] ret = new int[ids.size()];
+        for (int i = 0; i < ret.length; i++) ret[i] = ids.get(i);
+        return ret;
+    }
+}